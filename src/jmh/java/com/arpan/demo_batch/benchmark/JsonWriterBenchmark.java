@@ -0,0 +1,132 @@
+package com.arpan.demo_batch.benchmark;
+
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.writer.BufferedJsonFileItemWriter;
+import com.arpan.demo_batch.writer.TransactionJsonSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.json.JacksonJsonObjectMarshaller;
+import org.springframework.batch.item.json.JsonFileItemWriter;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+import writer.CustomJsonFileItemWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Items per second written by the {@link JsonFileItemWriter} the job used before (marshalling every item to a
+ * String with {@link JacksonJsonObjectMarshaller}, like {@link CustomJsonFileItemWriter}) compared with
+ * {@link BufferedJsonFileItemWriter}, one transaction per chunk like in the step. An item is
+ * about 85 bytes of {@code output/retryOutput.json}, so items/s * 85 is the bytes/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class JsonWriterBenchmark {
+    static final int ITEMS = 100_000;
+
+    @Param({"5", "1000"})
+    int chunkSize;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    private List<Chunk<Transaction>> chunks;
+
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void createItems() throws Exception {
+        output = Files.createTempFile("retryOutput", ".json");
+        chunks = new ArrayList<>();
+        for (int start = 0; start < ITEMS; start += chunkSize) {
+            Chunk<Transaction> chunk = new Chunk<>();
+            for (int userId = start; userId < Math.min(start + chunkSize, ITEMS); userId++) {
+                Transaction transaction = new Transaction(userId, userId * 10.5);
+                transaction.setUsername("Peter Higgs");
+                transaction.setEmail("peter@higgs.com");
+                chunk.add(transaction);
+            }
+            chunks.add(chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() throws Exception {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void jsonFileItemWriter() {
+        JsonFileItemWriter<Transaction> writer =
+                new JsonFileItemWriter<>(new FileSystemResource(output), new JacksonJsonObjectMarshaller<>());
+        writer.setName("jsonFileItemWriter");
+        writeAll(writer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void customJsonFileItemWriter() {
+        CustomJsonFileItemWriter<Transaction> writer =
+                new CustomJsonFileItemWriter<>(new FileSystemResource(output), new JacksonJsonObjectMarshaller<>());
+        writer.setName("customJsonFileItemWriter");
+        writeAll(writer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void bufferedJsonFileItemWriter() {
+        BufferedJsonFileItemWriter<Transaction> writer =
+                new BufferedJsonFileItemWriter<>(new FileSystemResource(output), Transaction.class);
+        writer.setName("bufferedJsonFileItemWriter");
+        writeAll(writer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void bufferedJsonFileItemWriterWithTransactionSerializer() {
+        BufferedJsonFileItemWriter<Transaction> writer =
+                new BufferedJsonFileItemWriter<>(new FileSystemResource(output), new TransactionJsonSerializer());
+        writer.setName("bufferedJsonFileItemWriter");
+        writeAll(writer);
+    }
+
+    private void writeAll(ItemStreamWriter<Transaction> writer) {
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        for (Chunk<Transaction> chunk : chunks) {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    writer.write(chunk);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                writer.update(executionContext);
+            });
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,56 @@
+package com.arpan.demo_batch.benchmark;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.LineMapper;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines per second parsed by {@code lineMapper()} alone (tokenizing and field set mapping), without the file I/O of
+ * {@link TransactionReaderBenchmark}. {@code -prof gc} gives the bytes allocated per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LineMapperBenchmark {
+    static final int LINES = 10_000;
+
+    private final String[] lines = new String[LINES];
+
+    private LineMapper<Transaction> lineMapper;
+
+    @Setup(Level.Trial)
+    public void createLines() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = random.nextInt(1, 100_000) + ", " + random.nextInt(1, 10_000);
+        }
+        lineMapper = new SpringBatchRetryConfig().lineMapper();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void mapLine(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < LINES; i++) {
+            blackhole.consume(lineMapper.mapLine(lines[i], i + 2));
+        }
+    }
+}
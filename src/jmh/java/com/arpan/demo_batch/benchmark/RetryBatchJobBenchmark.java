@@ -0,0 +1,107 @@
+package com.arpan.demo_batch.benchmark;
+
+import com.arpan.demo_batch.DemoBatchApplication;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.loadtest.StubUserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock time of a complete {@code retryBatchJob} run over {@code rows} generated rows, with the application
+ * configuration and the users served by a {@link StubUserService}. Every iteration is one run of the job with a new
+ * job instance in the same application, so the shared user cache is warm after the warmup run, as in a long running
+ * application. Override the configuration through {@code -jvmArgsAppend}, e.g.
+ * {@code -jvmArgsAppend -Dbatch.enrichment.mode=BULK}. The 10M rows case needs several minutes per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class RetryBatchJobBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private StubUserService userService;
+
+    private ConfigurableApplicationContext context;
+
+    private JobLauncher jobLauncher;
+
+    private Job retryBatchJob;
+
+    private Path input;
+
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws Exception {
+        input = Files.createTempFile("recordRetry", ".csv");
+        output = Files.createTempFile("retryOutput", ".json");
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("userid, transaction_amount\n");
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < rows; i++) {
+                // user 2 always fails in the processor
+                writer.write(random.nextInt(3, 1_000_000) + ", " + random.nextInt(1, 10_000) + "\n");
+            }
+        }
+        userService = new StubUserService(Duration.ZERO);
+        context = new SpringApplicationBuilder(DemoBatchApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--batch.user-service.base-url=" + userService.baseUrl(),
+                        "--batch.output.file=" + output.toUri(),
+                        "--logging.level.root=WARN");
+        jobLauncher = context.getBean("jobLauncher", JobLauncher.class);
+        retryBatchJob = context.getBean("retryBatchJob", Job.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws Exception {
+        context.close();
+        userService.close();
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public JobExecution runJob() throws Exception {
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.nanoTime())
+                .toJobParameters());
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("retryBatchJob ended " + jobExecution.getStatus()
+                    + ": " + jobExecution.getAllFailureExceptions());
+        }
+        return jobExecution;
+    }
+}
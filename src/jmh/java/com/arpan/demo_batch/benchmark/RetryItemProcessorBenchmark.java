@@ -0,0 +1,93 @@
+package com.arpan.demo_batch.benchmark;
+
+import com.arpan.demo_batch.cache.UserCache;
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.loadtest.StubUserService;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.processor.EnrichmentMode;
+import com.arpan.demo_batch.processor.RetryItemProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One chunk of {@value #CHUNK_SIZE} items through {@link RetryItemProcessor} per operation, read and processed like
+ * the step does it, against a {@link StubUserService} answering after {@code latencyMillis}. The user cache is off,
+ * so every chunk goes to the service. Throughput is in chunks per second; the sample time mode gives the latency
+ * percentiles of a chunk (p50 ... p99.99).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class RetryItemProcessorBenchmark {
+    static final int CHUNK_SIZE = 100;
+
+    @Param({"ITEM", "BULK", "CONCURRENT"})
+    EnrichmentMode enrichmentMode;
+
+    @Param({"0", "2"})
+    int latencyMillis;
+
+    private StubUserService userService;
+
+    private UserServiceClient userServiceClient;
+
+    private RetryItemProcessor processor;
+
+    private final Transaction[] chunk = new Transaction[CHUNK_SIZE];
+
+    @Setup(Level.Trial)
+    public void startUserService() throws Exception {
+        userService = new StubUserService(Duration.ofMillis(latencyMillis));
+        userServiceClient = new UserServiceClient(new RestTemplate(), userService.baseUrl(), 32);
+        processor = new RetryItemProcessor(false, enrichmentMode);
+        ReflectionTestUtils.setField(processor, "userServiceClient", userServiceClient);
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+    }
+
+    @Setup(Level.Invocation)
+    public void readChunk() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            // user 2 always fails in the processor
+            chunk[i] = new Transaction(random.nextInt(3, 100_000), random.nextInt(1, 10_000));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopUserService() {
+        userServiceClient.close();
+        userService.close();
+    }
+
+    @Benchmark
+    public void processChunk(Blackhole blackhole) throws Exception {
+        for (Transaction transaction : chunk) {
+            processor.afterRead(transaction);
+        }
+        for (Transaction transaction : chunk) {
+            blackhole.consume(processor.process(transaction));
+        }
+        processor.afterChunk(null);
+    }
+}
@@ -0,0 +1,91 @@
+package com.arpan.demo_batch.benchmark;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.reader.MappedTransactionItemReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second of the current {@link FlatFileItemReader} / {@code lineMapper()} pipeline compared with
+ * {@link MappedTransactionItemReader}, on a generated {@code recordRetry.csv}-shaped file. Run with {@code -prof gc}
+ * to get the allocation rate ({@code gc.alloc.rate.norm} is bytes per record).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransactionReaderBenchmark {
+    static final int ROWS = 1_000_000;
+
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void writeInput() throws Exception {
+        csv = Files.createTempFile("recordRetry", ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("userid, transaction_amount\n");
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(random.nextInt(1, 100_000) + ", " + random.nextInt(1, 10_000) + "\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() throws Exception {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void flatFileReader(Blackhole blackhole) throws Exception {
+        FlatFileItemReader<Transaction> reader = new FlatFileItemReader<>();
+        reader.setResource(new FileSystemResource(csv));
+        reader.setName("CSV-Reader");
+        reader.setLinesToSkip(1);
+        reader.setLineMapper(new SpringBatchRetryConfig().lineMapper());
+        readAll(reader, blackhole);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mappedReader(Blackhole blackhole) throws Exception {
+        MappedTransactionItemReader reader = new MappedTransactionItemReader(new FileSystemResource(csv), 1);
+        reader.setName("CSV-Reader");
+        readAll(reader, blackhole);
+    }
+
+    private static void readAll(ItemStreamReader<Transaction> reader, Blackhole blackhole) throws Exception {
+        reader.open(new ExecutionContext());
+        Transaction transaction;
+        while ((transaction = reader.read()) != null) {
+            blackhole.consume(transaction);
+        }
+        reader.close();
+    }
+}
@@ -1,5 +1,6 @@
 package writer;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.item.Chunk;
 import org.springframework.batch.item.json.JsonFileItemWriter;
 import org.springframework.batch.item.json.JsonObjectMarshaller;
@@ -9,6 +10,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.List;
 
+@Slf4j
 public class CustomJsonFileItemWriter<T> extends JsonFileItemWriter<T> {
 
     public CustomJsonFileItemWriter(WritableResource resource, JsonObjectMarshaller<T> jsonObjectMarshaller) {
@@ -17,7 +19,7 @@ public class CustomJsonFileItemWriter<T> extends JsonFileItemWriter<T> {
 
     @Override
     public void write(Chunk<? extends T> items) throws Exception {
-        System.out.println("<<<<<<<<<<<<<<Writing items: " + items); // Debugging log
+        log.debug("Writing items: {}", items);
         super.write(items);
     }
 }
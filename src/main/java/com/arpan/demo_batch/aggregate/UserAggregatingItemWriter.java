@@ -0,0 +1,178 @@
+package com.arpan.demo_batch.aggregate;
+
+import com.arpan.demo_batch.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes the items with the delegate and adds their amounts to a {@link UserAmountAggregator}, so the per-user
+ * summary of the output is there when the step ends, without reading the output again:
+ * {@code <directory>/userSummary-<jobExecutionId>.csv}.
+ * <p>
+ * The ids and amounts of a chunk are buffered in primitive arrays and only added once its transaction committed; a
+ * rolled back chunk is dropped, so items written again after a rollback are counted once. The summary is written when
+ * the step ends, also when it failed, and covers the committed chunks of this step execution: after a restart the
+ * summaries of the failed and the restarted execution add up to that of the whole output (unless the failed one was
+ * killed before it could write its summary). The step execution context holds {@value #USERS_KEY} and
+ * {@value #SPILL_COUNT_KEY}.
+ */
+@Slf4j
+public class UserAggregatingItemWriter implements ItemStreamWriter<Transaction>, StepExecutionListener {
+    public static final String USERS_KEY = "aggregation.users";
+
+    public static final String SPILL_COUNT_KEY = "aggregation.spills";
+
+    private final ItemStreamWriter<Transaction> delegate;
+
+    private final long memoryBudgetBytes;
+
+    private final Path directory;
+
+    private final long jobExecutionId;
+
+    private UserAmountAggregator aggregator;
+
+    private int[] pendingUserIds = new int[256];
+
+    private double[] pendingAmounts = new double[256];
+
+    private int pendingCount;
+
+    private boolean synchronizationRegistered;
+
+    private RuntimeException failure;
+
+    public UserAggregatingItemWriter(ItemStreamWriter<Transaction> delegate, long memoryBudgetBytes, Path directory,
+                                     long jobExecutionId) {
+        this.delegate = delegate;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.directory = directory;
+        this.jobExecutionId = jobExecutionId;
+    }
+
+    /**
+     * The summary file of the job execution.
+     */
+    public static Path summaryFile(Path directory, long jobExecutionId) {
+        return directory.resolve("userSummary-" + jobExecutionId + ".csv");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.open(executionContext);
+        aggregator = new UserAmountAggregator(memoryBudgetBytes, directory, "userSummary-" + jobExecutionId);
+        pendingCount = 0;
+        failure = null;
+    }
+
+    @Override
+    public void write(Chunk<? extends Transaction> chunk) throws Exception {
+        checkFailure();
+        delegate.write(chunk);
+        for (Transaction item : chunk) {
+            if (pendingCount == pendingUserIds.length) {
+                pendingUserIds = Arrays.copyOf(pendingUserIds, pendingCount * 2);
+                pendingAmounts = Arrays.copyOf(pendingAmounts, pendingCount * 2);
+            }
+            pendingUserIds[pendingCount] = item.getUserId();
+            pendingAmounts[pendingCount] = item.getAmount();
+            pendingCount++;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            addPending();
+        } else if (!synchronizationRegistered) {
+            TransactionSynchronizationManager.registerSynchronization(new ChunkSynchronization());
+            synchronizationRegistered = true;
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            delegate.close();
+        } finally {
+            if (aggregator != null) {
+                aggregator.close();
+                aggregator = null;
+            }
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (aggregator == null) {
+            return null;
+        }
+        try {
+            checkFailure();
+            Files.createDirectories(directory);
+            Path summary = summaryFile(directory, jobExecutionId);
+            int spills = aggregator.spillCount();
+            long users = aggregator.writeSummary(summary);
+            stepExecution.getExecutionContext().putLong(USERS_KEY, users);
+            stepExecution.getExecutionContext().putInt(SPILL_COUNT_KEY, spills);
+            log.info("Summary of {} users written to {} ({} spills)", users, summary, spills);
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write the user summary of step {}", stepExecution.getStepName(), e);
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            return ExitStatus.FAILED.addExitDescription(e);
+        }
+    }
+
+    private void addPending() {
+        try {
+            for (int i = 0; i < pendingCount; i++) {
+                aggregator.add(pendingUserIds[i], pendingAmounts[i]);
+            }
+        } catch (UncheckedIOException e) {
+            // only seen by the next chunk or the end of the step, the failing one is committed already
+            failure = e;
+        } finally {
+            pendingCount = 0;
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Adds the chunk to the aggregate once its transaction committed.
+     */
+    private class ChunkSynchronization implements TransactionSynchronization {
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronizationRegistered = false;
+            if (status == STATUS_COMMITTED && aggregator != null) {
+                addPending();
+            } else {
+                pendingCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.arpan.demo_batch.aggregate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Count, total, min and max of the transaction amounts per user id, for any number of users in a fixed amount of
+ * heap.
+ * <p>
+ * The users are kept in an open-addressing table (linear probing, at most 3/4 full) of parallel primitive arrays:
+ * {@code int} ids, {@code long} counts and {@code double} totals, minimums and maximums; a count of 0 marks a free
+ * slot. Nothing is allocated per user or per amount. The table doubles until it would outgrow
+ * {@code memoryBudgetBytes}; from then on a full table is spilled instead: its users are sorted by id, written to a
+ * run file in {@code spillDirectory} and the table is cleared for reuse.
+ * <p>
+ * {@link #writeSummary} writes one {@code userId,count,total,min,max} line per user in id order. Without spills it
+ * sorts the table; otherwise it spills the rest of the table too and merges the runs, adding up the lines of a user
+ * that is in several runs, so the summary never needs more than one table and one read buffer per run.
+ */
+public class UserAmountAggregator implements AutoCloseable {
+    static final String HEADER = "userId,count,total,min,max";
+
+    /**
+     * Heap per slot: the id, count, total, min and max, plus the sort key of the slot when the table is full.
+     */
+    static final int BYTES_PER_SLOT = Integer.BYTES + Long.BYTES + 3 * Double.BYTES + Long.BYTES;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path spillDirectory;
+
+    private final String spillPrefix;
+
+    private final int maxCapacity;
+
+    private int[] keys;
+
+    private long[] counts;
+
+    private double[] totals;
+
+    private double[] mins;
+
+    private double[] maxs;
+
+    private int mask;
+
+    private int size;
+
+    private long[] sortKeys;
+
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param spillPrefix name prefix of the run files, which are numbered
+     */
+    public UserAmountAggregator(long memoryBudgetBytes, Path spillDirectory, String spillPrefix) {
+        this(maxCapacity(memoryBudgetBytes), spillDirectory, spillPrefix);
+    }
+
+    UserAmountAggregator(int maxCapacity, Path spillDirectory, String spillPrefix) {
+        this.maxCapacity = maxCapacity;
+        this.spillDirectory = spillDirectory;
+        this.spillPrefix = spillPrefix;
+        allocate(Math.min(maxCapacity, INITIAL_CAPACITY));
+    }
+
+    /**
+     * The largest power of two table whose slots fit in the budget.
+     */
+    static int maxCapacity(long memoryBudgetBytes) {
+        long slots = Math.min(1 << 30, memoryBudgetBytes / BYTES_PER_SLOT);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) slots));
+    }
+
+    /**
+     * @throws UncheckedIOException if the table was full and could not be spilled
+     */
+    public void add(int userId, double amount) {
+        int slot = slot(userId);
+        if (counts[slot] == 0) {
+            keys[slot] = userId;
+            counts[slot] = 1;
+            totals[slot] = amount;
+            mins[slot] = amount;
+            maxs[slot] = amount;
+            if (++size > threshold()) {
+                growOrSpill();
+            }
+            return;
+        }
+        counts[slot]++;
+        totals[slot] += amount;
+        if (amount < mins[slot]) {
+            mins[slot] = amount;
+        }
+        if (amount > maxs[slot]) {
+            maxs[slot] = amount;
+        }
+    }
+
+    /**
+     * Users in the table, not counting the spilled ones.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int spillCount() {
+        return runs.size();
+    }
+
+    /**
+     * Writes the summary of all users added, sorted by user id, and deletes the run files. The file is written
+     * under a temporary name and renamed when complete.
+     *
+     * @return the number of users in the summary
+     */
+    public long writeSummary(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long users;
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            users = runs.isEmpty() ? writeTable(writer) : mergeRuns(writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteRuns();
+        return users;
+    }
+
+    /**
+     * Deletes the run files that are left, e.g. when the step ended before the summary was written.
+     */
+    @Override
+    public void close() {
+        try {
+            deleteRuns();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete the spilled runs in " + spillDirectory, e);
+        }
+    }
+
+    private long writeTable(Writer writer) throws IOException {
+        int sorted = sortSlots();
+        StringBuilder line = new StringBuilder(64);
+        for (int i = 0; i < sorted; i++) {
+            int slot = (int) sortKeys[i];
+            writeLine(writer, line, keys[slot], counts[slot], totals[slot], mins[slot], maxs[slot]);
+        }
+        return sorted;
+    }
+
+    private long mergeRuns(Writer writer) throws IOException {
+        if (size > 0) {
+            spill();
+        }
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(runs.size(), Comparator.comparingInt(RunReader::userId));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            StringBuilder line = new StringBuilder(64);
+            long users = 0;
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                int userId = reader.userId;
+                long count = reader.count;
+                double total = reader.total;
+                double min = reader.min;
+                double max = reader.max;
+                advance(readers, reader);
+                // the same user in the other runs
+                while (!readers.isEmpty() && readers.peek().userId == userId) {
+                    RunReader other = readers.poll();
+                    count += other.count;
+                    total += other.total;
+                    min = Math.min(min, other.min);
+                    max = Math.max(max, other.max);
+                    advance(readers, other);
+                }
+                writeLine(writer, line, userId, count, total, min, max);
+                users++;
+            }
+            return users;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void advance(PriorityQueue<RunReader> readers, RunReader reader) throws IOException {
+        if (reader.next()) {
+            readers.add(reader);
+        } else {
+            reader.close();
+        }
+    }
+
+    private static void writeLine(Writer writer, StringBuilder line, int userId, long count, double total,
+                                  double min, double max) throws IOException {
+        line.setLength(0);
+        line.append(userId).append(',').append(count).append(',').append(total).append(',')
+                .append(min).append(',').append(max).append('\n');
+        writer.append(line);
+    }
+
+    private void growOrSpill() {
+        if (keys.length < maxCapacity) {
+            grow();
+            return;
+        }
+        try {
+            spill();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill " + size + " users to " + spillDirectory, e);
+        }
+    }
+
+    /**
+     * Writes the table to a new run file in user id order and clears it.
+     */
+    private void spill() throws IOException {
+        Files.createDirectories(spillDirectory);
+        Path run = spillDirectory.resolve(spillPrefix + ".spill-" + runs.size());
+        int sorted = sortSlots();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+            for (int i = 0; i < sorted; i++) {
+                int slot = (int) sortKeys[i];
+                out.writeInt(keys[slot]);
+                out.writeLong(counts[slot]);
+                out.writeDouble(totals[slot]);
+                out.writeDouble(mins[slot]);
+                out.writeDouble(maxs[slot]);
+            }
+        }
+        runs.add(run);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    /**
+     * Sorts the occupied slots by user id into {@link #sortKeys}: the id in the high and the slot in the low half of
+     * each key.
+     *
+     * @return the number of sorted slots
+     */
+    private int sortSlots() {
+        if (sortKeys == null || sortKeys.length < size) {
+            sortKeys = new long[threshold() + 1];
+        }
+        int sorted = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                sortKeys[sorted++] = ((long) keys[slot] << 32) | slot;
+            }
+        }
+        Arrays.sort(sortKeys, 0, sorted);
+        return sorted;
+    }
+
+    private int slot(int userId) {
+        // the golden ratio hash spreads consecutive ids over the table
+        int slot = (userId * 0x9E3779B9) & mask;
+        while (counts[slot] != 0 && keys[slot] != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int threshold() {
+        return keys.length - (keys.length >>> 2);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        double[] oldTotals = totals;
+        double[] oldMins = mins;
+        double[] oldMaxs = maxs;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                totals[slot] = oldTotals[i];
+                mins[slot] = oldMins[i];
+                maxs[slot] = oldMaxs[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        counts = new long[capacity];
+        totals = new double[capacity];
+        mins = new double[capacity];
+        maxs = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    private void deleteRuns() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    /**
+     * Reads a run file one user at a time.
+     */
+    private static class RunReader implements AutoCloseable {
+        private final DataInputStream in;
+
+        private int userId;
+
+        private long count;
+
+        private double total;
+
+        private double min;
+
+        private double max;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+        }
+
+        int userId() {
+            return userId;
+        }
+
+        /**
+         * @return {@code false} at the end of the run
+         */
+        boolean next() throws IOException {
+            try {
+                userId = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readLong();
+            total = in.readDouble();
+            min = in.readDouble();
+            max = in.readDouble();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.arpan.demo_batch.cache;
+
+import com.arpan.demo_batch.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded cache in front of the user service lookup.
+ * A single instance lives in the application context, so it is shared by all chunks and job executions of the JVM.
+ * Eviction is size based (Caffeine's W-TinyLFU) plus a time-to-live after the entry was loaded.
+ */
+@Slf4j
+public class UserCache {
+
+    private final Cache<Integer, User> users;
+
+    public UserCache(long maximumSize, Duration timeToLive) {
+        log.info("Creating user cache: maximumSize={}, timeToLive={}", maximumSize, timeToLive);
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached user or loads it with the given loader. Exceptions thrown by the loader are propagated
+     * and nothing is cached for that id.
+     */
+    public User get(int userId, IntFunction<User> loader) {
+        return users.get(userId, id -> loader.apply(id));
+    }
+
+    public User getIfPresent(int userId) {
+        return users.getIfPresent(userId);
+    }
+
+    /**
+     * Whether the user is cached, without counting a hit or a miss.
+     */
+    public boolean contains(int userId) {
+        return users.asMap().containsKey(userId);
+    }
+
+    public void put(User user) {
+        users.put(user.getUserId(), user);
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    public long size() {
+        return users.estimatedSize();
+    }
+
+    /**
+     * Runs pending maintenance (evictions) right away instead of on the next cache access.
+     */
+    public void cleanUp() {
+        users.cleanUp();
+    }
+
+    /**
+     * Cumulative hit, miss and eviction counters since the cache was created.
+     */
+    public CacheStats stats() {
+        return users.stats();
+    }
+}
@@ -0,0 +1,326 @@
+package com.arpan.demo_batch.cache;
+
+import com.arpan.demo_batch.model.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Read-only user table loaded from a {@code userId,name,email} CSV snapshot of the user master data.
+ * <p>
+ * The users are kept in primitive arrays instead of a {@code Map<Integer, User>}: an open-addressing table
+ * (linear probing, at most 3/4 full) of {@code int} ids and {@code int} references into byte pages, which hold
+ * every user as {@code name length, name, email length, email} in UTF-8 with varint lengths. That is about 11 to
+ * 21 bytes of table plus the encoded name and email per user, and no objects per user apart from the pages.
+ * {@link #get} decodes a new {@link User} on every call.
+ * <p>
+ * The CSV is parsed from bytes: the first line is skipped when it does not start with a digit, fields are not
+ * quoted, blank lines are skipped and a later line with the same id replaces the earlier one.
+ */
+public class UserSnapshot {
+    static final int PAGE_BITS = 24;
+
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private static final int MAX_PAGES = 256;
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+
+    private int[] refs;
+
+    private int mask;
+
+    private int size;
+
+    private byte[][] pages = new byte[1][];
+
+    private int pageCount;
+
+    private int pageOffset;
+
+    private int pageSize;
+
+    UserSnapshot(int expectedUsers) {
+        this(expectedUsers, PAGE_BITS);
+    }
+
+    UserSnapshot(int expectedUsers, int pageBits) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedUsers + expectedUsers / 3) * 2 - 1);
+        this.keys = new int[capacity];
+        this.refs = new int[capacity];
+        Arrays.fill(refs, EMPTY);
+        this.mask = capacity - 1;
+        this.pageSize = 1 << pageBits;
+    }
+
+    /**
+     * Loads the snapshot CSV.
+     *
+     * @throws IOException if the file cannot be read or a line has no numeric user id
+     */
+    public static UserSnapshot load(Path file) throws IOException {
+        UserSnapshot snapshot = new UserSnapshot(0);
+        try (InputStream in = Files.newInputStream(file)) {
+            new Parser(in, snapshot).parse(file);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the user with this id, or {@code null} when it is not in the snapshot
+     */
+    public User get(int userId) {
+        int ref = refs[slot(userId)];
+        if (ref == EMPTY) {
+            return null;
+        }
+        byte[] page = pages[ref >>> PAGE_BITS];
+        int position = ref & (PAGE_SIZE - 1);
+        int nameLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = page[position++];
+            nameLength |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        String name = new String(page, position, nameLength, StandardCharsets.UTF_8);
+        position += nameLength;
+        int emailLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = page[position++];
+            emailLength |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return new User(userId, name, new String(page, position, emailLength, StandardCharsets.UTF_8));
+    }
+
+    public boolean contains(int userId) {
+        return refs[slot(userId)] != EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Heap used by the table and the pages, including the unused part of the last page.
+     */
+    public long memoryBytes() {
+        long bytes = 2L * keys.length * Integer.BYTES;
+        for (int i = 0; i < pageCount; i++) {
+            bytes += pages[i].length;
+        }
+        return bytes;
+    }
+
+    void put(int userId, byte[] line, int nameStart, int nameLength, int emailStart, int emailLength) {
+        int recordLength = varintLength(nameLength) + nameLength + varintLength(emailLength) + emailLength;
+        int ref = allocate(recordLength);
+        byte[] page = pages[ref >>> PAGE_BITS];
+        int position = ref & (PAGE_SIZE - 1);
+        position = writeVarint(page, position, nameLength);
+        System.arraycopy(line, nameStart, page, position, nameLength);
+        position = writeVarint(page, position + nameLength, emailLength);
+        System.arraycopy(line, emailStart, page, position, emailLength);
+
+        int slot = slot(userId);
+        if (refs[slot] == EMPTY) {
+            keys[slot] = userId;
+            size++;
+        }
+        refs[slot] = ref;
+        if (size > (mask + 1) - ((mask + 1) >>> 2)) {
+            grow();
+        }
+    }
+
+    /**
+     * The slot holding {@code userId}, or the empty slot where it belongs.
+     */
+    private int slot(int userId) {
+        // the golden ratio hash spreads consecutive ids over the table
+        int slot = (userId * 0x9E3779B9) & mask;
+        while (refs[slot] != EMPTY && keys[slot] != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldRefs = refs;
+        keys = new int[oldKeys.length * 2];
+        refs = new int[oldRefs.length * 2];
+        Arrays.fill(refs, EMPTY);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldRefs[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                refs[slot] = oldRefs[i];
+            }
+        }
+    }
+
+    /**
+     * Reserves {@code length} bytes that do not cross a page; the last page grows by doubling up to the page size.
+     */
+    private int allocate(int length) {
+        if (length > pageSize) {
+            throw new IllegalArgumentException("User record of " + length + " bytes is larger than a page");
+        }
+        if (pageCount == 0 || pageOffset + length > pageSize) {
+            if (pageCount == MAX_PAGES) {
+                throw new IllegalStateException("User snapshot is larger than " + MAX_PAGES + " pages");
+            }
+            if (pageCount > 0) {
+                // the full page no longer grows
+                pages[pageCount - 1] = Arrays.copyOf(pages[pageCount - 1], pageOffset);
+            }
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            pages[pageCount++] = new byte[Math.min(pageSize, Math.max(4096, length))];
+            pageOffset = 0;
+        }
+        byte[] page = pages[pageCount - 1];
+        if (pageOffset + length > page.length) {
+            pages[pageCount - 1] = Arrays.copyOf(page, Math.min(pageSize, Math.max(page.length * 2, pageOffset + length)));
+        }
+        int ref = ((pageCount - 1) << PAGE_BITS) | pageOffset;
+        pageOffset += length;
+        return ref;
+    }
+
+    private static int varintLength(int value) {
+        return value < 0x80 ? 1 : value < 0x4000 ? 2 : value < 0x200000 ? 3 : 4;
+    }
+
+    private static int writeVarint(byte[] page, int position, int value) {
+        while (value >= 0x80) {
+            page[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        page[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Splits the CSV into lines and the lines into the three fields without creating Strings.
+     */
+    private static final class Parser {
+
+        private final InputStream in;
+
+        private final UserSnapshot snapshot;
+
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private int position;
+
+        private int limit;
+
+        private byte[] line = new byte[256];
+
+        private long lineNumber;
+
+        Parser(InputStream in, UserSnapshot snapshot) {
+            this.in = in;
+            this.snapshot = snapshot;
+        }
+
+        void parse(Path file) throws IOException {
+            int length;
+            while ((length = readLine()) >= 0) {
+                lineNumber++;
+                if (length == 0 || (lineNumber == 1 && !isDigit(line[0]) && line[0] != '-')) {
+                    continue;
+                }
+                parseLine(length, file);
+            }
+        }
+
+        private void parseLine(int length, Path file) throws IOException {
+            int index = 0;
+            boolean negative = line[0] == '-';
+            if (negative) {
+                index++;
+            }
+            long userId = 0;
+            int digitsStart = index;
+            while (index < length && isDigit(line[index])) {
+                userId = userId * 10 + (line[index++] - '0');
+                if (userId > Integer.MAX_VALUE + 1L) {
+                    break;
+                }
+            }
+            if (index == digitsStart || (index < length && line[index] != ',')
+                    || userId > (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) {
+                throw new IOException("Invalid user id in line " + lineNumber + " of " + file);
+            }
+            int nameStart = Math.min(index + 1, length);
+            int nameEnd = nameStart;
+            while (nameEnd < length && line[nameEnd] != ',') {
+                nameEnd++;
+            }
+            int emailStart = Math.min(nameEnd + 1, length);
+            int emailEnd = emailStart;
+            while (emailEnd < length && line[emailEnd] != ',') {
+                emailEnd++;
+            }
+            snapshot.put((int) (negative ? -userId : userId), line,
+                    nameStart, nameEnd - nameStart, emailStart, emailEnd - emailStart);
+        }
+
+        /**
+         * Reads the next line without its terminator into {@link #line}.
+         *
+         * @return its length, or -1 at the end of the file
+         */
+        private int readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length == 0 ? -1 : trimCarriageReturn(length);
+                    }
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '\n') {
+                    end++;
+                }
+                int count = end - position;
+                if (length + count > line.length) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+                }
+                System.arraycopy(buffer, position, line, length, count);
+                length += count;
+                position = end;
+                if (end < limit) {
+                    position++;
+                    return trimCarriageReturn(length);
+                }
+            }
+        }
+
+        private int trimCarriageReturn(int length) {
+            return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+    }
+}
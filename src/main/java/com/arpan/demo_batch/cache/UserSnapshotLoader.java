@@ -0,0 +1,54 @@
+package com.arpan.demo_batch.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Loads the {@link UserSnapshot} of a file when a step starts. A single instance lives in the application context and
+ * keeps the last snapshot, so the steps and partitions of all job executions share it and the file is only read
+ * again after it was replaced (other size or modification time).
+ */
+@Slf4j
+public class UserSnapshotLoader {
+
+    private Path file;
+
+    private FileTime lastModified;
+
+    private long fileSize;
+
+    private UserSnapshot snapshot;
+
+    /**
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public synchronized UserSnapshot load(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (snapshot != null && file.equals(this.file) && attributes.lastModifiedTime().equals(lastModified)
+                    && attributes.size() == fileSize) {
+                return snapshot;
+            }
+            // let the previous snapshot be collected while the new one is loaded
+            snapshot = null;
+            long start = System.nanoTime();
+            UserSnapshot loaded = UserSnapshot.load(file);
+            log.info("Loaded user snapshot {}: {} users in {} ms, {} bytes ({} bytes per user)",
+                    file, loaded.size(), (System.nanoTime() - start) / 1_000_000, loaded.memoryBytes(),
+                    loaded.size() > 0 ? loaded.memoryBytes() / loaded.size() : 0);
+            this.file = file;
+            this.lastModified = attributes.lastModifiedTime();
+            this.fileSize = attributes.size();
+            this.snapshot = loaded;
+            return loaded;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load user snapshot " + file, e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.arpan.demo_batch.chunk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Completion policy whose chunk size follows the time a chunk takes, from reading its first item to its commit.
+ * <p>
+ * After every committed chunk the time per item is smoothed and the next chunk gets as many items as fit in
+ * {@code targetCommitDuration}, growing at most twofold per chunk, within {@code [minSize, maxSize]}. A chunk that
+ * is rolled back, or in which more than {@code failureRateThreshold} of the items were skipped, halves the size
+ * instead: retries and rollbacks cost a whole chunk, so failing items are cheaper in small chunks.
+ * <p>
+ * Must be registered as chunk and step listener of the step, and be step scoped when several steps use it at once.
+ * The sizes of the committed chunks, i.e. the items they read (a last partial chunk with fewer items than the limit),
+ * are stored in the step execution context when the step ends: {@value #SIZES_KEY} ({@code size x chunks, ...}), {@value #MIN_SIZE_KEY}, {@value #MAX_SIZE_KEY},
+ * {@value #AVERAGE_SIZE_KEY}, {@value #ADJUSTMENTS_KEY}; {@value #LAST_SIZE_KEY} is updated after every chunk and a
+ * restart continues with it.
+ */
+@Slf4j
+public class AdaptiveChunkSizePolicy extends SimpleCompletionPolicy implements ChunkListener, StepExecutionListener {
+    public static final String LAST_SIZE_KEY = "adaptiveChunk.lastSize";
+    public static final String MIN_SIZE_KEY = "adaptiveChunk.minSize";
+    public static final String MAX_SIZE_KEY = "adaptiveChunk.maxSize";
+    public static final String AVERAGE_SIZE_KEY = "adaptiveChunk.averageSize";
+    public static final String ADJUSTMENTS_KEY = "adaptiveChunk.adjustments";
+    public static final String SIZES_KEY = "adaptiveChunk.sizes";
+
+    /** Weight of the last chunk in the smoothed time per item. */
+    private static final double SMOOTHING = 0.3;
+
+    private final int initialSize;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long targetNanos;
+
+    private final double failureRateThreshold;
+
+    private final LongSupplier nanoClock;
+
+    /** Chunks committed per number of items read by the chunk. */
+    private final TreeMap<Integer, Long> sizeCounts = new TreeMap<>();
+
+    private double nanosPerItem = Double.NaN;
+
+    /** Whether a chunk was started and not committed yet; a rolled back chunk is processed again. */
+    private boolean chunkInProgress;
+
+    private long chunkStartNanos;
+
+    private long consumedAtLastCommit;
+
+    private long skipsAtLastCommit;
+
+    private long adjustments;
+
+    public AdaptiveChunkSizePolicy(int initialSize, int minSize, int maxSize, Duration targetCommitDuration,
+                                   double failureRateThreshold) {
+        this(initialSize, minSize, maxSize, targetCommitDuration, failureRateThreshold, System::nanoTime);
+    }
+
+    AdaptiveChunkSizePolicy(int initialSize, int minSize, int maxSize, Duration targetCommitDuration,
+                            double failureRateThreshold, LongSupplier nanoClock) {
+        super(initialSize);
+        if (minSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid chunk size bounds [" + minSize + ", " + maxSize + "]");
+        }
+        this.initialSize = clamp(initialSize, minSize, maxSize);
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.targetNanos = targetCommitDuration.toNanos();
+        this.failureRateThreshold = failureRateThreshold;
+        this.nanoClock = nanoClock;
+        setChunkSize(this.initialSize);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        int size = executionContext.containsKey(LAST_SIZE_KEY)
+                ? clamp(executionContext.getInt(LAST_SIZE_KEY), minSize, maxSize)
+                : initialSize;
+        setChunkSize(size);
+        sizeCounts.clear();
+        nanosPerItem = Double.NaN;
+        adjustments = 0;
+        chunkInProgress = false;
+        consumedAtLastCommit = consumed(stepExecution);
+        skipsAtLastCommit = stepExecution.getSkipCount();
+        log.info("Chunk size of step {} starts at {} (adaptive in [{}, {}])",
+                stepExecution.getStepName(), size, minSize, maxSize);
+    }
+
+    /**
+     * The time of a chunk includes its rolled back attempts.
+     */
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        if (!chunkInProgress) {
+            chunkInProgress = true;
+            chunkStartNanos = nanoClock.getAsLong();
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        chunkInProgress = false;
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        long consumed = consumed(stepExecution);
+        long items = consumed - consumedAtLastCommit;
+        long skips = stepExecution.getSkipCount() - skipsAtLastCommit;
+        consumedAtLastCommit = consumed;
+        skipsAtLastCommit = stepExecution.getSkipCount();
+        if (items == 0) {
+            return;
+        }
+        sizeCounts.merge((int) items, 1L, Long::sum);
+
+        if (skips > items * failureRateThreshold) {
+            resize(getChunkSize() / 2, skips + " of " + items + " items skipped");
+        } else {
+            double chunkNanosPerItem = (double) (nanoClock.getAsLong() - chunkStartNanos) / items;
+            nanosPerItem = Double.isNaN(nanosPerItem)
+                    ? chunkNanosPerItem
+                    : SMOOTHING * chunkNanosPerItem + (1 - SMOOTHING) * nanosPerItem;
+            long fitting = nanosPerItem > 0 ? (long) (targetNanos / nanosPerItem) : Long.MAX_VALUE;
+            resize((int) Math.min(fitting, 2L * getChunkSize()), null);
+        }
+        stepExecution.getExecutionContext().putInt(LAST_SIZE_KEY, getChunkSize());
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        resize(getChunkSize() / 2, "chunk rolled back");
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        executionContext.putInt(LAST_SIZE_KEY, getChunkSize());
+        executionContext.putLong(ADJUSTMENTS_KEY, adjustments);
+        executionContext.putString(SIZES_KEY, sizeCounts.entrySet().stream()
+                .map(entry -> entry.getKey() + " x " + entry.getValue())
+                .collect(Collectors.joining(", ")));
+        if (!sizeCounts.isEmpty()) {
+            long chunks = 0;
+            long items = 0;
+            for (Map.Entry<Integer, Long> entry : sizeCounts.entrySet()) {
+                chunks += entry.getValue();
+                items += entry.getKey() * entry.getValue();
+            }
+            executionContext.putInt(MIN_SIZE_KEY, sizeCounts.firstKey());
+            executionContext.putInt(MAX_SIZE_KEY, sizeCounts.lastKey());
+            executionContext.putDouble(AVERAGE_SIZE_KEY, (double) items / chunks);
+        }
+        log.info("Chunk sizes of step {}: {} ({} adjustments)",
+                stepExecution.getStepName(), executionContext.getString(SIZES_KEY), adjustments);
+        return null;
+    }
+
+    private void resize(int size, String reason) {
+        int newSize = clamp(size, minSize, maxSize);
+        if (newSize == getChunkSize()) {
+            return;
+        }
+        if (reason != null) {
+            log.info("Chunk size {} -> {}: {}", getChunkSize(), newSize, reason);
+        } else {
+            log.debug("Chunk size {} -> {}", getChunkSize(), newSize);
+        }
+        setChunkSize(newSize);
+        adjustments++;
+    }
+
+    private static long consumed(StepExecution stepExecution) {
+        return stepExecution.getReadCount() + stepExecution.getReadSkipCount();
+    }
+
+    private static int clamp(int size, int min, int max) {
+        return Math.max(min, Math.min(max, size));
+    }
+}
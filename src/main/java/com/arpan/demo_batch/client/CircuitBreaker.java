@@ -0,0 +1,169 @@
+package com.arpan.demo_batch.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker.
+ * <ul>
+ *     <li>CLOSED: calls are permitted and their outcomes are kept in a sliding window of the last
+ *     {@code slidingWindowSize} calls. Once the window holds at least {@code minimumCalls} outcomes and the failure
+ *     rate reaches {@code failureRateThreshold} percent, the breaker opens.</li>
+ *     <li>OPEN: calls are rejected until {@code openDuration} has passed, then the breaker is half-open.</li>
+ *     <li>HALF_OPEN: {@code halfOpenCalls} trial calls are permitted. One failure opens the breaker again; when all
+ *     of them succeed it closes with an empty window.</li>
+ * </ul>
+ * Thread safe. Every transition starts a new generation, and a permission carries the generation it was given in: the
+ * outcome of a call that was started in an earlier generation, e.g. a call of the closed breaker that ends while it is
+ * half-open, is ignored.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Returned by {@link #tryAcquirePermission()} when the call is not permitted.
+     */
+    public static final long NOT_PERMITTED = -1;
+
+    private final String name;
+
+    private final int failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long openDurationNanos;
+
+    private final int halfOpenCalls;
+
+    private final LongSupplier nanoClock;
+
+    /** Ring buffer of the last call outcomes, {@code true} for a failure. */
+    private final boolean[] window;
+
+    private int windowIndex;
+
+    private int windowCount;
+
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+
+    private long generation;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(String name, int failureRateThreshold, int slidingWindowSize, int minimumCalls,
+                          Duration openDuration, int halfOpenCalls) {
+        this(name, failureRateThreshold, slidingWindowSize, minimumCalls, openDuration, halfOpenCalls, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int failureRateThreshold, int slidingWindowSize, int minimumCalls,
+                   Duration openDuration, int halfOpenCalls, LongSupplier nanoClock) {
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+        this.window = new boolean[slidingWindowSize];
+    }
+
+    /**
+     * Whether a call may be made now. Every permitted call must be followed by {@link #onSuccess(long)} or
+     * {@link #onFailure(long)} with the returned generation.
+     *
+     * @return the generation of the permission, or {@link #NOT_PERMITTED}
+     */
+    public synchronized long tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openDurationNanos) {
+                return NOT_PERMITTED;
+            }
+            transitionTo(State.HALF_OPEN);
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return NOT_PERMITTED;
+            }
+            halfOpenPermits--;
+        }
+        return generation;
+    }
+
+    public synchronized void onSuccess(long permission) {
+        if (permission != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= halfOpenCalls) {
+                resetWindow();
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure(long permission) {
+        if (permission != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            log.warn("Circuit breaker {}: trial call failed", name);
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (windowCount >= minimumCalls && windowFailures * 100L >= (long) failureRateThreshold * windowCount) {
+                log.warn("Circuit breaker {}: {} of the last {} calls failed", name, windowFailures, windowCount);
+                open();
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        openedAt = nanoClock.getAsLong();
+        resetWindow();
+        transitionTo(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void transitionTo(State newState) {
+        log.info("Circuit breaker {}: {} -> {}", name, state, newState);
+        state = newState;
+        generation++;
+    }
+}
@@ -0,0 +1,153 @@
+package com.arpan.demo_batch.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the requests of a {@code RestTemplate} that are in flight at the same time to {@code maxConnections}.
+ * Neither {@code HttpURLConnection} nor the JDK {@code HttpClient} has a connection limit of its own: over HTTP/1.1
+ * they open one connection per concurrent request and keep them alive for reuse, over HTTP/2 the JDK client
+ * multiplexes the requests on one connection per host.
+ * A request waits up to {@code acquireTimeout} for a free slot and fails with an {@link IOException} otherwise, like
+ * any other connection failure.
+ * <p>
+ * Meters, tagged with {@code client}: {@code http.client.connections.active} (requests in flight),
+ * {@code http.client.connections.pending} (requests waiting), {@code http.client.connections.max} and the
+ * {@code http.client.connections.acquire} timer of the wait.
+ */
+public class ConnectionLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private final int maxConnections;
+
+    private final Semaphore permits;
+
+    private final long acquireTimeoutNanos;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer acquireTimer;
+
+    public ConnectionLimitInterceptor(String clientName, int maxConnections, Duration acquireTimeout,
+                                      MeterRegistry meterRegistry) {
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections, true);
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        Gauge.builder("http.client.connections.active", this, ConnectionLimitInterceptor::getActive)
+                .description("Requests in flight")
+                .tag("client", clientName)
+                .register(meterRegistry);
+        Gauge.builder("http.client.connections.pending", pending, AtomicInteger::get)
+                .description("Requests waiting for a connection")
+                .tag("client", clientName)
+                .register(meterRegistry);
+        Gauge.builder("http.client.connections.max", this, interceptor -> interceptor.maxConnections)
+                .description("Maximum number of requests in flight")
+                .tag("client", clientName)
+                .register(meterRegistry);
+        this.acquireTimer = Timer.builder("http.client.connections.acquire")
+                .description("Time requests waited for a connection")
+                .tag("client", clientName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        acquire(request);
+        try {
+            return new ReleasingResponse(execution.execute(request, body), permits);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getActive() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void acquire(HttpRequest request) throws IOException {
+        long start = System.nanoTime();
+        pending.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new IOException("No connection to " + request.getURI().getHost() + " free within "
+                        + Duration.ofNanos(acquireTimeoutNanos) + " (" + maxConnections + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + request.getURI().getHost());
+        } finally {
+            pending.decrementAndGet();
+            acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Frees the slot when the response is closed, which {@code RestTemplate} does once the body is read.
+     */
+    private static final class ReleasingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+
+        private final Semaphore permits;
+
+        private boolean released;
+
+        ReleasingResponse(ClientHttpResponse response, Semaphore permits) {
+            this.response = response;
+            this.permits = permits;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (!released) {
+                    released = true;
+                    permits.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.arpan.demo_batch.client;
+
+/**
+ * HTTP client behind the user service {@code RestTemplate}, selected with {@code batch.user-service.http.client}.
+ */
+public enum HttpClientType {
+    /**
+     * {@code HttpURLConnection}: HTTP/1.1, idle connections are kept alive and reused (up to the
+     * {@code http.maxConnections} system property per host, 5 by default). Blocking calls on the calling thread.
+     */
+    URL_CONNECTION,
+    /**
+     * JDK {@code java.net.http.HttpClient} with {@code batch.user-service.http.version}: over HTTP/2 the requests are
+     * multiplexed on one connection per host. Responses are handed over from the client's selector thread, which
+     * costs more per request than {@link #URL_CONNECTION} when the service answers quickly.
+     */
+    JDK
+}
@@ -0,0 +1,403 @@
+package com.arpan.demo_batch.client;
+
+import com.arpan.demo_batch.exception.UserMissingException;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.exception.UserServiceUnavailableException;
+import com.arpan.demo_batch.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP access to the user service.
+ * <ul>
+ *     <li>{@code GET {baseUrl}/{id}} returns a single user</li>
+ *     <li>{@code GET {baseUrl}?ids=1,3,4} returns the users that exist among the given ids</li>
+ * </ul>
+ * When the bulk endpoint answers 404, 405 or 501 it is considered missing, and all later bulk requests are
+ * resolved with per-id calls instead.
+ * <p>
+ * Per-id calls for several users run on virtual threads, with at most {@code maxConcurrency} requests in flight.
+ * <p>
+ * Optionally the lookups go through a {@link CircuitBreaker}: errors and timeouts count as failures, while a 404
+ * counts as a successful call. When it is open, lookups fail at once with {@link UserServiceUnavailableException}.
+ * Ids the service reported as missing (404, or absent from a bulk response) are remembered for a short time and
+ * fail with {@link UserMissingException} without a request.
+ * <p>
+ * Per-id lookups are coalesced (single-flight): while a lookup of an id is in flight, further lookups of the same id,
+ * sync or async, wait for it and get its user or its failure instead of sending another request. These are counted
+ * as {@code user.service.coalesced}. A lookup that starts after the shared one completed sends a new request.
+ * <p>
+ * Every request is timed as {@code user.service.requests}, tagged with its {@code type} ({@code single} or
+ * {@code bulk}) and {@code outcome} ({@code success}, {@code missing} or {@code error}); lookups rejected by the open
+ * circuit breaker are counted as {@code user.service.rejected}.
+ */
+@Slf4j
+public class UserServiceClient implements AutoCloseable {
+
+    private final RestTemplate restTemplate;
+
+    private final String baseUrl;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Semaphore permits;
+
+    private final ConcurrentMap<Integer, CompletableFuture<User>> inFlightLookups = new ConcurrentHashMap<>();
+
+    private volatile boolean bulkSupported = true;
+
+    private boolean coalesceLookups = true;
+
+    private CircuitBreaker circuitBreaker;
+
+    private Cache<Integer, Boolean> missingUserIds;
+
+    private Timer singleSuccessTimer;
+
+    private Timer singleMissingTimer;
+
+    private Timer singleErrorTimer;
+
+    private Timer bulkSuccessTimer;
+
+    private Timer bulkErrorTimer;
+
+    private Counter rejectedCounter;
+
+    private Counter coalescedCounter;
+
+    public UserServiceClient(RestTemplate restTemplate, String baseUrl) {
+        this(restTemplate, baseUrl, 1);
+    }
+
+    public UserServiceClient(RestTemplate restTemplate, String baseUrl, int maxConcurrency) {
+        this.restTemplate = restTemplate;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.permits = new Semaphore(maxConcurrency);
+        setMeterRegistry(Metrics.globalRegistry);
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.singleSuccessTimer = requestTimer(meterRegistry, "single", "success");
+        this.singleMissingTimer = requestTimer(meterRegistry, "single", "missing");
+        this.singleErrorTimer = requestTimer(meterRegistry, "single", "error");
+        this.bulkSuccessTimer = requestTimer(meterRegistry, "bulk", "success");
+        this.bulkErrorTimer = requestTimer(meterRegistry, "bulk", "error");
+        this.rejectedCounter = Counter.builder("user.service.rejected")
+                .description("User lookups rejected by the open circuit breaker")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("user.service.coalesced")
+                .description("User lookups that shared the request of a lookup of the same id in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether concurrent lookups of the same id share one request; on by default.
+     */
+    public void setCoalesceLookups(boolean coalesceLookups) {
+        this.coalesceLookups = coalesceLookups;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Remembers ids the service reported as missing for {@code timeToLive}, so they fail without a request.
+     */
+    public void setMissingUserTtl(Duration timeToLive, long maximumSize) {
+        this.missingUserIds = timeToLive.isZero() ? null : Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+    }
+
+    public User fetchUser(int userId) throws UserNotFoundException {
+        if (!coalesceLookups) {
+            return lookup(userId);
+        }
+        CompletableFuture<User> lookup = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = inFlightLookups.putIfAbsent(userId, lookup);
+        if (inFlight != null) {
+            coalescedCounter.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new UserNotFoundException(ex.getCause().getMessage());
+            }
+        }
+        return complete(userId, lookup);
+    }
+
+    private User lookup(int userId) throws UserNotFoundException {
+        log.info("fetchMoreUserDetails for userId: {}", userId);
+        if (isKnownMissing(userId)) {
+            throw new UserMissingException("User " + userId + " is known to be missing");
+        }
+        long permission = acquirePermission("user " + userId);
+        User user = null;
+        long start = System.nanoTime();
+        try {
+            String url = baseUrl + "/" + userId;
+            log.info("invoking: {}", url);
+            user = restTemplate.getForObject(url, User.class);
+            singleSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordSuccess(permission);
+        } catch (HttpClientErrorException.NotFound ex) {
+            // the service is fine, the user does not exist
+            singleMissingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordSuccess(permission);
+            markMissing(userId);
+            throw new UserMissingException("User " + userId + " does not exist");
+        } catch (RestClientException ex) {
+            singleErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordFailure(permission);
+            log.error("Error fetchMoreUserDetails::RestClientException........ {}", ex.getMessage());
+            throw new UserNotFoundException(ex.getMessage());
+        } catch (Exception e) {
+            singleErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordFailure(permission);
+            log.error("Error fetchMoreUserDetails::Exception........ {}", e.getMessage());
+            throw new UserNotFoundException(e.getMessage());
+        } catch (Error e) {
+            // e.g. a StackOverflowError while reading the response; the permission must still be given back
+            singleErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            recordFailure(permission);
+            throw e;
+        }
+        return user;
+    }
+
+    /**
+     * Whether the service reported the user as missing within the missing user time-to-live.
+     */
+    public boolean isKnownMissing(int userId) {
+        return missingUserIds != null && missingUserIds.getIfPresent(userId) != null;
+    }
+
+    /**
+     * Fetches the user on a virtual thread once one of the {@code maxConcurrency} permits is free.
+     * The future completes exceptionally with {@link UserNotFoundException} when the lookup fails. A lookup of the
+     * same id in flight is joined without taking a permit.
+     */
+    public CompletableFuture<User> fetchUserAsync(int userId) {
+        if (!coalesceLookups) {
+            return CompletableFuture.supplyAsync(() -> fetchPermitted(userId, this::lookup), executor);
+        }
+        CompletableFuture<User> lookup = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = inFlightLookups.putIfAbsent(userId, lookup);
+        if (inFlight != null) {
+            coalescedCounter.increment();
+            // a copy, so a caller cannot complete or cancel the lookup the others wait for
+            return inFlight.copy();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    fetchPermitted(userId, id -> complete(id, lookup));
+                } catch (RuntimeException ex) {
+                    // a failed lookup is completed already, this is for failing to get a permit
+                    inFlightLookups.remove(userId, lookup);
+                    lookup.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // not started (the client is closed): lookups joining it would wait forever
+            inFlightLookups.remove(userId, lookup);
+            lookup.completeExceptionally(ex);
+            throw ex;
+        }
+        return lookup.copy();
+    }
+
+    private User fetchPermitted(int userId, IntFunction<User> fetch) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new UserNotFoundException("Interrupted while waiting to fetch user " + userId);
+        }
+        try {
+            return fetch.apply(userId);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Looks the user up and completes {@code lookup}, the in-flight lookup of the id, with the outcome. It is removed
+     * from the in-flight lookups just before, so a lookup of the id after that sends a new request. An {@link Error}
+     * completes it too, or the lookups that joined it would wait forever.
+     */
+    private User complete(int userId, CompletableFuture<User> lookup) {
+        try {
+            User user = lookup(userId);
+            inFlightLookups.remove(userId, lookup);
+            lookup.complete(user);
+            return user;
+        } catch (RuntimeException | Error ex) {
+            inFlightLookups.remove(userId, lookup);
+            lookup.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Resolves the given ids concurrently with per-id requests. Ids that could not be resolved are absent from
+     * the returned map.
+     */
+    public Map<Integer, User> fetchUsersConcurrently(Collection<Integer> userIds) {
+        Map<Integer, CompletableFuture<User>> futures = new LinkedHashMap<>();
+        for (Integer userId : userIds) {
+            futures.put(userId, fetchUserAsync(userId));
+        }
+        Map<Integer, User> usersById = new HashMap<>();
+        futures.forEach((userId, future) -> {
+            try {
+                User user = future.join();
+                if (user != null) {
+                    usersById.put(userId, user);
+                }
+            } catch (CompletionException ex) {
+                log.warn("Could not resolve user {}: {}", userId, ex.getCause().getMessage());
+            }
+        });
+        return usersById;
+    }
+
+    /**
+     * Resolves the given ids with one bulk request, or with per-id requests when the bulk endpoint is missing.
+     * Ids that could not be resolved are absent from the returned map, so the caller decides how to fail them.
+     */
+    public Map<Integer, User> fetchUsers(Collection<Integer> userIds) {
+        List<Integer> idsToFetch = userIds.stream().filter(userId -> !isKnownMissing(userId)).toList();
+        if (idsToFetch.isEmpty()) {
+            return Map.of();
+        }
+        if (bulkSupported) {
+            long permission = acquirePermission("bulk lookup of " + idsToFetch.size() + " users");
+            long start = System.nanoTime();
+            try {
+                Map<Integer, User> usersById = fetchUsersInBulk(idsToFetch);
+                bulkSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                recordSuccess(permission);
+                // the bulk endpoint returns all users that exist, so the others are missing
+                idsToFetch.stream().filter(userId -> !usersById.containsKey(userId)).forEach(this::markMissing);
+                return usersById;
+            } catch (HttpStatusCodeException ex) {
+                bulkErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (!isBulkEndpointMissing(ex)) {
+                    recordFailure(permission);
+                    throw ex;
+                }
+                recordSuccess(permission);
+                log.warn("Bulk user endpoint not available ({}), falling back to per-id lookups", ex.getStatusCode());
+                bulkSupported = false;
+            } catch (RuntimeException | Error ex) {
+                bulkErrorTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                recordFailure(permission);
+                throw ex;
+            }
+        }
+        return fetchUsersConcurrently(idsToFetch);
+    }
+
+    public boolean isBulkSupported() {
+        return bulkSupported;
+    }
+
+    private Map<Integer, User> fetchUsersInBulk(Collection<Integer> userIds) {
+        String ids = userIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        log.info("invoking: {}?ids={}", baseUrl, ids);
+        User[] users = restTemplate.getForObject(baseUrl + "?ids={ids}", User[].class, ids);
+        Map<Integer, User> usersById = new HashMap<>();
+        if (users != null) {
+            for (User user : users) {
+                usersById.put(user.getUserId(), user);
+            }
+        }
+        return usersById;
+    }
+
+    /**
+     * @return the circuit breaker permission of the call, to record its outcome with
+     */
+    private long acquirePermission(String lookup) {
+        if (circuitBreaker == null) {
+            return CircuitBreaker.NOT_PERMITTED;
+        }
+        long permission = circuitBreaker.tryAcquirePermission();
+        if (permission == CircuitBreaker.NOT_PERMITTED) {
+            rejectedCounter.increment();
+            throw new UserServiceUnavailableException("User service circuit breaker is open, " + lookup + " not attempted");
+        }
+        return permission;
+    }
+
+    private void recordSuccess(long permission) {
+        if (circuitBreaker != null) {
+            circuitBreaker.onSuccess(permission);
+        }
+    }
+
+    private void recordFailure(long permission) {
+        if (circuitBreaker != null) {
+            circuitBreaker.onFailure(permission);
+        }
+    }
+
+    private void markMissing(int userId) {
+        if (missingUserIds != null) {
+            missingUserIds.put(userId, Boolean.TRUE);
+        }
+    }
+
+    private static Timer requestTimer(MeterRegistry meterRegistry, String type, String outcome) {
+        return Timer.builder("user.service.requests")
+                .description("Requests to the user service")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static boolean isBulkEndpointMissing(HttpStatusCodeException ex) {
+        return ex.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)
+                || ex.getStatusCode().isSameCodeAs(HttpStatus.METHOD_NOT_ALLOWED)
+                || ex.getStatusCode().isSameCodeAs(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
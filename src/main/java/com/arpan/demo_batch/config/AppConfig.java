@@ -1,14 +1,99 @@
 package com.arpan.demo_batch.config;
 
+import com.arpan.demo_batch.cache.UserCache;
+import com.arpan.demo_batch.cache.UserSnapshotLoader;
+import com.arpan.demo_batch.client.CircuitBreaker;
+import com.arpan.demo_batch.client.ConnectionLimitInterceptor;
+import com.arpan.demo_batch.client.HttpClientType;
+import com.arpan.demo_batch.client.UserServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class AppConfig {
 
+    /**
+     * {@code RestTemplate} of the user service with its own timeouts and at most {@code max-connections} requests in
+     * flight, see {@link HttpClientType} for the clients.
+     */
+    @Bean
+    public RestTemplate userServiceRestTemplate(@Value("${batch.user-service.http.client:URL_CONNECTION}") HttpClientType clientType,
+                                                @Value("${batch.user-service.http.version:HTTP_2}") HttpClient.Version version,
+                                                @Value("${batch.user-service.http.connect-timeout:2s}") Duration connectTimeout,
+                                                @Value("${batch.user-service.http.read-timeout:5s}") Duration readTimeout,
+                                                @Value("${batch.user-service.http.max-connections:64}") int maxConnections,
+                                                @Value("${batch.user-service.http.acquire-timeout:5s}") Duration acquireTimeout,
+                                                MeterRegistry meterRegistry) {
+        ClientHttpRequestFactory requestFactory = switch (clientType) {
+            case URL_CONNECTION -> {
+                SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+                factory.setConnectTimeout(connectTimeout);
+                factory.setReadTimeout(readTimeout);
+                yield factory;
+            }
+            case JDK -> {
+                JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                        .version(version)
+                        .connectTimeout(connectTimeout)
+                        .build());
+                factory.setReadTimeout(readTimeout);
+                yield factory;
+            }
+        };
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add(
+                new ConnectionLimitInterceptor("user-service", maxConnections, acquireTimeout, meterRegistry));
+        return restTemplate;
+    }
+
+    @Bean
+    public UserServiceClient userServiceClient(RestTemplate userServiceRestTemplate,
+                                               @Value("${batch.user-service.base-url:http://localhost:9191/users}") String baseUrl,
+                                               @Value("${batch.enrichment.concurrency:32}") int maxConcurrency,
+                                               @Value("${batch.user-service.circuit-breaker.enabled:true}") boolean circuitBreakerEnabled,
+                                               CircuitBreaker userServiceCircuitBreaker,
+                                               @Value("${batch.user-service.missing-user-ttl:1m}") Duration missingUserTtl,
+                                               @Value("${batch.user-service.missing-user-max-size:100000}") long missingUserMaxSize,
+                                               @Value("${batch.user-service.coalesce-lookups:true}") boolean coalesceLookups,
+                                               MeterRegistry meterRegistry) {
+        UserServiceClient userServiceClient = new UserServiceClient(userServiceRestTemplate, baseUrl, maxConcurrency);
+        userServiceClient.setMeterRegistry(meterRegistry);
+        if (circuitBreakerEnabled) {
+            userServiceClient.setCircuitBreaker(userServiceCircuitBreaker);
+        }
+        userServiceClient.setMissingUserTtl(missingUserTtl, missingUserMaxSize);
+        userServiceClient.setCoalesceLookups(coalesceLookups);
+        return userServiceClient;
+    }
+
+    @Bean
+    public CircuitBreaker userServiceCircuitBreaker(
+            @Value("${batch.user-service.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+            @Value("${batch.user-service.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${batch.user-service.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${batch.user-service.circuit-breaker.open-duration:30s}") Duration openDuration,
+            @Value("${batch.user-service.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+        return new CircuitBreaker("user-service", failureRateThreshold, slidingWindowSize, minimumCalls,
+                openDuration, halfOpenCalls);
+    }
+
+    @Bean
+    public UserCache userCache(@Value("${batch.user-cache.max-size:100000}") long maximumSize,
+                               @Value("${batch.user-cache.ttl:10m}") Duration timeToLive) {
+        return new UserCache(maximumSize, timeToLive);
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public UserSnapshotLoader userSnapshotLoader() {
+        return new UserSnapshotLoader();
     }
 }
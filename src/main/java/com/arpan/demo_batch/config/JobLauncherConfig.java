@@ -0,0 +1,43 @@
+package com.arpan.demo_batch.config;
+
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Launcher of the jobs started through the REST API. It returns as soon as the job execution is created; the job runs
+ * on {@link #jobLaunchExecutor}, which runs at most {@code batch.launcher.max-concurrent-jobs} jobs at a time and
+ * queues up to {@code batch.launcher.queue-capacity} more. A launch that does not fit in the queue fails at once.
+ * Jobs of different names may run side by side; executions of the same job share their writers and output files, so
+ * the controller does not launch a job that is still queued or running.
+ * <p>
+ * The synchronous {@code jobLauncher} of Spring Boot is left in place for the tests and the command line runner.
+ */
+@Configuration
+public class JobLauncherConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor jobLaunchExecutor(@Value("${batch.launcher.max-concurrent-jobs:1}") int maxConcurrentJobs,
+                                                    @Value("${batch.launcher.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(maxConcurrentJobs);
+        taskExecutor.setMaxPoolSize(maxConcurrentJobs);
+        taskExecutor.setQueueCapacity(queueCapacity);
+        taskExecutor.setThreadNamePrefix("job-");
+        return taskExecutor;
+    }
+
+    @Bean
+    public TaskExecutorJobLauncher asyncJobLauncher(JobRepository jobRepository,
+                                                    @Qualifier("jobLaunchExecutor") TaskExecutor jobLaunchExecutor) {
+        TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(jobLaunchExecutor);
+        return jobLauncher;
+    }
+}
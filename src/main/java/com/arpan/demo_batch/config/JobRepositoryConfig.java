@@ -0,0 +1,41 @@
+package com.arpan.demo_batch.config;
+
+import com.arpan.demo_batch.repository.JobRepositoryMode;
+import com.arpan.demo_batch.repository.WriteBehindJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * Wraps the JDBC job repository of Spring Boot in a {@link WriteBehindJobRepository} when
+ * {@code batch.job-repository.mode} is {@link JobRepositoryMode#WRITE_BEHIND}, so the job launchers, the job
+ * operator and the steps all use it.
+ */
+@Configuration
+@Slf4j
+public class JobRepositoryConfig {
+
+    @Bean
+    public static BeanPostProcessor jobRepositoryModePostProcessor(Environment environment) {
+        JobRepositoryMode mode = environment.getProperty("batch.job-repository.mode",
+                JobRepositoryMode.class, JobRepositoryMode.JDBC);
+        Duration flushInterval = environment.getProperty("batch.job-repository.flush-interval",
+                Duration.class, Duration.ofSeconds(5));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (mode == JobRepositoryMode.WRITE_BEHIND && bean instanceof JobRepository jobRepository
+                        && !(bean instanceof WriteBehindJobRepository)) {
+                    log.info("Job repository {} writes step updates behind, at most every {}", beanName, flushInterval);
+                    return new WriteBehindJobRepository(jobRepository, flushInterval);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,114 +1,683 @@
 package com.arpan.demo_batch.config;
 
+import com.arpan.demo_batch.aggregate.UserAggregatingItemWriter;
+import com.arpan.demo_batch.cache.UserSnapshotLoader;
+import com.arpan.demo_batch.chunk.AdaptiveChunkSizePolicy;
+import com.arpan.demo_batch.exception.UserMissingException;
 import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.listener.BatchMetricsListener;
 import com.arpan.demo_batch.listener.CustomRetryListener;
 import com.arpan.demo_batch.listener.CustomSkipListener;
+import com.arpan.demo_batch.listener.InputSizeEstimator;
 import com.arpan.demo_batch.listener.MyJobExecutionListener;
+import com.arpan.demo_batch.processor.EnrichmentMode;
 import com.arpan.demo_batch.processor.RetryItemProcessor;
 import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.partition.CsvByteRangePartitioner;
+import com.arpan.demo_batch.preflight.CsvPreflightTasklet;
+import com.arpan.demo_batch.preflight.PreflightDecider;
+import com.arpan.demo_batch.reader.ByteRangeFlatFileItemReader;
+import com.arpan.demo_batch.reader.DeadLetterItemReader;
+import com.arpan.demo_batch.reader.MappedTransactionItemReader;
+import com.arpan.demo_batch.reader.ReadAheadItemReader;
+import com.arpan.demo_batch.reader.ReaderType;
+import com.arpan.demo_batch.reader.UploadRegistry;
+import com.arpan.demo_batch.remote.ChunkChannel;
+import com.arpan.demo_batch.remote.ChunkChannelType;
+import com.arpan.demo_batch.remote.DirectoryChunkChannel;
+import com.arpan.demo_batch.remote.InProcessChunkChannel;
+import com.arpan.demo_batch.remote.RemoteChunkItemWriter;
+import com.arpan.demo_batch.remote.RemoteChunkWorker;
+import com.arpan.demo_batch.retry.ExponentialBackoffRetrier;
+import com.arpan.demo_batch.retry.RetryMode;
+import com.arpan.demo_batch.writer.BufferedJsonFileItemWriter;
+import com.arpan.demo_batch.writer.DeadLetterSink;
+import com.arpan.demo_batch.writer.OutputCompression;
+import com.arpan.demo_batch.writer.OutputFormat;
+import com.arpan.demo_batch.writer.RollingNdjsonItemWriter;
+import com.arpan.demo_batch.writer.TransactionJsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.FaultTolerantStepBuilder;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ExecutionContext;
-import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.LineMapper;
 import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
 import org.springframework.batch.item.file.mapping.DefaultLineMapper;
 import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
-import org.springframework.batch.item.json.JacksonJsonObjectMarshaller;
-import org.springframework.batch.item.json.JsonFileItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.WritableResource;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.dao.DeadlockLoserDataAccessException;
-import org.springframework.retry.backoff.FixedBackOffPolicy;
+import org.springframework.retry.RetryListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
-import writer.CustomJsonFileItemWriter;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
 @Configuration
 //@ConditionalOnProperty(name = "spring.batch.job.enabled", havingValue = "true")
 @Slf4j
 public class SpringBatchRetryConfig {
+    /**
+     * Job parameter with the location of the CSV to import, e.g. {@code file:/data/transactions.csv} or a plain path.
+     * Defaults to {@code input/recordRetry.csv}.
+     */
+    public static final String INPUT_FILE_PARAMETER = "input.file";
+
+    /**
+     * Job parameter of {@code deadLetterReplayJob}: the job execution whose dead-letter file is replayed.
+     */
+    public static final String DEAD_LETTER_JOB_EXECUTION_PARAMETER = "deadLetter.jobExecutionId";
+
     private static final String[] tokens = { "userid", "amount" };
 
+    private static final int SKIP_LIMIT = 100;
+
     @Value("file:input/recordRetry.csv")
     private Resource  inputCsv;
 
-    @Value("file:output/retryOutput.json")
+    @Value("${batch.output.file:file:output/retryOutput.json}")
     private WritableResource outputXml;
 
+    @Value("${batch.writer.force-sync:false}")
+    private boolean writerForceSync;
+
+    @Value("${batch.retry.mode:CHUNK}")
+    private RetryMode retryMode;
+
+    @Value("${batch.output.format:JSON}")
+    private OutputFormat outputFormat;
+
+    @Value("${batch.output.compression:NONE}")
+    private OutputCompression outputCompression;
+
+    @Value("${batch.output.rollover.max-items:0}")
+    private long rolloverMaxItems;
+
+    @Value("${batch.output.rollover.max-size:0B}")
+    private DataSize rolloverMaxSize;
+
+    @Value("${batch.reader.type:FLAT_FILE}")
+    private ReaderType readerType;
+
+    @Value("${batch.aggregation.enabled:false}")
+    private boolean aggregationEnabled;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
     @Bean(name = "retryBatchJob")
-    public Job retryJob(JobRepository jobRepository, @Qualifier("retryStep") Step retryStep) {
-        log.info("retryJob........");
+    public Job retryJob(JobRepository jobRepository, @Qualifier("retryStep") Step retryStep,
+                        @Qualifier("partitionedRetryStep") Step partitionedRetryStep,
+                        @Qualifier("pipelinedRetryStep") Step pipelinedRetryStep,
+                        @Qualifier("remoteChunkingRetryStep") Step remoteChunkingRetryStep,
+                        @Qualifier("preflightStep") Step preflightStep,
+                        @Value("${batch.step.mode:SIMPLE}") StepMode stepMode, DeadLetterSink deadLetterSink) {
+        log.info("retryJob........ (step mode: {})", stepMode);
+        Step mainStep = switch (stepMode) {
+            case SIMPLE -> retryStep;
+            case PARTITIONED -> partitionedRetryStep;
+            case PIPELINED -> pipelinedRetryStep;
+            case REMOTE_CHUNKING -> remoteChunkingRetryStep;
+        };
+        PreflightDecider preflightDecider = new PreflightDecider();
         return new JobBuilder("retryBatchJob", jobRepository)
                 .listener(new MyJobExecutionListener())
+                .listener(new InputSizeEstimator(this::inputResource, 1))
+                .listener(deadLetterSink)
                 //.incrementer(new RunIdIncrementer())
                 //.listener(customerJobExecutionListener)
-                .start(retryStep)
+                .start(preflightDecider)
+                .on(PreflightDecider.PREFLIGHT.getName()).to(preflightStep).next(mainStep)
+                .from(preflightDecider).on("*").to(mainStep)
+                .end()
+                .build();
+    }
+
+    /**
+     * Opt-in check of the first {@code preflight.lines} lines of the input, see {@link PreflightDecider}.
+     */
+    @Bean
+    public Step preflightStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                              @Qualifier("csvPreflightTasklet") Tasklet csvPreflightTasklet) {
+        return new StepBuilder("preflightStep", jobRepository)
+                .tasklet(csvPreflightTasklet, transactionManager)
                 .build();
     }
 
+    @Bean
+    @StepScope
+    public CsvPreflightTasklet csvPreflightTasklet(
+            @Value("#{jobParameters['" + INPUT_FILE_PARAMETER + "']}") String inputFile,
+            @Value("#{jobParameters['" + PreflightDecider.PREFLIGHT_LINES_PARAMETER + "']}") Long sampleLines) {
+        return new CsvPreflightTasklet(inputResource(inputFile), lineMapper(), 1, sampleLines.intValue());
+    }
+
 
     @Bean
-    public Step retryStep(JobRepository jobRepository, PlatformTransactionManager transactionManager) throws Exception {
-        log.info("Starting retryStep.......");
-        return new StepBuilder("retryStep", jobRepository)
-                .<Transaction, Transaction>chunk(5, transactionManager) // <I, O> represent the input & output types of the chunk processing
-                .reader(itemReader(inputCsv))
-                .processor(retryItemProcessor())
-                .writer(jsonFileItemWriter())
-                .faultTolerant()
+    public Step retryStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                          @Qualifier("itemReader") ItemStreamReader<Transaction> itemReader,
+                          RetryItemProcessor retryItemProcessor, MeterRegistry meterRegistry,
+                          BatchMetricsListener batchMetricsListener,
+                          AdaptiveChunkSizePolicy chunkSizePolicy, CustomSkipListener customSkipListener,
+                          UserAggregatingItemWriter userAggregatingItemWriter) throws Exception {
+        log.info("Starting retryStep....... (retry mode: {})", retryMode);
+        FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder = new StepBuilder("retryStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSizePolicy, transactionManager) // <I, O> represent the input & output types of the chunk processing
+                .reader(itemReader)
+                .processor(retryItemProcessor)
+                .writer(aggregationEnabled ? userAggregatingItemWriter : jsonFileItemWriter())
+                .faultTolerant();
+        withChunkSizePolicy(stepBuilder, chunkSizePolicy);
+        return withRetryMode(withMetrics(stepBuilder, batchMetricsListener), customSkipListener).build();
+    }
+
+    /**
+     * {@link RetryMode#CHUNK}: the step retries a failed item by rolling back and processing the chunk again.
+     * {@link RetryMode#ITEM}: the processor retries the lookup of the item itself, so a failure that remains is
+     * skipped right away, without rolling back the chunk.
+     * <p>
+     * In both modes a user that does not exist ({@link UserMissingException}) is skipped without retry, and an open
+     * user service circuit breaker ({@code UserServiceUnavailableException}) fails the step. Skipped items go to the
+     * dead-letter file of the job execution through the {@link CustomSkipListener}.
+     */
+    private FaultTolerantStepBuilder<Transaction, Transaction> withRetryMode(
+            FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder, CustomSkipListener customSkipListener) {
+        stepBuilder.listener((SkipListener<Transaction, Transaction>) customSkipListener);
+        stepBuilder.listener((RetryListener) customSkipListener);
+        stepBuilder.listener((ChunkListener) customSkipListener);
+        stepBuilder.listener((StepExecutionListener) customSkipListener);
+        if (retryMode == RetryMode.ITEM) {
+            return stepBuilder
+                    .skipLimit(SKIP_LIMIT)
+                    .skip(UserNotFoundException.class)
+                    .noRollback(UserNotFoundException.class);
+        }
+        return stepBuilder
                 .retry(UserNotFoundException.class) //DeadlockLoserDataAccessException
+                .noRetry(UserMissingException.class)
                 .retryLimit(3)
                 .listener(new CustomRetryListener())
-                .skipLimit(100)
-                .skip(UserNotFoundException.class)
-                .listener(new CustomSkipListener())
+                .skipLimit(SKIP_LIMIT)
+                .skip(UserNotFoundException.class);
+    }
+
+    /**
+     * Step scoped like the processor, whose own lookup retries it adds to the retries of a skipped item.
+     */
+    @Bean
+    @StepScope
+    public CustomSkipListener customSkipListener(DeadLetterSink deadLetterSink, RetryItemProcessor retryItemProcessor) {
+        return new CustomSkipListener(deadLetterSink, item -> retryItemProcessor.getRetryCount(item.getUserId()));
+    }
+
+    @Bean
+    public DeadLetterSink deadLetterSink(@Value("${batch.dead-letter.dir:output/dead-letter}") Path directory,
+                                         @Value("${batch.dead-letter.queue-capacity:10000}") int queueCapacity,
+                                         @Value("${batch.dead-letter.batch-size:500}") int batchSize,
+                                         @Value("${batch.dead-letter.flush-interval:1s}") Duration flushInterval,
+                                         @Value("${batch.dead-letter.offer-timeout:1s}") Duration offerTimeout,
+                                         ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new DeadLetterSink(directory, queueCapacity, batchSize, flushInterval, offerTimeout, objectMapper,
+                meterRegistry);
+    }
+
+    /**
+     * Retry, skip and rollback counters and the throughput gauge of {@link BatchMetricsListener}; the read, process
+     * and write timers are recorded by Spring Batch in the registry given to the {@link StepBuilder}.
+     */
+    private static FaultTolerantStepBuilder<Transaction, Transaction> withMetrics(
+            FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder, BatchMetricsListener batchMetricsListener) {
+        stepBuilder.listener((StepExecutionListener) batchMetricsListener);
+        stepBuilder.listener((ChunkListener) batchMetricsListener);
+        stepBuilder.listener((SkipListener<Transaction, Transaction>) batchMetricsListener);
+        stepBuilder.listener((RetryListener) batchMetricsListener);
+        return stepBuilder;
+    }
+
+    /**
+     * Step scoped, so every step execution (also every partition) adapts its own chunk size.
+     * With {@code batch.chunk.adaptive.enabled=false} the chunk size stays at {@code batch.chunk.size}.
+     */
+    @Bean
+    @StepScope
+    public AdaptiveChunkSizePolicy chunkSizePolicy(@Value("${batch.chunk.size:5}") int chunkSize,
+                                                   @Value("${batch.chunk.adaptive.enabled:true}") boolean adaptive,
+                                                   @Value("${batch.chunk.adaptive.min-size:1}") int minSize,
+                                                   @Value("${batch.chunk.adaptive.max-size:1000}") int maxSize,
+                                                   @Value("${batch.chunk.adaptive.target-commit-duration:500ms}") Duration targetCommitDuration,
+                                                   @Value("${batch.chunk.adaptive.failure-rate-threshold:0.2}") double failureRateThreshold) {
+        return adaptive
+                ? new AdaptiveChunkSizePolicy(chunkSize, minSize, maxSize, targetCommitDuration, failureRateThreshold)
+                : new AdaptiveChunkSizePolicy(chunkSize, chunkSize, chunkSize, targetCommitDuration, failureRateThreshold);
+    }
+
+    private static void withChunkSizePolicy(FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder,
+                                            AdaptiveChunkSizePolicy chunkSizePolicy) {
+        stepBuilder.listener((StepExecutionListener) chunkSizePolicy);
+        stepBuilder.listener((ChunkListener) chunkSizePolicy);
+    }
+
+    @Bean
+    public BatchMetricsListener batchMetricsListener(MeterRegistry meterRegistry) {
+        return new BatchMetricsListener(meterRegistry);
+    }
+
+    // ############################### Pipelined mode ##################################################
+
+    /**
+     * Same as {@link #retryStep}, but the CSV is read ahead on its own thread, which also starts the user lookups of
+     * the items read, see {@link #pipelinedItemReader}. Chunks are still processed and written one by one by the step
+     * thread, so commit intervals, restart state, retries and skips are those of {@link #retryStep}.
+     */
+    @Bean
+    public Step pipelinedRetryStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                   @Qualifier("pipelinedItemReader") ItemStreamReader<Transaction> pipelinedItemReader,
+                                   RetryItemProcessor retryItemProcessor, MeterRegistry meterRegistry,
+                                   BatchMetricsListener batchMetricsListener,
+                                   AdaptiveChunkSizePolicy chunkSizePolicy, CustomSkipListener customSkipListener,
+                                   UserAggregatingItemWriter userAggregatingItemWriter) {
+        FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder = new StepBuilder("pipelinedRetryStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSizePolicy, transactionManager)
+                .reader(pipelinedItemReader)
+                .processor(retryItemProcessor)
+                .writer(aggregationEnabled ? userAggregatingItemWriter : jsonFileItemWriter())
+                .faultTolerant();
+        withChunkSizePolicy(stepBuilder, chunkSizePolicy);
+        return withRetryMode(withMetrics(stepBuilder, batchMetricsListener), customSkipListener).build();
+    }
+
+    /**
+     * {@link #itemReader} read up to {@code batch.pipeline.read-ahead} items ahead of the step. Every item read starts
+     * the lookup of its user ({@link RetryItemProcessor#prefetch}), with at most
+     * {@code batch.pipeline.enrichment-parallelism} lookups running; the read-ahead waits when either limit is reached.
+     */
+    @Bean
+    @StepScope
+    public ItemStreamReader<Transaction> pipelinedItemReader(
+            @Qualifier("itemReader") ItemStreamReader<Transaction> itemReader, RetryItemProcessor retryItemProcessor,
+            @Value("${batch.pipeline.read-ahead:1000}") int readAhead) {
+        ReadAheadItemReader<Transaction> reader = new ReadAheadItemReader<>(itemReader, readAhead);
+        reader.setOnRead(retryItemProcessor::prefetch);
+        return reader;
+    }
+
+    // ############################### Partitioned mode ################################################
+
+    @Bean
+    public Step partitionedRetryStep(JobRepository jobRepository, @Qualifier("retryWorkerStep") Step retryWorkerStep,
+                                     @Qualifier("csvPartitioner") Partitioner csvPartitioner,
+                                     @Qualifier("partitionTaskExecutor") TaskExecutor partitionTaskExecutor,
+                                     @Value("${batch.partition.grid-size:4}") int gridSize) {
+        return new StepBuilder("partitionedRetryStep", jobRepository)
+                .partitioner("retryWorkerStep", csvPartitioner)
+                .step(retryWorkerStep)
+                .gridSize(gridSize)
+                .taskExecutor(partitionTaskExecutor)
                 .build();
     }
 
+    /**
+     * Worker of {@link #partitionedRetryStep}: same retry and skip rules as {@link #retryStep}, but it reads only its
+     * partition's byte range and writes to its own output file. The reader's byte offset is saved in the worker step's
+     * execution context, so every partition restarts independently.
+     */
+    @Bean
+    public Step retryWorkerStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                RetryItemProcessor retryItemProcessor,
+                                @Qualifier("partitionItemReader") ItemStreamReader<Transaction> partitionItemReader,
+                                @Qualifier("partitionJsonFileItemWriter") ItemStreamWriter<Transaction> partitionJsonFileItemWriter,
+                                MeterRegistry meterRegistry, BatchMetricsListener batchMetricsListener,
+                                AdaptiveChunkSizePolicy chunkSizePolicy, CustomSkipListener customSkipListener) {
+        FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder = new StepBuilder("retryWorkerStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSizePolicy, transactionManager)
+                .reader(partitionItemReader)
+                .processor(retryItemProcessor)
+                .writer(partitionJsonFileItemWriter)
+                .faultTolerant();
+        withChunkSizePolicy(stepBuilder, chunkSizePolicy);
+        return withRetryMode(withMetrics(stepBuilder, batchMetricsListener), customSkipListener).build();
+    }
+
+    @Bean
+    @StepScope
+    public CsvByteRangePartitioner csvPartitioner(
+            @Value("#{jobParameters['" + INPUT_FILE_PARAMETER + "']}") String inputFile) {
+        return new CsvByteRangePartitioner(inputResource(inputFile), 1);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor partitionTaskExecutor(@Value("${batch.partition.threads:4}") int threads) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(threads);
+        taskExecutor.setMaxPoolSize(threads);
+        taskExecutor.setThreadNamePrefix("partition-");
+        return taskExecutor;
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamReader<Transaction> partitionItemReader(
+            @Value("#{jobParameters['" + INPUT_FILE_PARAMETER + "']}") String inputFile,
+            @Value("#{stepExecutionContext['" + CsvByteRangePartitioner.START_OFFSET_KEY + "']}") long startOffset,
+            @Value("#{stepExecutionContext['" + CsvByteRangePartitioner.END_OFFSET_KEY + "']}") long endOffset,
+            @Value("#{stepExecutionContext['" + CsvByteRangePartitioner.LINES_TO_SKIP_KEY + "']}") int linesToSkip) {
+        Resource input = inputResource(inputFile);
+        if (readerType == ReaderType.MAPPED) {
+            MappedTransactionItemReader mappedReader =
+                    new MappedTransactionItemReader(input, startOffset, endOffset, linesToSkip);
+            mappedReader.setName("CSV-Partition-Reader");
+            return mappedReader;
+        }
+        ByteRangeFlatFileItemReader<Transaction> reader =
+                new ByteRangeFlatFileItemReader<>(input, lineMapper(), startOffset, endOffset, linesToSkip);
+        reader.setName("CSV-Partition-Reader");
+        return reader;
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamWriter<Transaction> partitionJsonFileItemWriter(
+            @Value("#{stepExecutionContext['" + CsvByteRangePartitioner.PARTITION_INDEX_KEY + "']}") int partitionIndex) {
+        WritableResource output = new FileSystemResource("output/retryOutput-partition-" + partitionIndex + ".json");
+        return transactionWriter(output);
+    }
+
+    // ############################### Remote chunking mode ############################################
+
+    /**
+     * Manager step of remote chunking: reads the CSV like {@link #retryStep} and sends every chunk to the workers of
+     * {@link #remoteChunkWorker} through the {@link ChunkChannel}; the workers process and write it. See
+     * {@link RemoteChunkItemWriter} for the counts and the restart state of the step.
+     */
+    @Bean
+    public Step remoteChunkingRetryStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                        @Qualifier("itemReader") ItemStreamReader<Transaction> itemReader,
+                                        RemoteChunkItemWriter remoteChunkItemWriter, MeterRegistry meterRegistry,
+                                        @Value("${batch.chunk.size:5}") int chunkSize) {
+        return new StepBuilder("remoteChunkingRetryStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSize, transactionManager)
+                .reader(itemReader)
+                .writer(remoteChunkItemWriter)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public RemoteChunkItemWriter remoteChunkItemWriter(
+            ChunkChannel chunkChannel, @Qualifier("itemReader") ItemStreamReader<Transaction> itemReader,
+            DeadLetterSink deadLetterSink,
+            @Value("${batch.remote-chunking.max-pending-chunks:8}") int maxPendingChunks,
+            @Value("${batch.remote-chunking.reply-timeout:5m}") Duration replyTimeout) {
+        return new RemoteChunkItemWriter(chunkChannel, itemReader, deadLetterSink, maxPendingChunks, replyTimeout,
+                SKIP_LIMIT);
+    }
+
+    @Bean
+    public ChunkChannel chunkChannel(@Value("${batch.remote-chunking.channel:IN_PROCESS}") ChunkChannelType channelType,
+                                     @Value("${batch.remote-chunking.dir:output/remote-chunking}") Path directory,
+                                     @Value("${batch.remote-chunking.poll-interval:50ms}") Duration pollInterval,
+                                     ObjectMapper objectMapper) {
+        return switch (channelType) {
+            case IN_PROCESS -> new InProcessChunkChannel();
+            case DIRECTORY -> new DirectoryChunkChannel(directory, objectMapper, pollInterval);
+        };
+    }
+
+    /**
+     * {@code batch.remote-chunking.workers} worker threads, started only in {@link StepMode#REMOTE_CHUNKING}. Every
+     * worker has its own {@link RetryItemProcessor}, configured like the one of the steps, and writes to
+     * {@code output/retryOutput-<stepExecutionId>-<workerId>.json} (or the NDJSON parts of that name).
+     */
+    @Bean
+    public RemoteChunkWorker remoteChunkWorker(ChunkChannel chunkChannel,
+                                               @Value("${batch.step.mode:SIMPLE}") StepMode stepMode,
+                                               @Value("${batch.remote-chunking.workers:2}") int workers,
+                                               @Value("${batch.remote-chunking.poll-interval:50ms}") Duration pollInterval,
+                                               @Value("${batch.enrichment.mode:ITEM}") EnrichmentMode enrichmentMode,
+                                               @Value("${batch.user-snapshot.file:}") String userSnapshotFile,
+                                               UserSnapshotLoader userSnapshotLoader,
+                                               @Value("${batch.pipeline.enrichment-parallelism:32}") int enrichmentParallelism,
+                                               ExponentialBackoffRetrier itemRetrier, MeterRegistry meterRegistry,
+                                               AutowireCapableBeanFactory beanFactory) {
+        // in ITEM retry mode the processor retries the lookups itself
+        int retryLimit = retryMode == RetryMode.ITEM ? 1 : 3;
+        RemoteChunkWorker worker = new RemoteChunkWorker(chunkChannel, "worker-" + ProcessHandle.current().pid(),
+                stepMode == StepMode.REMOTE_CHUNKING ? workers : 0, retryLimit, (request, workerId) -> {
+            RetryItemProcessor processor = newRetryItemProcessor(
+                    request.jobParameters().get(RetryItemProcessor.USER_CACHE_ENABLED_PARAMETER), enrichmentMode,
+                    userSnapshotFile, userSnapshotLoader, enrichmentParallelism, itemRetrier, meterRegistry);
+            beanFactory.autowireBean(processor);
+            WritableResource output = new FileSystemResource(
+                    "output/retryOutput-" + request.stepExecutionId() + "-" + workerId + ".json");
+            return new RemoteChunkWorker.StepComponents(processor, transactionWriter(output));
+        });
+        worker.setPollInterval(pollInterval);
+        return worker;
+    }
+
+    // ############################### Upload import ###################################################
+
+    /**
+     * Processes a CSV while it is uploaded to {@code POST /importData/upload}: the step reads the upload of the
+     * {@value UploadRegistry#UPLOAD_ID_PARAMETER} job parameter straight from the request, see {@link UploadRegistry},
+     * with the retry and skip rules of {@link #retryStep}, and writes to
+     * {@code output/uploadImport-<jobExecutionId>.json}. The upload is gone once the job ends, so the job cannot be
+     * restarted.
+     */
+    @Bean(name = "uploadImportJob")
+    public Job uploadImportJob(JobRepository jobRepository, @Qualifier("uploadImportStep") Step uploadImportStep,
+                               DeadLetterSink deadLetterSink, UploadRegistry uploadRegistry) {
+        return new JobBuilder("uploadImportJob", jobRepository)
+                .preventRestart()
+                .listener(new MyJobExecutionListener())
+                .listener(deadLetterSink)
+                .listener(uploadRegistry)
+                .start(uploadImportStep)
+                .build();
+    }
+
+    @Bean
+    public Step uploadImportStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                 @Qualifier("uploadItemReader") ItemStreamReader<Transaction> uploadItemReader,
+                                 @Qualifier("uploadImportWriter") ItemStreamWriter<Transaction> uploadImportWriter,
+                                 RetryItemProcessor retryItemProcessor, MeterRegistry meterRegistry,
+                                 BatchMetricsListener batchMetricsListener, AdaptiveChunkSizePolicy chunkSizePolicy,
+                                 CustomSkipListener customSkipListener) {
+        FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder = new StepBuilder("uploadImportStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSizePolicy, transactionManager)
+                .reader(uploadItemReader)
+                .processor(retryItemProcessor)
+                .writer(uploadImportWriter)
+                .faultTolerant();
+        withChunkSizePolicy(stepBuilder, chunkSizePolicy);
+        return withRetryMode(withMetrics(stepBuilder, batchMetricsListener), customSkipListener).build();
+    }
+
+    /**
+     * Reads the upload as it arrives; there is no restart state, as the bytes read are not kept.
+     */
+    @Bean
+    @StepScope
+    public ItemStreamReader<Transaction> uploadItemReader(
+            @Value("#{jobParameters['" + UploadRegistry.UPLOAD_ID_PARAMETER + "']}") String uploadId,
+            UploadRegistry uploadRegistry) {
+        FlatFileItemReader<Transaction> reader = new FlatFileItemReader<>();
+        reader.setResource(new InputStreamResource(uploadRegistry.inputStream(uploadId), "upload " + uploadId));
+        reader.setName("Upload-Reader");
+        reader.setSaveState(false);
+        reader.setLinesToSkip(1);
+        reader.setLineMapper(lineMapper());
+        return reader;
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamWriter<Transaction> uploadImportWriter(@Value("#{stepExecution.jobExecutionId}") long jobExecutionId) {
+        return transactionWriter(new FileSystemResource("output/uploadImport-" + jobExecutionId + ".json"));
+    }
+
+    @Bean
+    public UploadRegistry uploadRegistry(@Value("${batch.upload.buffer-size:4MB}") DataSize bufferSize,
+                                         @Value("${batch.upload.block-size:64KB}") DataSize blockSize,
+                                         @Value("${batch.upload.stall-timeout:5m}") Duration stallTimeout) {
+        int blockBytes = (int) blockSize.toBytes();
+        return new UploadRegistry((int) Math.max(1, bufferSize.toBytes() / blockBytes), blockBytes, stallTimeout);
+    }
+
+    // ############################### Dead-letter replay ##############################################
+
+    /**
+     * Processes the items skipped by a job execution again: the transactions of the dead-letter file of the
+     * {@value #DEAD_LETTER_JOB_EXECUTION_PARAMETER} execution go through the {@link RetryItemProcessor} with the same
+     * retry and skip rules and are written to {@code output/deadLetterReplay-<jobExecutionId>.json}. Items that fail
+     * again end up in the dead-letter file of the replay execution.
+     */
+    @Bean(name = "deadLetterReplayJob")
+    public Job deadLetterReplayJob(JobRepository jobRepository, @Qualifier("deadLetterReplayStep") Step deadLetterReplayStep,
+                                   DeadLetterSink deadLetterSink) {
+        return new JobBuilder("deadLetterReplayJob", jobRepository)
+                .listener(new MyJobExecutionListener())
+                .listener(deadLetterSink)
+                .start(deadLetterReplayStep)
+                .build();
+    }
+
+    @Bean
+    public Step deadLetterReplayStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                     @Qualifier("deadLetterItemReader") ItemStreamReader<Transaction> deadLetterItemReader,
+                                     @Qualifier("deadLetterReplayWriter") ItemStreamWriter<Transaction> deadLetterReplayWriter,
+                                     RetryItemProcessor retryItemProcessor, MeterRegistry meterRegistry,
+                                     BatchMetricsListener batchMetricsListener, AdaptiveChunkSizePolicy chunkSizePolicy,
+                                     CustomSkipListener customSkipListener) {
+        FaultTolerantStepBuilder<Transaction, Transaction> stepBuilder = new StepBuilder("deadLetterReplayStep", jobRepository)
+                .meterRegistry(meterRegistry)
+                .<Transaction, Transaction>chunk(chunkSizePolicy, transactionManager)
+                .reader(deadLetterItemReader)
+                .processor(retryItemProcessor)
+                .writer(deadLetterReplayWriter)
+                .faultTolerant();
+        withChunkSizePolicy(stepBuilder, chunkSizePolicy);
+        return withRetryMode(withMetrics(stepBuilder, batchMetricsListener), customSkipListener).build();
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamReader<Transaction> deadLetterItemReader(
+            @Value("#{jobParameters['" + DEAD_LETTER_JOB_EXECUTION_PARAMETER + "']}") long jobExecutionId,
+            DeadLetterSink deadLetterSink, ObjectMapper objectMapper) {
+        return new DeadLetterItemReader(new FileSystemResource(deadLetterSink.file(jobExecutionId)), objectMapper);
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamWriter<Transaction> deadLetterReplayWriter(
+            @Value("#{jobParameters['" + DEAD_LETTER_JOB_EXECUTION_PARAMETER + "']}") long jobExecutionId) {
+        return transactionWriter(new FileSystemResource("output/deadLetterReplay-" + jobExecutionId + ".json"));
+    }
+
     // #################################################################################################
     // #################################################################################################
 
+    /**
+     * Step scoped, so nothing is opened or read before a job runs: the step opens the reader when it starts.
+     * The input comes from the {@value #INPUT_FILE_PARAMETER} job parameter.
+     * <p>
+     * The reader saves the byte offset and line number of the next line at every chunk commit, so a restart seeks
+     * straight there instead of reading the lines already processed again. Only an input that is not a file (e.g. a
+     * URL) is read by a {@link FlatFileItemReader}, which restarts by skipping the saved number of lines.
+     */
     @Bean
-    public ItemReader<Transaction> itemReader(Resource inputData) throws Exception {
-        log.info("inside itemReader........");
+    @StepScope
+    public ItemStreamReader<Transaction> itemReader(
+            @Value("#{jobParameters['" + INPUT_FILE_PARAMETER + "']}") String inputFile) {
+        Resource inputData = inputResource(inputFile);
+        log.info("inside itemReader........ (reader type: {}, input: {})", readerType, inputData.getDescription());
+        if (readerType == ReaderType.MAPPED) {
+            MappedTransactionItemReader mappedReader = new MappedTransactionItemReader(inputData, 1);
+            mappedReader.setName("CSV-Reader");
+            return mappedReader;
+        }
+        if (inputData.isFile()) {
+            ByteRangeFlatFileItemReader<Transaction> reader =
+                    new ByteRangeFlatFileItemReader<>(inputData, lineMapper(), 1);
+            reader.setName("CSV-Reader");
+            return reader;
+        }
         FlatFileItemReader<Transaction> flatFileItemReader = new FlatFileItemReader<>();
         //flatFileItemReader.setResource(new ClassPathResource("customers.csv"));
         flatFileItemReader.setResource(inputData);
         flatFileItemReader.setName("CSV-Reader");
         flatFileItemReader.setLinesToSkip(1);
         flatFileItemReader.setLineMapper(lineMapper());
-
-        // Debugging: Log the items read
-        flatFileItemReader.setSaveState(false); // Disable state saving for debugging
-        flatFileItemReader.open(new ExecutionContext());
-        Transaction transaction;
-        while ((transaction = flatFileItemReader.read()) != null) {
-            System.out.println("Read item: " + transaction);
-        }
-        flatFileItemReader.close();
-
-
         return flatFileItemReader;
     }
 
     @Bean
-    public ItemProcessor<Transaction, Transaction> retryItemProcessor() {
-        return new RetryItemProcessor();
+    @StepScope
+    public RetryItemProcessor retryItemProcessor(
+            @Value("#{jobParameters['" + RetryItemProcessor.USER_CACHE_ENABLED_PARAMETER + "']}") String userCacheEnabled,
+            @Value("${batch.enrichment.mode:ITEM}") EnrichmentMode enrichmentMode,
+            @Value("${batch.user-snapshot.file:}") String userSnapshotFile, UserSnapshotLoader userSnapshotLoader,
+            @Value("${batch.pipeline.enrichment-parallelism:32}") int enrichmentParallelism,
+            ExponentialBackoffRetrier itemRetrier, MeterRegistry meterRegistry) {
+        return newRetryItemProcessor(userCacheEnabled, enrichmentMode, userSnapshotFile, userSnapshotLoader,
+                enrichmentParallelism, itemRetrier, meterRegistry);
+    }
+
+    private RetryItemProcessor newRetryItemProcessor(String userCacheEnabled, EnrichmentMode enrichmentMode,
+                                                     String userSnapshotFile, UserSnapshotLoader userSnapshotLoader,
+                                                     int enrichmentParallelism, ExponentialBackoffRetrier itemRetrier,
+                                                     MeterRegistry meterRegistry) {
+        // the user cache is on unless the job is launched with userCache.enabled=false
+        RetryItemProcessor processor =
+                new RetryItemProcessor(userCacheEnabled == null || Boolean.parseBoolean(userCacheEnabled), enrichmentMode);
+        if (!userSnapshotFile.isBlank()) {
+            processor.setUserSnapshot(userSnapshotLoader, Path.of(userSnapshotFile));
+        }
+        processor.setPrefetchParallelism(enrichmentParallelism);
+        if (retryMode == RetryMode.ITEM) {
+            processor.setItemRetrier(itemRetrier);
+            processor.setMeterRegistry(meterRegistry);
+        }
+        return processor;
     }
 
     @Bean
-    public JsonFileItemWriter<Transaction> jsonFileItemWriter() {
+    public ItemStreamWriter<Transaction> jsonFileItemWriter() {
         log.info("Inside writer ....");
         /*return new JsonFileItemWriterBuilder<Transaction>()
                 .jsonObjectMarshaller(new JacksonJsonObjectMarshaller<>())
@@ -116,7 +685,61 @@ public class SpringBatchRetryConfig {
                 .resource(outputXml)
                 .name("transactionJsonFileItemWriter")
                 .build();*/
-        return new CustomJsonFileItemWriter<>(outputXml, new JacksonJsonObjectMarshaller<>());
+        return transactionWriter(outputXml);
+    }
+
+    /**
+     * {@link #jsonFileItemWriter} that also sums up the amounts per user for the summary of the job execution, used by
+     * {@link #retryStep} and {@link #pipelinedRetryStep} with {@code batch.aggregation.enabled=true}.
+     */
+    @Bean
+    @StepScope
+    public UserAggregatingItemWriter userAggregatingItemWriter(
+            @Value("#{stepExecution.jobExecutionId}") long jobExecutionId,
+            @Value("${batch.aggregation.memory-budget:256MB}") DataSize memoryBudget,
+            @Value("${batch.aggregation.dir:output}") Path directory) {
+        return new UserAggregatingItemWriter(jsonFileItemWriter(), memoryBudget.toBytes(), directory, jobExecutionId);
+    }
+
+    /**
+     * JSON array writer for {@code output}, or in {@link OutputFormat#NDJSON} format a rolling writer of parts named
+     * after it: {@code output/retryOutput.json} becomes {@code output/retryOutput-00000.ndjson.gz}, ...
+     */
+    private ItemStreamWriter<Transaction> transactionWriter(WritableResource output) {
+        if (outputFormat == OutputFormat.NDJSON) {
+            Path outputPath = outputPath(output);
+            String fileName = outputPath.getFileName().toString();
+            String baseName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+            RollingNdjsonItemWriter<Transaction> writer = new RollingNdjsonItemWriter<>(
+                    outputPath.toAbsolutePath().getParent(), baseName, outputCompression, new TransactionJsonSerializer());
+            writer.setName("transactionNdjsonItemWriter");
+            writer.setMaxItemsPerPart(rolloverMaxItems);
+            writer.setMaxBytesPerPart(rolloverMaxSize.toBytes());
+            writer.setForceSync(writerForceSync);
+            return writer;
+        }
+        BufferedJsonFileItemWriter<Transaction> writer = new BufferedJsonFileItemWriter<>(output, new TransactionJsonSerializer());
+        writer.setName("transactionJsonFileItemWriter");
+        writer.setForceSync(writerForceSync);
+        return writer;
+    }
+
+    private static Path outputPath(WritableResource output) {
+        try {
+            return output.getFile().toPath();
+        } catch (IOException e) {
+            throw new IllegalStateException("Output " + output + " is not a file", e);
+        }
+    }
+
+    /**
+     * Resolves the input location given as job parameter; a location without URL prefix is a file system path.
+     */
+    private Resource inputResource(String location) {
+        if (location == null || location.isBlank()) {
+            return inputCsv;
+        }
+        return ResourceUtils.isUrl(location) ? resourceLoader.getResource(location) : new FileSystemResource(location);
     }
 
     public LineMapper<Transaction> lineMapper() {
@@ -138,11 +761,15 @@ public class SpringBatchRetryConfig {
         return lineMapper;
     }
 
+    /**
+     * Backoff of the lookup retries in {@link RetryMode#ITEM}; scheduled on a timer, no thread sleeps.
+     */
     @Bean
-    public FixedBackOffPolicy fixedBackOffPolicy() {
-        FixedBackOffPolicy fixedBackOffPolicy = new FixedBackOffPolicy();
-        fixedBackOffPolicy.setBackOffPeriod(0); // 2 seconds fixed delay between retries
-        return fixedBackOffPolicy;
+    public ExponentialBackoffRetrier itemRetrier(@Value("${batch.retry.max-attempts:3}") int maxAttempts,
+                                                 @Value("${batch.retry.initial-backoff:100ms}") Duration initialBackoff,
+                                                 @Value("${batch.retry.max-backoff:2s}") Duration maxBackoff,
+                                                 @Value("${batch.retry.multiplier:2.0}") double multiplier) {
+        return new ExponentialBackoffRetrier(maxAttempts, initialBackoff, maxBackoff, multiplier);
     }
 
     @PostConstruct
@@ -0,0 +1,25 @@
+package com.arpan.demo_batch.config;
+
+/**
+ * Which step {@code retryBatchJob} runs, selected with {@code batch.step.mode}.
+ */
+public enum StepMode {
+    /**
+     * {@code retryStep}: one thread reads, processes and writes the whole input.
+     */
+    SIMPLE,
+    /**
+     * {@code partitionedRetryStep}: the input is split into byte ranges that are processed by parallel worker steps.
+     */
+    PARTITIONED,
+    /**
+     * {@code pipelinedRetryStep}: like {@link #SIMPLE}, but reading and the user lookups run ahead of the step thread
+     * on their own threads.
+     */
+    PIPELINED,
+    /**
+     * {@code remoteChunkingRetryStep}: the step reads the input and sends it in chunks to remote chunking workers, in
+     * this JVM and in others, which process and write them.
+     */
+    REMOTE_CHUNKING
+}
@@ -1,40 +1,192 @@
 package com.arpan.demo_batch.controller;
 
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.preflight.PreflightDecider;
+import com.arpan.demo_batch.reader.UploadPipe;
+import com.arpan.demo_batch.reader.UploadRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobExecutionNotRunningException;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.launch.NoSuchJobExecutionException;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
 import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
 import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Starts jobs without waiting for them and reports on their executions.
+ * <ul>
+ *     <li>{@code GET /importData?jobName=retryBatchJob}: launches the job on the job launch executor and answers
+ *     {@code 202 Accepted} with the new execution; {@code 409} while an execution of the job is queued or running
+ *     (the executions of a job share their output files), {@code 503} when the launch queue is full</li>
+ *     <li>{@code POST /importData/upload} with a CSV body: launches {@code uploadImportJob}, which processes the CSV
+ *     while it is still being uploaded. The request reads the body only as fast as the job takes it, and answers
+ *     {@code 202 Accepted} once the job has the whole body; {@code 409} if the job ended before, {@code 503} if the
+ *     job left the upload buffer full for {@code batch.upload.stall-timeout}</li>
+ *     <li>{@code GET /jobs/executions/{executionId}}: progress of the execution, see {@link JobProgress}</li>
+ *     <li>{@code POST /jobs/executions/{executionId}/stop}: asks the running execution to stop after the current
+ *     chunk</li>
+ *     <li>{@code POST /jobs/executions/{executionId}/restart}: launches the job instance of a stopped or failed
+ *     execution again, with the same parameters</li>
+ *     <li>{@code POST /jobs/executions/{executionId}/replay-dead-letters}: launches {@code deadLetterReplayJob} for
+ *     the items the execution skipped</li>
+ * </ul>
+ */
 @RestController
+@Slf4j
 public class BatchJobController {
 
     @Autowired
-    private JobLauncher jobLauncher;
+    @Qualifier("asyncJobLauncher")
+    private JobLauncher asyncJobLauncher;
 
     @Autowired
-    private Job job;
+    private Map<String, Job> jobs;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private JobOperator jobOperator;
+
+    @Autowired
+    private UploadRegistry uploadRegistry;
 
     @GetMapping(path = "/importData")
-    public void startBatch(@RequestParam("jobName") String jobName) {
-        JobParameters jobParameters = new JobParametersBuilder()
+    public ResponseEntity<JobProgress> startBatch(@RequestParam("jobName") String jobName,
+                                                  @RequestParam(name = "inputFile", required = false) String inputFile,
+                                                  @RequestParam(name = "preflightLines", required = false) Long preflightLines) {
+        JobParametersBuilder jobParametersBuilder = new JobParametersBuilder()
+                .addLong("startAt", System.currentTimeMillis());
+        if (inputFile != null) {
+            jobParametersBuilder.addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, inputFile);
+        }
+        if (preflightLines != null) {
+            jobParametersBuilder.addLong(PreflightDecider.PREFLIGHT_LINES_PARAMETER, preflightLines);
+        }
+        return launch(job(jobName), jobParametersBuilder.toJobParameters());
+    }
+
+    @PostMapping(path = "/importData/upload")
+    public ResponseEntity<JobProgress> upload(InputStream body) throws IOException {
+        UploadPipe upload = uploadRegistry.open();
+        ResponseEntity<JobProgress> launched;
+        try {
+            launched = launch(job("uploadImportJob"), new JobParametersBuilder()
+                    .addString(UploadRegistry.UPLOAD_ID_PARAMETER, upload.id())
+                    .addLong("startAt", System.currentTimeMillis())
+                    .toJobParameters());
+        } catch (RuntimeException e) {
+            uploadRegistry.discard(upload.id());
+            throw e;
+        }
+        if (launched.getStatusCode() != HttpStatus.ACCEPTED) {
+            uploadRegistry.discard(upload.id());
+            return launched;
+        }
+        long executionId = launched.getBody().executionId();
+        boolean complete;
+        try {
+            complete = upload.transferFrom(body);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Job execution " + executionId + " did not read the upload: " + e.getMessage(), e);
+        }
+        HttpStatus status = complete ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(getProgress(executionId));
+    }
+
+    @GetMapping(path = "/jobs/executions/{executionId}")
+    public JobProgress getProgress(@PathVariable long executionId) {
+        return JobProgress.of(jobExecution(executionId), LocalDateTime.now());
+    }
+
+    @PostMapping(path = "/jobs/executions/{executionId}/stop")
+    public JobProgress stop(@PathVariable long executionId) {
+        try {
+            jobOperator.stop(executionId);
+        } catch (NoSuchJobExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (JobExecutionNotRunningException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+        return getProgress(executionId);
+    }
+
+    @PostMapping(path = "/jobs/executions/{executionId}/restart")
+    public ResponseEntity<JobProgress> restart(@PathVariable long executionId) {
+        JobExecution jobExecution = jobExecution(executionId);
+        return launch(job(jobExecution.getJobInstance().getJobName()), jobExecution.getJobParameters());
+    }
+
+    @PostMapping(path = "/jobs/executions/{executionId}/replay-dead-letters")
+    public ResponseEntity<JobProgress> replayDeadLetters(@PathVariable long executionId) {
+        jobExecution(executionId);
+        return launch(job("deadLetterReplayJob"), new JobParametersBuilder()
+                .addLong(SpringBatchRetryConfig.DEAD_LETTER_JOB_EXECUTION_PARAMETER, executionId)
                 .addLong("startAt", System.currentTimeMillis())
-                .toJobParameters();
+                .toJobParameters());
+    }
+
+    private synchronized ResponseEntity<JobProgress> launch(Job job, JobParameters jobParameters) {
+        Set<JobExecution> running = jobExplorer.findRunningJobExecutions(job.getName());
+        if (!running.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Job " + job.getName() + " is already queued or "
+                    + "running as execution " + running.iterator().next().getId());
+        }
+        JobExecution jobExecution;
         try {
-            jobLauncher.run(job, jobParameters);
-        } catch (JobExecutionAlreadyRunningException | JobRestartException
-                 | JobInstanceAlreadyCompleteException | JobParametersInvalidException e) {
+            jobExecution = asyncJobLauncher.run(job, jobParameters);
+        } catch (JobExecutionAlreadyRunningException | JobRestartException | JobInstanceAlreadyCompleteException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (JobParametersInvalidException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        log.info("Launched {} as execution {}", job.getName(), jobExecution.getId());
+        // the launcher fails the execution right away when the job launch executor rejects it
+        HttpStatus status = jobExecution.getStatus() == BatchStatus.FAILED && jobExecution.getStartTime() == null
+                ? HttpStatus.SERVICE_UNAVAILABLE
+                : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(JobProgress.of(jobExecution, LocalDateTime.now()));
+    }
+
+    private Job job(String jobName) {
+        Job job = jobs.get(jobName);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No job named " + jobName);
+        }
+        return job;
+    }
 
-            e.printStackTrace();
+    private JobExecution jobExecution(long executionId) {
+        JobExecution jobExecution = jobExplorer.getJobExecution(executionId);
+        if (jobExecution == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No job execution " + executionId);
         }
+        return jobExecution;
     }
 }
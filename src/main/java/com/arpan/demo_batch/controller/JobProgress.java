@@ -0,0 +1,97 @@
+package com.arpan.demo_batch.controller;
+
+import com.arpan.demo_batch.listener.InputSizeEstimator;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Progress of a job execution as returned by {@code GET /jobs/executions/{executionId}}.
+ * <p>
+ * The totals are summed over the steps that process items. When the job is partitioned only the worker steps
+ * ({@code worker:partitionN}) are counted, as the manager step ends up with the sum of its workers.
+ * {@code itemsPerSecond} is the number of lines consumed (read or skipped in read) per second since the first of
+ * these steps started. {@code etaSeconds} is only given while the job runs and the input size could be estimated.
+ */
+public record JobProgress(long executionId, String jobName, BatchStatus status, String exitCode,
+                          LocalDateTime startTime, LocalDateTime endTime,
+                          long readCount, long writeCount, long skipCount, double itemsPerSecond,
+                          Long estimatedItems, Long etaSeconds, List<StepProgress> steps) {
+
+    public record StepProgress(String stepName, BatchStatus status, long readCount, long writeCount, long skipCount,
+                               long commitCount, long rollbackCount, double itemsPerSecond) {
+
+        static StepProgress of(StepExecution stepExecution, LocalDateTime now) {
+            return new StepProgress(stepExecution.getStepName(), stepExecution.getStatus(),
+                    stepExecution.getReadCount(), stepExecution.getWriteCount(), stepExecution.getSkipCount(),
+                    stepExecution.getCommitCount(), stepExecution.getRollbackCount(),
+                    perSecond(consumed(stepExecution), stepExecution.getStartTime(), end(stepExecution.getEndTime(), now)));
+        }
+    }
+
+    public static JobProgress of(JobExecution jobExecution, LocalDateTime now) {
+        List<StepExecution> stepExecutions = jobExecution.getStepExecutions().stream()
+                .sorted(Comparator.comparing(StepExecution::getId))
+                .toList();
+        boolean partitioned = stepExecutions.stream().anyMatch(JobProgress::isPartitionWorker);
+        List<StepExecution> counted = stepExecutions.stream()
+                .filter(stepExecution -> !partitioned || isPartitionWorker(stepExecution))
+                .toList();
+
+        long readCount = 0;
+        long writeCount = 0;
+        long skipCount = 0;
+        long consumed = 0;
+        LocalDateTime firstStart = null;
+        for (StepExecution stepExecution : counted) {
+            readCount += stepExecution.getReadCount();
+            writeCount += stepExecution.getWriteCount();
+            skipCount += stepExecution.getSkipCount();
+            consumed += consumed(stepExecution);
+            LocalDateTime start = stepExecution.getStartTime();
+            if (start != null && (firstStart == null || start.isBefore(firstStart))) {
+                firstStart = start;
+            }
+        }
+        double itemsPerSecond = perSecond(consumed, firstStart, end(jobExecution.getEndTime(), now));
+
+        Long estimatedItems = jobExecution.getExecutionContext().containsKey(InputSizeEstimator.ESTIMATED_ITEMS_KEY)
+                ? jobExecution.getExecutionContext().getLong(InputSizeEstimator.ESTIMATED_ITEMS_KEY)
+                : null;
+        Long etaSeconds = null;
+        if (jobExecution.isRunning() && estimatedItems != null && itemsPerSecond > 0) {
+            etaSeconds = (long) Math.ceil(Math.max(0, estimatedItems - consumed) / itemsPerSecond);
+        }
+
+        return new JobProgress(jobExecution.getId(), jobExecution.getJobInstance().getJobName(),
+                jobExecution.getStatus(), jobExecution.getExitStatus().getExitCode(),
+                jobExecution.getStartTime(), jobExecution.getEndTime(),
+                readCount, writeCount, skipCount, itemsPerSecond, estimatedItems, etaSeconds,
+                stepExecutions.stream().map(stepExecution -> StepProgress.of(stepExecution, now)).toList());
+    }
+
+    private static boolean isPartitionWorker(StepExecution stepExecution) {
+        return stepExecution.getStepName().contains(":");
+    }
+
+    private static long consumed(StepExecution stepExecution) {
+        return stepExecution.getReadCount() + stepExecution.getReadSkipCount();
+    }
+
+    private static LocalDateTime end(LocalDateTime endTime, LocalDateTime now) {
+        return endTime != null ? endTime : now;
+    }
+
+    private static double perSecond(long count, LocalDateTime start, LocalDateTime end) {
+        if (start == null || count == 0) {
+            return 0;
+        }
+        long millis = Duration.between(start, end).toMillis();
+        return millis > 0 ? count * 1000.0 / millis : 0;
+    }
+}
@@ -0,0 +1,10 @@
+package com.arpan.demo_batch.exception;
+
+/**
+ * The user service answered that the user does not exist. Retrying cannot help, so the item is skipped right away.
+ */
+public class UserMissingException extends UserNotFoundException {
+    public UserMissingException(String message) {
+        super(message);
+    }
+}
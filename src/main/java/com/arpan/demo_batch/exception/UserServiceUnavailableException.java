@@ -0,0 +1,11 @@
+package com.arpan.demo_batch.exception;
+
+/**
+ * The user service circuit breaker is open, so no lookup was attempted. It is neither retried nor skipped: the step
+ * fails fast and the job can be restarted once the service is back.
+ */
+public class UserServiceUnavailableException extends RuntimeException {
+    public UserServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,180 @@
+package com.arpan.demo_batch.listener;
+
+import com.arpan.demo_batch.model.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Micrometer meters of the chunk steps, next to the timers Spring Batch records itself
+ * ({@code spring.batch.item.read}, {@code spring.batch.item.process}, {@code spring.batch.chunk.write}):
+ * <ul>
+ *     <li>{@code batch.retries}: item retries of the step ({@code RetryMode.CHUNK}), by step and exception</li>
+ *     <li>{@code batch.skips}: skipped items, by step, phase (read, process, write) and exception</li>
+ *     <li>{@code batch.rollbacks}: rolled back chunks, by step and exception</li>
+ *     <li>{@code batch.step.items.rate}: items written per second by the step, measured over at least a second
+ *     of chunks; 0 when the step is not running</li>
+ * </ul>
+ * One instance can be shared by several steps, also when they run in parallel.
+ */
+@Slf4j
+public class BatchMetricsListener implements StepExecutionListener, ChunkListener,
+        SkipListener<Transaction, Transaction>, RetryListener {
+
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeterRegistry meterRegistry;
+
+    private final LongSupplier nanoClock;
+
+    private final Map<String, StepThroughput> throughputs = new ConcurrentHashMap<>();
+
+    public BatchMetricsListener(MeterRegistry meterRegistry) {
+        this(meterRegistry, System::nanoTime);
+    }
+
+    BatchMetricsListener(MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        throughput(stepExecution.getStepName()).start(nanoClock.getAsLong(), stepExecution.getWriteCount());
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        throughput(stepExecution.getStepName()).stop();
+        return null;
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        throughput(stepExecution.getStepName()).sample(nanoClock.getAsLong(), stepExecution.getWriteCount());
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        Object rollbackException = context.getAttribute(ChunkListener.ROLLBACK_EXCEPTION_KEY);
+        counter("batch.rollbacks", context.getStepContext().getStepName(),
+                rollbackException instanceof Throwable throwable ? throwable : null)
+                .increment();
+    }
+
+    @Override
+    public void onSkipInRead(Throwable t) {
+        skipCounter("read", t).increment();
+    }
+
+    @Override
+    public void onSkipInProcess(Transaction item, Throwable t) {
+        skipCounter("process", t).increment();
+    }
+
+    @Override
+    public void onSkipInWrite(Transaction item, Throwable t) {
+        skipCounter("write", t).increment();
+    }
+
+    /**
+     * A stateful retry opens the retry context again for every attempt; from the second attempt on the item is
+     * retried.
+     */
+    @Override
+    public <T, E extends Throwable> boolean open(RetryContext context, RetryCallback<T, E> callback) {
+        if (context.getRetryCount() > 0) {
+            counter("batch.retries", currentStepName(), context.getLastThrowable()).increment();
+        }
+        return true;
+    }
+
+    private Counter skipCounter(String phase, Throwable t) {
+        return Counter.builder("batch.skips")
+                .description("Items skipped by the step")
+                .tag("step", currentStepName())
+                .tag("phase", phase)
+                .tag("exception", exceptionName(t))
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String name, String stepName, Throwable t) {
+        return Counter.builder(name)
+                .tag("step", stepName)
+                .tag("exception", exceptionName(t))
+                .register(meterRegistry);
+    }
+
+    private StepThroughput throughput(String stepName) {
+        return throughputs.computeIfAbsent(stepName, name -> {
+            StepThroughput throughput = new StepThroughput();
+            Gauge.builder("batch.step.items.rate", throughput, StepThroughput::itemsPerSecond)
+                    .description("Items written per second by the running step")
+                    .tag("step", name)
+                    .register(meterRegistry);
+            return throughput;
+        });
+    }
+
+    private static String currentStepName() {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        return stepContext != null ? stepContext.getStepName() : "unknown";
+    }
+
+    private static String exceptionName(Throwable t) {
+        return t != null ? t.getClass().getSimpleName() : "None";
+    }
+
+    /**
+     * Write rate of one step, updated after the chunks of the step thread and read by the gauge.
+     */
+    private static final class StepThroughput {
+
+        private long sampleNanos;
+
+        private long sampleCount;
+
+        private volatile double itemsPerSecond;
+
+        synchronized void start(long nanos, long count) {
+            sampleNanos = nanos;
+            sampleCount = count;
+            itemsPerSecond = 0;
+        }
+
+        synchronized void sample(long nanos, long count) {
+            long elapsed = nanos - sampleNanos;
+            if (elapsed >= RATE_INTERVAL_NANOS) {
+                itemsPerSecond = (count - sampleCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                sampleNanos = nanos;
+                sampleCount = count;
+            }
+        }
+
+        void stop() {
+            itemsPerSecond = 0;
+        }
+
+        double itemsPerSecond() {
+            return itemsPerSecond;
+        }
+    }
+}
@@ -24,7 +24,6 @@ public class CustomRetryListener implements RetryListener {
     @Override
     public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
         // Log error details
-        System.err.println("Retry failed. Retry count: " + context.getRetryCount());
         log.error("Retry failed. Retry count: {}", context.getRetryCount());
         log.error("Exception: {}", throwable.getMessage());
 
@@ -35,11 +34,12 @@ public class CustomRetryListener implements RetryListener {
         // Called on every retry attempt when an error occurs
         StepExecution stepExecution = StepSynchronizationManager.getContext().getStepExecution();
         if (stepExecution != null) {
-            int retryCount = context.getRetryCount();
+            // failed attempts of all items of the step, not only of the current one
+            int retryCount = stepExecution.getExecutionContext().getInt("retryCount", 0) + 1;
             stepExecution.getExecutionContext().putInt("retryCount", retryCount);
             log.info("Retry Count Updated in Listener: {}", retryCount);
         } else {
-            System.err.println("StepExecution not available!");
+            log.warn("StepExecution not available!");
         }
     }
 }
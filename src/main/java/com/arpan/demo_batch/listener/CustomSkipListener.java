@@ -1,35 +1,117 @@
 package com.arpan.demo_batch.listener;
 
+import com.arpan.demo_batch.model.DeadLetterRecord;
 import com.arpan.demo_batch.model.Transaction;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.arpan.demo_batch.writer.DeadLetterSink;
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.SkipListener;
-import org.springframework.stereotype.Component;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Sends every skipped item to the {@link DeadLetterSink}, with the exception, the step and job execution and the
+ * number of retries before the skip. The retries are those of the step, counted per item as a {@link RetryListener}
+ * (the item is the state key of its retry context), plus those the processor made itself
+ * ({@code processorRetryCount}). When the step ends, the queued records are flushed, so the dead-letter file of the
+ * job execution is complete.
+ * <p>
+ * Step scoped: each step execution, also each partition, counts the retries of its own items.
+ */
 @Slf4j
-public class CustomSkipListener implements SkipListener<Transaction, Number> {
+public class CustomSkipListener implements SkipListener<Transaction, Transaction>, RetryListener, ChunkListener,
+        StepExecutionListener {
+    public static final String DEAD_LETTER_COUNT_KEY = "deadLetter.count";
+
+    private static final Duration FLUSH_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DeadLetterSink deadLetterSink;
+
+    private final ToIntFunction<Transaction> processorRetryCount;
+
+    private final Map<Object, Integer> failedAttempts = new IdentityHashMap<>();
+
+    private StepExecution stepExecution;
+
+    private long deadLetterCount;
+
+    public CustomSkipListener(DeadLetterSink deadLetterSink, ToIntFunction<Transaction> processorRetryCount) {
+        this.deadLetterSink = deadLetterSink;
+        this.processorRetryCount = processorRetryCount;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+        this.deadLetterCount = 0;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        deadLetterSink.flush(FLUSH_TIMEOUT);
+        stepExecution.getExecutionContext().putLong(DEAD_LETTER_COUNT_KEY, deadLetterCount);
+        if (deadLetterCount > 0) {
+            log.info("{} skipped items of step {} written to {}", deadLetterCount, stepExecution.getStepName(),
+                    deadLetterSink.file(stepExecution.getJobExecutionId()));
+        }
+        return null;
+    }
+
+    @Override
+    public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+        Object item = context.getAttribute(RetryContext.STATE_KEY);
+        if (item != null) {
+            failedAttempts.put(item, context.getRetryCount());
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        // a rolled back chunk is processed again and keeps counting
+        failedAttempts.clear();
+    }
 
     @Override
     public void onSkipInRead(Throwable t) {
         log.info("A failure on read {} ", t.getMessage());
+        String input = t instanceof FlatFileParseException parseException ? parseException.getInput() : null;
+        deadLetter(DeadLetterRecord.Phase.READ, null, input, t);
     }
 
     @Override
-    public void onSkipInWrite(Number item, Throwable t) {
+    public void onSkipInWrite(Transaction item, Throwable t) {
         log.info("A failure on write {} , {}", t.getMessage(), item);
+        deadLetter(DeadLetterRecord.Phase.WRITE, item, null, t);
     }
 
     @Override
     public void onSkipInProcess(Transaction item, Throwable t) {
-        log.info("onSkipInProcess: {}", item);
-        try {
-            log.info("Item {}  was skipped due to the exception  {}", new ObjectMapper().writeValueAsString(item), t.getMessage());
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        log.info("Item {} was skipped due to the exception {}", item, t.getMessage());
+        deadLetter(DeadLetterRecord.Phase.PROCESS, item, null, t);
     }
 
+    private void deadLetter(DeadLetterRecord.Phase phase, Transaction item, String input, Throwable t) {
+        int retryCount = 0;
+        if (item != null) {
+            Integer attempts = failedAttempts.remove(item);
+            retryCount = (attempts != null ? Math.max(0, attempts - 1) : 0) + processorRetryCount.applyAsInt(item);
+        }
+        deadLetterCount++;
+        deadLetterSink.add(new DeadLetterRecord(stepExecution.getJobExecutionId(),
+                stepExecution.getJobExecution().getJobInstance().getJobName(), stepExecution.getId(),
+                stepExecution.getStepName(), phase, item, input, t.getClass().getName(), t.getMessage(), retryCount,
+                Instant.now()));
+    }
 }
@@ -0,0 +1,87 @@
+package com.arpan.demo_batch.listener;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+/**
+ * Estimates the number of records of the job input when the job starts, and stores it as
+ * {@value #ESTIMATED_ITEMS_KEY} in the job execution context for the ETA of the job progress.
+ * <p>
+ * Only the first {@code sampleBytes} of the file are read: the estimate is the file size divided by the average
+ * line length of that sample. A file that fits in the sample is counted exactly.
+ */
+@Slf4j
+public class InputSizeEstimator implements JobExecutionListener {
+    public static final String ESTIMATED_ITEMS_KEY = "input.estimatedItems";
+
+    static final int DEFAULT_SAMPLE_BYTES = 64 * 1024;
+
+    private final Function<String, Resource> inputResolver;
+
+    private final int linesToSkip;
+
+    private final int sampleBytes;
+
+    /**
+     * @param inputResolver resolves the {@value SpringBatchRetryConfig#INPUT_FILE_PARAMETER} job parameter (which may
+     *                      be absent) to the input resource
+     */
+    public InputSizeEstimator(Function<String, Resource> inputResolver, int linesToSkip) {
+        this(inputResolver, linesToSkip, DEFAULT_SAMPLE_BYTES);
+    }
+
+    InputSizeEstimator(Function<String, Resource> inputResolver, int linesToSkip, int sampleBytes) {
+        this.inputResolver = inputResolver;
+        this.linesToSkip = linesToSkip;
+        this.sampleBytes = sampleBytes;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        Resource input = inputResolver.apply(
+                jobExecution.getJobParameters().getString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER));
+        if (!input.isFile()) {
+            return;
+        }
+        try {
+            long estimatedItems = estimateItems(input);
+            jobExecution.getExecutionContext().putLong(ESTIMATED_ITEMS_KEY, estimatedItems);
+            log.info("Input {} holds about {} records", input.getDescription(), estimatedItems);
+        } catch (IOException e) {
+            log.warn("Could not estimate the size of {}: {}", input.getDescription(), e.getMessage());
+        }
+    }
+
+    long estimateItems(Resource input) throws IOException {
+        try (FileChannel channel = FileChannel.open(input.getFile().toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, sampleBytes));
+            while (sample.hasRemaining() && channel.read(sample) >= 0) {
+                // fill the sample
+            }
+            sample.flip();
+            long newlines = 0;
+            for (int i = 0; i < sample.limit(); i++) {
+                if (sample.get(i) == '\n') {
+                    newlines++;
+                }
+            }
+            long lines;
+            if (sample.limit() == size) {
+                lines = newlines + (size > 0 && sample.get(sample.limit() - 1) != '\n' ? 1 : 0);
+            } else {
+                lines = newlines == 0 ? 1 : Math.round((double) size * newlines / sample.limit());
+            }
+            return Math.max(0, lines - linesToSkip);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.arpan.demo_batch.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A skipped item as stored in the dead-letter file of its job execution, see
+ * {@link com.arpan.demo_batch.writer.DeadLetterSink}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterRecord {
+    public enum Phase { READ, PROCESS, WRITE }
+
+    private long jobExecutionId;
+    private String jobName;
+    private long stepExecutionId;
+    private String stepName;
+    private Phase phase;
+    /**
+     * The skipped transaction; {@code null} for a line that could not be read.
+     */
+    private Transaction item;
+    /**
+     * The input line of a {@link Phase#READ} skip, when the reader reported it.
+     */
+    private String input;
+    private String exceptionType;
+    private String message;
+    /**
+     * Attempts after the first one, by the step and by the processor, before the item was skipped.
+     */
+    private int retryCount;
+    private Instant skippedAt;
+}
@@ -0,0 +1,89 @@
+package com.arpan.demo_batch.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits a CSV file into {@code gridSize} byte ranges of about the same size. Every range boundary is moved forward
+ * to the start of the next line, so no line is split between two partitions. Only the first partition skips the
+ * header lines.
+ * <p>
+ * Each partition's {@link ExecutionContext} holds its index, byte range and the number of lines to skip.
+ */
+@Slf4j
+public class CsvByteRangePartitioner implements Partitioner {
+    public static final String PARTITION_INDEX_KEY = "partition.index";
+    public static final String START_OFFSET_KEY = "partition.startOffset";
+    public static final String END_OFFSET_KEY = "partition.endOffset";
+    public static final String LINES_TO_SKIP_KEY = "partition.linesToSkip";
+
+    private final Resource resource;
+
+    private final int linesToSkip;
+
+    public CsvByteRangePartitioner(Resource resource, int linesToSkip) {
+        this.resource = resource;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            for (int index = 0; index < gridSize && start < size; index++) {
+                long end = index == gridSize - 1 ? size : nextLineStart(channel, size * (index + 1) / gridSize);
+                if (end <= start) {
+                    continue;
+                }
+                ExecutionContext context = new ExecutionContext();
+                context.putInt(PARTITION_INDEX_KEY, partitions.size());
+                context.putLong(START_OFFSET_KEY, start);
+                context.putLong(END_OFFSET_KEY, end);
+                context.putInt(LINES_TO_SKIP_KEY, start == 0 ? linesToSkip : 0);
+                partitions.put("partition" + partitions.size(), context);
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to partition " + resource, e);
+        }
+        log.info("Split {} into {} partitions", resource.getFilename(), partitions.size());
+        return partitions;
+    }
+
+    /**
+     * Returns the offset of the first line starting at or after {@code position}, or the file size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        // a line starts at position when the byte before it ends the previous line
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+}
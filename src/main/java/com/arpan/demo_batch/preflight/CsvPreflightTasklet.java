@@ -0,0 +1,76 @@
+package com.arpan.demo_batch.preflight;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pre-flight check of an input file: streams only the first {@code sampleLines} data lines, logs them and maps them
+ * with the job's {@link LineMapper}. The step fails when the file is missing or a sampled line cannot be mapped, so
+ * a bad input is rejected before the main step starts.
+ * <p>
+ * The number of sampled and invalid lines is stored in the step {@link ExecutionContext}.
+ */
+@Slf4j
+public class CsvPreflightTasklet implements Tasklet {
+
+    private final Resource resource;
+
+    private final LineMapper<?> lineMapper;
+
+    private final int linesToSkip;
+
+    private final int sampleLines;
+
+    public CsvPreflightTasklet(Resource resource, LineMapper<?> lineMapper, int linesToSkip, int sampleLines) {
+        this.resource = resource;
+        this.lineMapper = lineMapper;
+        this.linesToSkip = linesToSkip;
+        this.sampleLines = sampleLines;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        if (!resource.exists()) {
+            throw new IllegalStateException("Input " + resource.getDescription() + " does not exist");
+        }
+        int lineNumber = 0;
+        int sampled = 0;
+        int invalid = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (sampled < sampleLines && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= linesToSkip) {
+                    log.info("Pre-flight header: {}", line);
+                    continue;
+                }
+                sampled++;
+                try {
+                    log.info("Pre-flight line {}: {}", lineNumber, lineMapper.mapLine(line, lineNumber));
+                } catch (Exception ex) {
+                    invalid++;
+                    log.error("Pre-flight line {} is invalid: [{}] {}", lineNumber, line, ex.getMessage());
+                }
+            }
+        }
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+        executionContext.putInt("preflight.sampledLines", sampled);
+        executionContext.putInt("preflight.invalidLines", invalid);
+        if (invalid > 0) {
+            throw new IllegalStateException("Pre-flight check found " + invalid + " invalid lines in the first "
+                    + sampled + " lines of " + resource.getDescription());
+        }
+        log.info("Pre-flight check of {} passed ({} lines sampled)", resource.getDescription(), sampled);
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,23 @@
+package com.arpan.demo_batch.preflight;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+
+/**
+ * Runs the pre-flight step only when the job is launched with a positive {@value #PREFLIGHT_LINES_PARAMETER}.
+ */
+public class PreflightDecider implements JobExecutionDecider {
+    public static final String PREFLIGHT_LINES_PARAMETER = "preflight.lines";
+
+    public static final FlowExecutionStatus PREFLIGHT = new FlowExecutionStatus("PREFLIGHT");
+
+    public static final FlowExecutionStatus SKIP_PREFLIGHT = new FlowExecutionStatus("SKIP_PREFLIGHT");
+
+    @Override
+    public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+        Long sampleLines = jobExecution.getJobParameters().getLong(PREFLIGHT_LINES_PARAMETER);
+        return sampleLines != null && sampleLines > 0 ? PREFLIGHT : SKIP_PREFLIGHT;
+    }
+}
@@ -0,0 +1,21 @@
+package com.arpan.demo_batch.processor;
+
+/**
+ * How {@link RetryItemProcessor} resolves the users of a chunk.
+ */
+public enum EnrichmentMode {
+    /**
+     * One user lookup per processed item.
+     */
+    ITEM,
+    /**
+     * The distinct user ids of the chunk are collected while reading and resolved with one bulk request
+     * before the first item of the chunk is processed.
+     */
+    BULK,
+    /**
+     * The distinct user ids of the chunk are collected while reading and resolved with concurrent per-id requests
+     * on virtual threads before the first item of the chunk is processed.
+     */
+    CONCURRENT
+}
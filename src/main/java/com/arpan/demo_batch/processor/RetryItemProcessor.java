@@ -1,34 +1,215 @@
 package com.arpan.demo_batch.processor;
 
+import com.arpan.demo_batch.cache.UserCache;
+import com.arpan.demo_batch.cache.UserSnapshot;
+import com.arpan.demo_batch.cache.UserSnapshotLoader;
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.exception.UserMissingException;
 import com.arpan.demo_batch.exception.UserNotFoundException;
 import com.arpan.demo_batch.model.Transaction;
 import com.arpan.demo_batch.model.User;
+import com.arpan.demo_batch.retry.ExponentialBackoffRetrier;
+import com.arpan.demo_batch.retry.RetryMode;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * it processes each record by hitting a REST endpoint to fetch the user’s age and postCode attributes:
+ * <p>
+ * Lookups go through the shared {@link UserCache} unless the job was launched with {@code userCache.enabled=false}.
+ * The cache counters of the step are stored in the step {@link ExecutionContext} when the step ends.
+ * <p>
+ * With a {@link UserSnapshot} file set, the snapshot is loaded when the step starts and the users in it are resolved
+ * from it without a request; only the ids missing from it are looked up as described below.
+ * <p>
+ * In {@link EnrichmentMode#BULK} mode the user ids are collected while the chunk is read and resolved together
+ * before the first item is processed. An id the bulk lookup could not resolve fails its item on the first attempt,
+ * and the retries of that item go through the regular per-id lookup, so retry and skip work as in item mode.
+ * {@link EnrichmentMode#CONCURRENT} works the same way, but the chunk's ids are fetched with concurrent per-id
+ * requests. Only the lookups run in parallel; items are still processed one by one in input order.
+ * <p>
+ * With an {@link ExponentialBackoffRetrier} set ({@link RetryMode#ITEM}), the processor retries failed lookups itself
+ * instead of leaving it to the step: the lookup of every item starts asynchronously as soon as it is read (or when the
+ * chunk lookup did not resolve it), and a failing lookup is retried in the background after a backoff while the
+ * other items of the chunk are processed. Only an item whose lookup fails {@code maxAttempts} times throws.
+ * <p>
+ * In the pipelined step the read-ahead thread calls {@link #prefetch} with every item read, which starts the lookup
+ * of its user long before the item is processed. {@link #process} then takes the prefetched user; a failed prefetch
+ * is ignored and the item is looked up again as described above, so retries and skips are counted as without
+ * prefetching. In {@link EnrichmentMode#BULK} mode nothing is prefetched: one bulk request per chunk is cheaper than
+ * a request per item, however early.
  */
 @Slf4j
-public class RetryItemProcessor implements ItemProcessor<Transaction, Transaction> {
+public class RetryItemProcessor implements ItemProcessor<Transaction, Transaction>, ItemReadListener<Transaction>,
+        ChunkListener, StepExecutionListener {
+    public static final String USER_CACHE_ENABLED_PARAMETER = "userCache.enabled";
+
+    @Autowired
+    private UserServiceClient userServiceClient;
 
     @Autowired
-    private RestTemplate restTemplate;
+    private UserCache userCache;
+
+    private final boolean userCacheEnabled;
+
+    private final EnrichmentMode enrichmentMode;
+
+    private final Set<Integer> pendingUserIds = new LinkedHashSet<>();
+
+    private final Map<Integer, User> chunkUsers = new HashMap<>();
+
+    private final Set<Integer> unresolvedUserIds = new HashSet<>();
+
+    private final Map<Integer, CompletableFuture<User>> userLookups = new HashMap<>();
+
+    private final Map<Integer, Integer> retriesByUser = new ConcurrentHashMap<>();
+
+    private final Map<Integer, CompletableFuture<User>> prefetchedUsers = new ConcurrentHashMap<>();
+
+    private Semaphore prefetchPermits = new Semaphore(32);
+
+    private final LongAdder lookupAttempts = new LongAdder();
+
+    private long lookupCount;
+
+    private long exhaustedCount;
+
+    private ExponentialBackoffRetrier itemRetrier;
+
+    private UserSnapshotLoader userSnapshotLoader;
+
+    private Path userSnapshotFile;
+
+    private UserSnapshot userSnapshot;
+
+    private long snapshotHitCount;
+
+    private long snapshotMissCount;
+
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
 
-    private final String baseUrl = "http://localhost:9191/users/";
+    private String stepName = "unknown";
+
+    private CacheStats statsAtStepStart = CacheStats.empty();
+
+    public RetryItemProcessor() {
+        this(true, EnrichmentMode.ITEM);
+    }
+
+    public RetryItemProcessor(boolean userCacheEnabled, EnrichmentMode enrichmentMode) {
+        this.userCacheEnabled = userCacheEnabled;
+        this.enrichmentMode = enrichmentMode;
+    }
+
+    public void setItemRetrier(ExponentialBackoffRetrier itemRetrier) {
+        this.itemRetrier = itemRetrier;
+    }
+
+    /**
+     * Resolves users from the snapshot {@code file}, loaded with {@code loader} when the step starts.
+     */
+    public void setUserSnapshot(UserSnapshotLoader loader, Path file) {
+        this.userSnapshotLoader = loader;
+        this.userSnapshotFile = file;
+    }
+
+    /**
+     * Maximum number of {@link #prefetch} lookups running at the same time; the read-ahead thread waits for a free one.
+     */
+    public void setPrefetchParallelism(int prefetchParallelism) {
+        this.prefetchPermits = new Semaphore(prefetchParallelism);
+    }
+
+    /**
+     * Registry of the {@code batch.retries} counter of the lookups retried in {@link RetryMode#ITEM}.
+     */
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Lookup retries made by the processor itself for the user in the current chunk ({@link RetryMode#ITEM} only).
+     */
+    public int getRetryCount(int userId) {
+        return retriesByUser.getOrDefault(userId, 0);
+    }
+
+    /**
+     * Starts the lookup of the transaction's user unless it is in the snapshot or the cache or already prefetched.
+     * Called by the read-ahead thread of the pipelined step, concurrently with {@link #process}.
+     */
+    public void prefetch(Transaction transaction) {
+        if (enrichmentMode == EnrichmentMode.BULK) {
+            return;
+        }
+        int userId = transaction.getUserId();
+        UserSnapshot snapshot = userSnapshot;
+        if ((snapshot != null && snapshot.contains(userId)) || (userCacheEnabled && userCache.contains(userId))
+                || prefetchedUsers.containsKey(userId)) {
+            return;
+        }
+        try {
+            prefetchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Semaphore permits = prefetchPermits;
+        CompletableFuture<User> started;
+        try {
+            started = userServiceClient.fetchUserAsync(userId);
+        } catch (RuntimeException ex) {
+            // e.g. the client is closed: nothing is prefetched, process looks the user up itself
+            permits.release();
+            log.warn("Prefetch of user {} could not be started: {}", userId, ex.getMessage());
+            return;
+        }
+        CompletableFuture<User> lookup = started.whenComplete((user, failure) -> {
+            permits.release();
+            if (userCacheEnabled && user != null) {
+                userCache.put(user);
+            }
+        });
+        prefetchedUsers.put(userId, lookup);
+    }
 
     @Override
     public Transaction process(Transaction transaction) throws UserNotFoundException {
-        System.out.println(">>>>>>>>>>>>> Processing: " + transaction);
         log.info("Processing: {}", transaction);
         if (transaction.getUserId() == 2) {
-            System.err.println("Id " + transaction.getUserId() + " not found for processing");
+            log.warn("Id {} not found for processing", transaction.getUserId());
             throw new UserNotFoundException("Item not found for processing");
         }
-        User user = fetchMoreUserDetails(transaction.getUserId());
+        if (!pendingUserIds.isEmpty()) {
+            prefetchPendingUsers();
+        }
+        User user = resolveUser(transaction.getUserId());
 
         transaction.setUsername(user.getName());
         transaction.setEmail(user.getEmail());
@@ -36,22 +217,211 @@ public class RetryItemProcessor implements ItemProcessor<Transaction, Transactio
         return transaction;
     }
 
+    @Override
+    public void afterRead(Transaction item) {
+        if ((userSnapshot != null && userSnapshot.contains(item.getUserId()))
+                || prefetchedUsers.containsKey(item.getUserId())) {
+            return;
+        }
+        if (enrichmentMode != EnrichmentMode.ITEM) {
+            pendingUserIds.add(item.getUserId());
+        } else if (itemRetrier != null) {
+            // start the lookup while the rest of the chunk is read
+            lookupWithRetry(item.getUserId());
+        }
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        chunkUsers.clear();
+        unresolvedUserIds.clear();
+        userLookups.clear();
+        retriesByUser.clear();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        log.info("User cache enabled for step {}: {}, enrichment mode: {}",
+                stepExecution.getStepName(), userCacheEnabled, enrichmentMode);
+        statsAtStepStart = userCache.stats();
+        stepName = stepExecution.getStepName();
+        lookupAttempts.reset();
+        lookupCount = 0;
+        exhaustedCount = 0;
+        snapshotHitCount = 0;
+        snapshotMissCount = 0;
+        prefetchedUsers.clear();
+        if (userSnapshotLoader != null) {
+            userSnapshot = userSnapshotLoader.load(userSnapshotFile);
+        }
+    }
 
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        prefetchedUsers.clear();
+        if (userCacheEnabled) {
+            CacheStats stepStats = userCache.stats().minus(statsAtStepStart);
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            executionContext.putLong("userCache.hitCount", stepStats.hitCount());
+            executionContext.putLong("userCache.missCount", stepStats.missCount());
+            executionContext.putLong("userCache.evictionCount", stepStats.evictionCount());
+            log.info("User cache stats for step {}: {} (size={})", stepExecution.getStepName(), stepStats, userCache.size());
+        }
+        if (userSnapshot != null) {
+            stepExecution.getExecutionContext().putLong("userSnapshot.hitCount", snapshotHitCount);
+            stepExecution.getExecutionContext().putLong("userSnapshot.missCount", snapshotMissCount);
+            log.info("User snapshot for step {}: {} users resolved from it, {} not in it",
+                    stepExecution.getStepName(), snapshotHitCount, snapshotMissCount);
+            userSnapshot = null;
+        }
+        if (itemRetrier != null) {
+            long retryCount = lookupAttempts.sum() - lookupCount;
+            stepExecution.getExecutionContext().putLong("itemRetry.retryCount", retryCount);
+            stepExecution.getExecutionContext().putLong("itemRetry.exhaustedCount", exhaustedCount);
+            log.info("Item retries for step {}: {} retries, {} items failed after {} attempts",
+                    stepExecution.getStepName(), retryCount, exhaustedCount, itemRetrier.getMaxAttempts());
+        }
+        return null;
+    }
 
-    private User fetchMoreUserDetails(int userId) throws UserNotFoundException {
-        log.info("fetchMoreUserDetails for userId: {}", userId);
-        User user = null;
+    private User resolveUser(int userId) throws UserNotFoundException {
+        if (userSnapshot != null) {
+            User user = userSnapshot.get(userId);
+            if (user != null) {
+                snapshotHitCount++;
+                return user;
+            }
+            snapshotMissCount++;
+        }
+        User user = chunkUsers.get(userId);
+        if (user != null) {
+            return user;
+        }
+        CompletableFuture<User> prefetched = prefetchedUsers.remove(userId);
+        if (prefetched != null) {
+            try {
+                return prefetched.join();
+            } catch (CompletionException ex) {
+                log.debug("Prefetch of user {} failed, looking it up again: {}", userId, ex.getCause().getMessage());
+            }
+        }
+        if (itemRetrier != null) {
+            return awaitLookup(userId);
+        }
+        if (unresolvedUserIds.remove(userId)) {
+            if (userServiceClient.isKnownMissing(userId)) {
+                throw new UserMissingException("User " + userId + " does not exist");
+            }
+            throw new UserNotFoundException("User " + userId + " could not be resolved by the chunk lookup");
+        }
+        return userCacheEnabled
+                ? userCache.get(userId, userServiceClient::fetchUser)
+                : userServiceClient.fetchUser(userId);
+    }
+
+    /**
+     * Resolves the user ids read for the current chunk, taking what is already cached and fetching the rest
+     * with a single bulk request or with concurrent per-id requests.
+     */
+    private void prefetchPendingUsers() {
+        List<Integer> missingUserIds = new ArrayList<>();
+        for (Integer userId : pendingUserIds) {
+            User cached = userCacheEnabled ? userCache.getIfPresent(userId) : null;
+            if (cached != null) {
+                chunkUsers.put(userId, cached);
+            } else {
+                missingUserIds.add(userId);
+            }
+        }
+        pendingUserIds.clear();
+        if (missingUserIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, User> fetched;
         try {
-            String url = baseUrl + userId;
-            log.info("invoking: {}", url);
-            user = restTemplate.getForObject(url, User.class);
-        } catch (RestClientException ex) {
-            log.error("Error fetchMoreUserDetails::RestClientException........ {}", ex.getMessage());
-            throw new UserNotFoundException(ex.getMessage());
-        } catch (Exception e) {
-            log.error("Error fetchMoreUserDetails::Exception........ {}", e.getMessage());
-            throw new UserNotFoundException(e.getMessage());
-        }
-        return user;
+            fetched = enrichmentMode == EnrichmentMode.CONCURRENT
+                    ? userServiceClient.fetchUsersConcurrently(missingUserIds)
+                    : userServiceClient.fetchUsers(missingUserIds);
+        } catch (RuntimeException ex) {
+            // leave the ids to the per-item lookup, which applies the usual retry and skip handling
+            log.error("Lookup of {} users for the chunk failed: {}", missingUserIds.size(), ex.getMessage());
+            if (itemRetrier != null) {
+                missingUserIds.forEach(this::lookupWithRetry);
+            }
+            return;
+        }
+        for (Integer userId : missingUserIds) {
+            User user = fetched.get(userId);
+            if (user == null) {
+                if (itemRetrier != null) {
+                    lookupWithRetry(userId);
+                } else {
+                    unresolvedUserIds.add(userId);
+                }
+                continue;
+            }
+            chunkUsers.put(userId, user);
+            if (userCacheEnabled) {
+                userCache.put(user);
+            }
+        }
+        log.info("Prefetched {} of {} users for the chunk", fetched.size(), missingUserIds.size());
+    }
+
+    /**
+     * Starts the retried lookup of the user unless it is already running for this chunk.
+     */
+    private CompletableFuture<User> lookupWithRetry(int userId) {
+        return userLookups.computeIfAbsent(userId, id -> {
+            lookupCount++;
+            return itemRetrier.retry(() -> lookupAsync(id), RetryItemProcessor::isRetryable, failure -> {
+                retriesByUser.merge(id, 1, Integer::sum);
+                countRetry(failure);
+            });
+        });
+    }
+
+    private CompletableFuture<User> lookupAsync(int userId) {
+        lookupAttempts.increment();
+        User cached = userCacheEnabled ? userCache.getIfPresent(userId) : null;
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return userServiceClient.fetchUserAsync(userId).thenApply(user -> {
+            if (userCacheEnabled && user != null) {
+                userCache.put(user);
+            }
+            return user;
+        });
+    }
+
+    private User awaitLookup(int userId) throws UserNotFoundException {
+        try {
+            return lookupWithRetry(userId).join();
+        } catch (CompletionException ex) {
+            if (isRetryable(ex.getCause())) {
+                exhaustedCount++;
+            }
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new UserNotFoundException("User " + userId + " could not be resolved: " + ex.getCause().getMessage());
+        }
+    }
+
+    private void countRetry(Throwable failure) {
+        Counter.builder("batch.retries")
+                .tag("step", stepName)
+                .tag("exception", failure.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * A missing user stays missing and an open circuit breaker should not be hammered, so neither is retried.
+     */
+    private static boolean isRetryable(Throwable failure) {
+        return failure instanceof UserNotFoundException && !(failure instanceof UserMissingException);
     }
 }
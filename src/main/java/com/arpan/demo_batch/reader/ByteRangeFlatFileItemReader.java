@@ -0,0 +1,232 @@
+package com.arpan.demo_batch.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a file that start inside {@code [startOffset, endOffset)} and maps them with a {@link LineMapper}.
+ * <p>
+ * The reader tracks the byte offset of the next line, so it can be restarted by seeking straight to the offset saved
+ * in the {@link ExecutionContext} instead of re-reading the lines already processed. {@code startOffset} must be the
+ * beginning of a line; a line starting before {@code endOffset} is read to its end even if it crosses it.
+ * Blank lines are ignored.
+ */
+@Slf4j
+public class ByteRangeFlatFileItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+    public static final String BYTE_OFFSET_KEY = "byteOffset";
+    public static final String LINE_NUMBER_KEY = "lineNumber";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Resource resource;
+
+    private final LineMapper<T> lineMapper;
+
+    private final long startOffset;
+
+    private final long endOffset;
+
+    private final int linesToSkip;
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    private boolean saveState = true;
+
+    private FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private byte[] lineBytes = new byte[256];
+
+    private long offset;
+
+    private long lineNumber;
+
+    /**
+     * Reads the whole resource.
+     */
+    public ByteRangeFlatFileItemReader(Resource resource, LineMapper<T> lineMapper, int linesToSkip) {
+        this(resource, lineMapper, 0, Long.MAX_VALUE, linesToSkip);
+    }
+
+    public ByteRangeFlatFileItemReader(Resource resource, LineMapper<T> lineMapper,
+                                       long startOffset, long endOffset, int linesToSkip) {
+        this.resource = resource;
+        this.lineMapper = lineMapper;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + resource, e);
+        }
+        String offsetKey = getExecutionContextKey(BYTE_OFFSET_KEY);
+        if (saveState && executionContext.containsKey(offsetKey)) {
+            long savedOffset = executionContext.getLong(offsetKey);
+            if (savedOffset > size()) {
+                throw new ItemStreamException("File " + resource + " is smaller than at the last commit ("
+                        + size() + " < " + savedOffset + " bytes)");
+            }
+            seek(savedOffset);
+            lineNumber = executionContext.getLong(getExecutionContextKey(LINE_NUMBER_KEY));
+            log.info("Restarting {} at byte offset {} (line {})", resource.getFilename(), offset, lineNumber);
+            return;
+        }
+        seek(startOffset);
+        lineNumber = 0;
+        for (int i = 0; i < linesToSkip && readLine() >= 0; i++) {
+            lineNumber++;
+        }
+    }
+
+    @Override
+    public T read() throws Exception {
+        while (offset < endOffset) {
+            int length = readLine();
+            if (length < 0) {
+                return null;
+            }
+            lineNumber++;
+            if (isBlank(length)) {
+                continue;
+            }
+            String line = new String(lineBytes, 0, length, charset);
+            try {
+                return lineMapper.mapLine(line, (int) lineNumber);
+            } catch (Exception ex) {
+                throw new FlatFileParseException("Parsing error at line: " + lineNumber + " in resource=["
+                        + resource.getDescription() + "], input=[" + line + "]", ex, line, (int) lineNumber);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (saveState) {
+            executionContext.putLong(getExecutionContextKey(BYTE_OFFSET_KEY), offset);
+            executionContext.putLong(getExecutionContextKey(LINE_NUMBER_KEY), lineNumber);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to close " + resource, e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Byte offset of the next line to read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    private long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to get the size of " + resource, e);
+        }
+    }
+
+    private void seek(long position) {
+        try {
+            channel.position(position);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to seek to " + position + " in " + resource, e);
+        }
+        buffer.clear().flip();
+        offset = position;
+    }
+
+    /**
+     * Reads the next line into {@link #lineBytes} without the line terminator and advances {@link #offset} past it.
+     *
+     * @return the line length, or -1 at the end of the file
+     */
+    private int readLine() throws ItemStreamException {
+        int length = 0;
+        boolean any = false;
+        while (true) {
+            if (!buffer.hasRemaining() && !fill()) {
+                return any ? trimCarriageReturn(length) : -1;
+            }
+            any = true;
+            byte b = buffer.get();
+            offset++;
+            if (b == '\n') {
+                return trimCarriageReturn(length);
+            }
+            if (length == lineBytes.length) {
+                lineBytes = Arrays.copyOf(lineBytes, length * 2);
+            }
+            lineBytes[length++] = b;
+        }
+    }
+
+    private boolean fill() {
+        buffer.clear();
+        try {
+            int read = channel.read(buffer);
+            buffer.flip();
+            return read > 0;
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to read " + resource, e);
+        }
+    }
+
+    private int trimCarriageReturn(int length) {
+        return length > 0 && lineBytes[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    private boolean isBlank(int length) {
+        for (int i = 0; i < length; i++) {
+            if (lineBytes[i] != ' ' && lineBytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,65 @@
+package com.arpan.demo_batch.reader;
+
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.core.io.Resource;
+
+/**
+ * Reads the transactions of a dead-letter file written by {@link com.arpan.demo_batch.writer.DeadLetterSink}, so they
+ * can be processed again. Records without a transaction (lines that could not be read) are left out, and the
+ * enrichment of a transaction skipped on write is cleared. A missing file has no transactions.
+ * <p>
+ * The line number is saved like with a {@link FlatFileItemReader}, so a restart continues after the last committed
+ * chunk.
+ */
+public class DeadLetterItemReader implements ItemStreamReader<Transaction> {
+
+    private final FlatFileItemReader<DeadLetterRecord> delegate = new FlatFileItemReader<>();
+
+    public DeadLetterItemReader(Resource resource, ObjectMapper objectMapper) {
+        ObjectReader objectReader = objectMapper.readerFor(DeadLetterRecord.class);
+        delegate.setResource(resource);
+        delegate.setStrict(false);
+        delegate.setLineMapper((line, lineNumber) -> objectReader.readValue(line));
+        delegate.setName("deadLetterItemReader");
+    }
+
+    public void setName(String name) {
+        delegate.setName(name);
+    }
+
+    @Override
+    public Transaction read() throws Exception {
+        DeadLetterRecord record;
+        while ((record = delegate.read()) != null) {
+            Transaction item = record.getItem();
+            if (item != null) {
+                item.setUsername(null);
+                item.setEmail(null);
+                return item;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,323 @@
+package com.arpan.demo_batch.reader;
+
+import com.arpan.demo_batch.model.Transaction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads {@code userid, amount} CSV lines into {@link Transaction}s straight from a memory-mapped file.
+ * <p>
+ * Both columns are parsed from the mapped bytes into primitives, so apart from the {@link Transaction} itself no
+ * objects are created per line (no line String, no {@code FieldSet}, no bean wrapper). Like the non-strict tokenizer
+ * of {@code lineMapper()}, columns after the second one are ignored, while a line with one column and an empty amount
+ * or one without a digit are parse errors; blank lines are skipped. Amounts with an exponent or more than 15 significant digits fall back to
+ * {@link Double#parseDouble(String)}.
+ * <p>
+ * The file is mapped in windows of {@value #WINDOW_SIZE} bytes. Like {@link ByteRangeFlatFileItemReader}, the reader
+ * can be limited to the lines starting inside {@code [startOffset, endOffset)} and it saves the byte offset and line
+ * number of the next line, so a restart seeks directly to it.
+ */
+@Slf4j
+public class MappedTransactionItemReader extends ItemStreamSupport implements ItemStreamReader<Transaction> {
+    static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final Resource resource;
+
+    private final long startOffset;
+
+    private final long endOffset;
+
+    private final int linesToSkip;
+
+    private boolean saveState = true;
+
+    private int windowSize = WINDOW_SIZE;
+
+    private FileChannel channel;
+
+    private long fileSize;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    private long offset;
+
+    private long lineNumber;
+
+    public MappedTransactionItemReader(Resource resource, int linesToSkip) {
+        this(resource, 0, Long.MAX_VALUE, linesToSkip);
+    }
+
+    public MappedTransactionItemReader(Resource resource, long startOffset, long endOffset, int linesToSkip) {
+        this.resource = resource;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            fileSize = channel.size();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + resource, e);
+        }
+        window = null;
+        String offsetKey = getExecutionContextKey(ByteRangeFlatFileItemReader.BYTE_OFFSET_KEY);
+        if (saveState && executionContext.containsKey(offsetKey)) {
+            offset = executionContext.getLong(offsetKey);
+            if (offset > fileSize) {
+                throw new ItemStreamException("File " + resource + " is smaller than at the last commit ("
+                        + fileSize + " < " + offset + " bytes)");
+            }
+            lineNumber = executionContext.getLong(getExecutionContextKey(ByteRangeFlatFileItemReader.LINE_NUMBER_KEY));
+            log.info("Restarting {} at byte offset {} (line {})", resource.getFilename(), offset, lineNumber);
+            return;
+        }
+        offset = startOffset;
+        lineNumber = 0;
+        for (int i = 0; i < linesToSkip && offset < fileSize; i++) {
+            offset = windowStart + nextLineStart(lineEnd());
+            lineNumber++;
+        }
+    }
+
+    @Override
+    public Transaction read() {
+        while (offset < endOffset && offset < fileSize) {
+            int lineEnd = lineEnd();
+            int lineStart = (int) (offset - windowStart);
+            offset = windowStart + nextLineStart(lineEnd);
+            lineNumber++;
+
+            int contentEnd = lineEnd > lineStart && window.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            int userIdStart = skipSpaces(lineStart, contentEnd);
+            if (userIdStart == contentEnd) {
+                continue;
+            }
+            int userIdEnd = indexOf((byte) ',', userIdStart, contentEnd);
+            if (userIdEnd == contentEnd) {
+                throw parseError(lineStart, contentEnd, "expected 2 columns");
+            }
+            int amountEnd = indexOf((byte) ',', userIdEnd + 1, contentEnd);
+            int userId = parseInt(userIdStart, userIdEnd, lineStart, contentEnd);
+            double amount = parseDouble(userIdEnd + 1, amountEnd, lineStart, contentEnd);
+            return new Transaction(userId, amount);
+        }
+        return null;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (saveState) {
+            executionContext.putLong(getExecutionContextKey(ByteRangeFlatFileItemReader.BYTE_OFFSET_KEY), offset);
+            executionContext.putLong(getExecutionContextKey(ByteRangeFlatFileItemReader.LINE_NUMBER_KEY), lineNumber);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        window = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to close " + resource, e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Byte offset of the next line to read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Makes sure the line starting at {@link #offset} is fully mapped and returns the window index of its
+     * terminating {@code '\n'}, or the window limit if the line ends the file.
+     */
+    private int lineEnd() {
+        if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+            map(offset);
+        }
+        int end = indexOf((byte) '\n', (int) (offset - windowStart), window.limit());
+        if (end == window.limit() && windowStart + window.limit() < fileSize) {
+            // the line continues after this window
+            if (offset == windowStart) {
+                throw new ItemStreamException("Line " + (lineNumber + 1) + " is longer than " + windowSize + " bytes");
+            }
+            map(offset);
+            end = indexOf((byte) '\n', 0, window.limit());
+        }
+        return end;
+    }
+
+    private int nextLineStart(int lineEnd) {
+        return lineEnd < window.limit() ? lineEnd + 1 : lineEnd;
+    }
+
+    private void map(long position) {
+        try {
+            long size = Math.min(windowSize, fileSize - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            windowStart = position;
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to map " + resource + " at offset " + position, e);
+        }
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (window.get(i) == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private int skipSpaces(int from, int to) {
+        while (from < to && isSpace(window.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimSpaces(int from, int to) {
+        while (to > from && isSpace(window.get(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private int parseInt(int from, int to, int lineStart, int lineEnd) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        boolean negative = from < to && window.get(from) == '-';
+        int i = negative || (from < to && window.get(from) == '+') ? from + 1 : from;
+        if (i == to) {
+            throw parseError(lineStart, lineEnd, "missing userid");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw parseError(lineStart, lineEnd, "invalid userid");
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw parseError(lineStart, lineEnd, "userid out of range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw parseError(lineStart, lineEnd, "userid out of range");
+        }
+        return (int) value;
+    }
+
+    private double parseDouble(int from, int to, int lineStart, int lineEnd) {
+        from = skipSpaces(from, to);
+        to = trimSpaces(from, to);
+        if (from == to) {
+            throw parseError(lineStart, lineEnd, "missing amount");
+        }
+        boolean negative = window.get(from) == '-';
+        int i = negative || window.get(from) == '+' ? from + 1 : from;
+        long mantissa = 0;
+        boolean anyDigit = false;
+        int digits = 0;
+        int scale = -1;
+        for (; i < to; i++) {
+            byte b = window.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits == 15) {
+                return parseDoubleSlowly(from, to, lineStart, lineEnd);
+            }
+            mantissa = mantissa * 10 + digit;
+            anyDigit = true;
+            if (mantissa != 0) {
+                digits++;
+            }
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (!anyDigit) {
+            // "-", "+" or "."
+            throw parseError(lineStart, lineEnd, "invalid amount");
+        }
+        scale = Math.max(scale, 0);
+        if (mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+            return parseDoubleSlowly(from, to, lineStart, lineEnd);
+        }
+        // both operands are exact doubles, so the division is correctly rounded
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(int from, int to, int lineStart, int lineEnd) {
+        try {
+            return Double.parseDouble(text(from, to));
+        } catch (NumberFormatException ex) {
+            throw parseError(lineStart, lineEnd, "invalid amount");
+        }
+    }
+
+    private String text(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        window.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FlatFileParseException parseError(int lineStart, int lineEnd, String reason) {
+        String line = text(lineStart, lineEnd);
+        return new FlatFileParseException("Parsing error at line: " + lineNumber + " in resource=["
+                + resource.getDescription() + "], input=[" + line + "]: " + reason, line, (int) lineNumber);
+    }
+}
@@ -0,0 +1,226 @@
+package com.arpan.demo_batch.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Reads the delegate on its own thread into a bounded queue, so the next items are read (and, through
+ * {@code onRead}, their enrichment started) while the step processes and writes the current chunk. When the queue
+ * is full the read-ahead thread waits for the step: it never gets more than about {@code capacity} items ahead.
+ * Items are handed over in batches of up to {@value #BATCH_SIZE}, so the two threads do not wake each other up for
+ * every item; a smaller batch is handed over as soon as the step has nothing left to read.
+ * <p>
+ * The delegate's restart state is taken after every item it read and queued with the item. {@link #update} saves the
+ * state of the last item the step took, not that of the last item read ahead, so a restart continues right after the
+ * last committed chunk. A read failure is queued like an item and thrown by {@link #read()} at its place in the
+ * input; reading goes on after it, as it would without read-ahead, so read skips work as before.
+ * <p>
+ * The read-ahead thread runs in the scope of the step execution that opened the reader, so step scoped delegates
+ * (and {@code onRead} targets) resolve to the beans of that step.
+ */
+@Slf4j
+public class ReadAheadItemReader<T> implements ItemStreamReader<T> {
+    static final int BATCH_SIZE = 64;
+
+    private final ItemStreamReader<T> delegate;
+
+    private final int capacity;
+
+    private Consumer<? super T> onRead = item -> {
+    };
+
+    private boolean saveState = true;
+
+    private BlockingQueue<List<Entry<T>>> queue;
+
+    private Iterator<Entry<T>> batch = Collections.emptyIterator();
+
+    private Thread readAheadThread;
+
+    private volatile boolean running;
+
+    private ExecutionContext lastState;
+
+    private boolean exhausted;
+
+    private long readerWaits;
+
+    private long stepWaits;
+
+    /**
+     * An item (or {@code null} at the end of the input) or the failure to read one, with the delegate state after it.
+     * The failure is an {@link Exception} or an {@link Error}.
+     */
+    private record Entry<T>(T item, Throwable failure, ExecutionContext state) {
+    }
+
+    public ReadAheadItemReader(ItemStreamReader<T> delegate, int capacity) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Called on the read-ahead thread with every item read, before it is queued.
+     */
+    public void setOnRead(Consumer<? super T> onRead) {
+        this.onRead = onRead;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.open(executionContext);
+        queue = new ArrayBlockingQueue<>(Math.max(1, capacity / batchSize()));
+        batch = Collections.emptyIterator();
+        lastState = null;
+        exhausted = false;
+        readerWaits = 0;
+        stepWaits = 0;
+        running = true;
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        StepExecution stepExecution = stepContext != null ? stepContext.getStepExecution() : null;
+        readAheadThread = Thread.ofPlatform().name("read-ahead").daemon().start(() -> {
+            if (stepExecution != null) {
+                StepSynchronizationManager.register(stepExecution);
+            }
+            try {
+                readAhead();
+            } finally {
+                if (stepExecution != null) {
+                    StepSynchronizationManager.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public T read() throws Exception {
+        if (exhausted) {
+            return null;
+        }
+        if (!batch.hasNext()) {
+            List<Entry<T>> next = queue.poll();
+            if (next == null) {
+                // the read stage is behind
+                stepWaits++;
+                next = queue.take();
+            }
+            batch = next.iterator();
+        }
+        Entry<T> entry = batch.next();
+        if (entry.state() != null) {
+            lastState = entry.state();
+        }
+        if (entry.failure() instanceof Error error) {
+            throw error;
+        }
+        if (entry.failure() != null) {
+            throw (Exception) entry.failure();
+        }
+        exhausted = entry.item() == null;
+        return entry.item();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (saveState && lastState != null) {
+            for (Map.Entry<String, Object> entry : lastState.entrySet()) {
+                executionContext.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        if (readAheadThread != null) {
+            running = false;
+            readAheadThread.interrupt();
+            try {
+                readAheadThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ItemStreamException("Interrupted while stopping the read-ahead thread", e);
+            }
+            log.info("Read-ahead stopped: the reader waited for the step {} times, the step for the reader {} times",
+                    readerWaits, stepWaits);
+            readAheadThread = null;
+            queue = null;
+            batch = Collections.emptyIterator();
+        }
+        delegate.close();
+    }
+
+    private void readAhead() {
+        List<Entry<T>> entries = new ArrayList<>(batchSize());
+        try {
+            while (running) {
+                T item = null;
+                Throwable failure = null;
+                try {
+                    item = delegate.read();
+                    if (item != null) {
+                        onRead.accept(item);
+                    }
+                } catch (Exception | Error e) {
+                    // the step must get an entry, or it waits forever
+                    failure = e;
+                }
+                ExecutionContext state = null;
+                try {
+                    state = state();
+                } catch (RuntimeException | Error e) {
+                    failure = failure != null ? failure : e;
+                }
+                entries.add(new Entry<>(item, failure, state));
+                boolean end = item == null && failure == null;
+                if (end || entries.size() == batchSize() || queue.isEmpty()) {
+                    put(entries);
+                    entries = new ArrayList<>(batchSize());
+                }
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed by the step
+        }
+    }
+
+    private ExecutionContext state() {
+        if (!saveState) {
+            return null;
+        }
+        ExecutionContext state = new ExecutionContext();
+        delegate.update(state);
+        return state;
+    }
+
+    private int batchSize() {
+        return Math.min(BATCH_SIZE, capacity);
+    }
+
+    private void put(List<Entry<T>> entries) throws InterruptedException {
+        if (!queue.offer(entries)) {
+            // the step is behind: backpressure
+            readerWaits++;
+            queue.put(entries);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.arpan.demo_batch.reader;
+
+/**
+ * Implementation used to read the transaction CSV, selected with {@code batch.reader.type}.
+ */
+public enum ReaderType {
+    /**
+     * Line based reading with the configurable {@code LineMapper} (tokenizer and bean wrapper mapping).
+     */
+    FLAT_FILE,
+    /**
+     * {@link MappedTransactionItemReader}: memory-mapped file parsed straight into primitives.
+     */
+    MAPPED
+}
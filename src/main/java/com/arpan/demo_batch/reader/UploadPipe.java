@@ -0,0 +1,187 @@
+package com.arpan.demo_batch.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hands the bytes of an upload from the request thread to the job reading them, through a queue of at most
+ * {@code capacity} blocks of up to {@code blockSize} bytes. When the queue is full, {@link #transferFrom} stops
+ * reading the request body until the job has taken a block, so a client cannot send more than the buffer ahead of
+ * the job: the upload goes at the pace of the job, nothing of it is staged on disk.
+ * <p>
+ * The request thread waits at most {@code stallTimeout} for room in the queue, e.g. while the job still waits for a
+ * launch slot. A failed or timed-out transfer fails the reading side once it has read the blocks queued before,
+ * so the job does not take a truncated upload for a complete one. Closing the reading side, when the job ends
+ * early, makes {@link #transferFrom} return without reading the rest of the body.
+ */
+public class UploadPipe {
+    private static final byte[] END = new byte[0];
+
+    private static final long WAIT_MILLIS = 100;
+
+    private final String id;
+
+    private final BlockingQueue<byte[]> blocks;
+
+    private final int blockSize;
+
+    private final Duration stallTimeout;
+
+    private final InputStream inputStream = new PipeInputStream();
+
+    private volatile String failure;
+
+    private volatile boolean readerClosed;
+
+    public UploadPipe(String id, int capacity, int blockSize, Duration stallTimeout) {
+        this.id = id;
+        this.blocks = new ArrayBlockingQueue<>(capacity);
+        this.blockSize = blockSize;
+        this.stallTimeout = stallTimeout;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Copies {@code body} into the pipe up to its end, waiting for the reading side whenever the queue is full.
+     *
+     * @return {@code false} if the reading side was closed before it took the whole body
+     * @throws TimeoutException if the queue stayed full for {@code stallTimeout}
+     * @throws IOException      if the body could not be read, e.g. because the client went away
+     */
+    public boolean transferFrom(InputStream body) throws IOException, TimeoutException {
+        long transferred = 0;
+        try {
+            byte[] buffer = new byte[blockSize];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (read > 0 && !put(Arrays.copyOf(buffer, read))) {
+                    return false;
+                }
+                transferred += read;
+            }
+            return put(END);
+        } catch (TimeoutException e) {
+            fail("The upload stalled after " + transferred + " bytes: " + e.getMessage());
+            throw e;
+        } catch (IOException e) {
+            fail("The upload broke off after " + transferred + " bytes: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * The reading side, for one reader. Closing it closes the pipe.
+     */
+    public InputStream inputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Closes the reading side and drops the queued blocks.
+     */
+    public void close() {
+        readerClosed = true;
+        blocks.clear();
+    }
+
+    private boolean put(byte[] block) throws TimeoutException, InterruptedIOException {
+        long deadline = System.nanoTime() + stallTimeout.toNanos();
+        try {
+            while (!readerClosed) {
+                if (blocks.offer(block, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return !readerClosed;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new TimeoutException("no room in the buffer for " + stallTimeout);
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for room in the buffer");
+        }
+    }
+
+    private void fail(String message) {
+        if (failure == null) {
+            failure = message;
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] block;
+
+        private int position;
+
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, bytes.length);
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextBlock()) {
+                return -1;
+            }
+            int count = Math.min(length, block.length - position);
+            System.arraycopy(block, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            UploadPipe.this.close();
+        }
+
+        /**
+         * @return {@code false} at the end of the upload
+         */
+        private boolean nextBlock() throws IOException {
+            while (block == null || position == block.length) {
+                if (ended) {
+                    return false;
+                }
+                if (readerClosed) {
+                    throw new IOException("Upload " + id + " is closed");
+                }
+                byte[] next;
+                try {
+                    next = blocks.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for upload " + id);
+                }
+                if (next == null) {
+                    if (failure != null) {
+                        throw new IOException(failure);
+                    }
+                } else if (next == END) {
+                    ended = true;
+                } else {
+                    block = next;
+                    position = 0;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.arpan.demo_batch.reader;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link UploadPipe}s of the uploads in progress, by id. The request thread {@link #open opens} one and launches
+ * the job with its id as the {@value #UPLOAD_ID_PARAMETER} job parameter; the job's reader then looks it up.
+ * <p>
+ * As a job listener it closes and forgets the upload of a job execution that ended, whether the job read all of it
+ * or not.
+ */
+@Slf4j
+public class UploadRegistry implements JobExecutionListener {
+    /**
+     * Job parameter with the id of the upload the job reads.
+     */
+    public static final String UPLOAD_ID_PARAMETER = "upload.id";
+
+    private final Map<String, UploadPipe> uploads = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final int blockSize;
+
+    private final Duration stallTimeout;
+
+    /**
+     * @param capacity  blocks buffered per upload
+     * @param blockSize bytes per block
+     */
+    public UploadRegistry(int capacity, int blockSize, Duration stallTimeout) {
+        this.capacity = capacity;
+        this.blockSize = blockSize;
+        this.stallTimeout = stallTimeout;
+    }
+
+    public UploadPipe open() {
+        UploadPipe upload = new UploadPipe(UUID.randomUUID().toString(), capacity, blockSize, stallTimeout);
+        uploads.put(upload.id(), upload);
+        return upload;
+    }
+
+    /**
+     * The reading side of the upload.
+     *
+     * @throws IllegalStateException if there is no such upload (any more), e.g. when the job is restarted
+     */
+    public InputStream inputStream(String uploadId) {
+        UploadPipe upload = uploadId != null ? uploads.get(uploadId) : null;
+        if (upload == null) {
+            throw new IllegalStateException("No upload " + uploadId + " in progress; an upload can only be read by "
+                    + "the job execution launched for it");
+        }
+        return upload.inputStream();
+    }
+
+    /**
+     * Closes the upload and forgets it.
+     */
+    public void discard(String uploadId) {
+        UploadPipe upload = uploads.remove(uploadId);
+        if (upload != null) {
+            upload.close();
+        }
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        String uploadId = jobExecution.getJobParameters().getString(UPLOAD_ID_PARAMETER);
+        if (uploadId != null) {
+            log.info("Job execution {} ended, upload {} closed", jobExecution.getId(), uploadId);
+            discard(uploadId);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.arpan.demo_batch.remote;
+
+import java.time.Duration;
+
+/**
+ * Transport between the manager step, which sends chunks, and the workers, which process and write them and reply.
+ * Workers compete for the chunks: every chunk is received by one worker. Replies go to the manager of the step
+ * execution they belong to.
+ */
+public interface ChunkChannel {
+
+    /**
+     * Drops what an earlier step execution with the same id left in the channel, before the step sends its first
+     * chunk. Ids repeat when the job repository does not outlive the JVM.
+     */
+    void start(long stepExecutionId);
+
+    /**
+     * Queues the chunk for the next free worker.
+     */
+    void send(ChunkRequest request);
+
+    /**
+     * Takes the next chunk, waiting up to {@code timeout} for one.
+     *
+     * @return the chunk, or {@code null} if none was sent in time
+     */
+    ChunkRequest receive(Duration timeout) throws InterruptedException;
+
+    void reply(ChunkReply reply);
+
+    /**
+     * Takes the next reply for the step execution, waiting up to {@code timeout} for one.
+     *
+     * @return the reply, or {@code null} if none arrived in time
+     */
+    ChunkReply receiveReply(long stepExecutionId, Duration timeout) throws InterruptedException;
+
+    /**
+     * Tells the workers that the step execution sends no more chunks, so they close their output of it.
+     */
+    void finish(long stepExecutionId);
+
+    boolean isFinished(long stepExecutionId);
+}
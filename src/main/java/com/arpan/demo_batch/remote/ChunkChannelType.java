@@ -0,0 +1,15 @@
+package com.arpan.demo_batch.remote;
+
+/**
+ * {@link ChunkChannel} of the remote chunking step, selected with {@code batch.remote-chunking.channel}.
+ */
+public enum ChunkChannelType {
+    /**
+     * {@link InProcessChunkChannel}: queues in memory, for workers in the JVM that runs the job.
+     */
+    IN_PROCESS,
+    /**
+     * {@link DirectoryChunkChannel}: one file per message in a directory shared by the manager and the worker JVMs.
+     */
+    DIRECTORY
+}
@@ -0,0 +1,33 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.model.DeadLetterRecord;
+
+import java.util.List;
+
+/**
+ * A worker's answer to the manager of a step execution: the outcome of the chunk {@code sequence}, or, with
+ * {@code closed}, that the worker closed its output of the step after {@link ChunkChannel#finish}.
+ *
+ * @param skipCount  items skipped on process, each one in {@code skipped}
+ * @param retryCount repeated process attempts of the chunk's items
+ * @param failure    why the chunk failed, {@code null} if it was written
+ */
+public record ChunkReply(long stepExecutionId, long sequence, String workerId, boolean closed,
+                         int writeCount, int filterCount, int skipCount, int retryCount,
+                         List<DeadLetterRecord> skipped, String failure) {
+
+    static ChunkReply written(ChunkRequest request, String workerId, int writeCount, int filterCount, int retryCount,
+                              List<DeadLetterRecord> skipped) {
+        return new ChunkReply(request.stepExecutionId(), request.sequence(), workerId, false, writeCount, filterCount,
+                skipped.size(), retryCount, skipped, null);
+    }
+
+    static ChunkReply failed(ChunkRequest request, String workerId, String failure) {
+        return new ChunkReply(request.stepExecutionId(), request.sequence(), workerId, false, 0, 0, 0, 0, List.of(),
+                failure);
+    }
+
+    static ChunkReply closed(long stepExecutionId, String workerId) {
+        return new ChunkReply(stepExecutionId, 0, workerId, true, 0, 0, 0, 0, List.of(), null);
+    }
+}
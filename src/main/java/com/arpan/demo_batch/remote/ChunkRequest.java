@@ -0,0 +1,16 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.model.Transaction;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A chunk of transactions the manager step sends to the workers, with the job and step execution it belongs to.
+ * {@code sequence} numbers the chunks of a step execution from 1.
+ *
+ * @param jobParameters the job parameters as strings, e.g. {@code userCache.enabled}
+ */
+public record ChunkRequest(long jobExecutionId, String jobName, Map<String, String> jobParameters,
+                           long stepExecutionId, String stepName, long sequence, List<Transaction> items) {
+}
@@ -0,0 +1,195 @@
+package com.arpan.demo_batch.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link ChunkChannel} through a directory that the manager and the worker JVMs share, e.g. on one machine:
+ * <ul>
+ *     <li>{@code requests/<stepExecutionId>-<sequence>.json}: chunks waiting for a worker</li>
+ *     <li>{@code replies/<stepExecutionId>/}: the replies for the manager of a step execution</li>
+ *     <li>{@code finished/<stepExecutionId>}: the step execution sends no more chunks</li>
+ * </ul>
+ * Messages are JSON files. They are written under a temporary name and then renamed, so a reader never sees a
+ * partial file. A message is taken by renaming it to {@code claimed/}, which succeeds for exactly one of the
+ * competing readers, and is deleted once read. Readers poll the directories every {@code pollInterval}.
+ */
+public class DirectoryChunkChannel implements ChunkChannel {
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final Path requestDirectory;
+
+    private final Path replyDirectory;
+
+    private final Path finishedDirectory;
+
+    private final Path claimedDirectory;
+
+    private final ObjectWriter objectWriter;
+
+    private final ObjectReader requestReader;
+
+    private final ObjectReader replyReader;
+
+    private final long pollIntervalMillis;
+
+    public DirectoryChunkChannel(Path directory, ObjectMapper objectMapper, Duration pollInterval) {
+        this.requestDirectory = directory.resolve("requests");
+        this.replyDirectory = directory.resolve("replies");
+        this.finishedDirectory = directory.resolve("finished");
+        this.claimedDirectory = directory.resolve("claimed");
+        this.objectWriter = objectMapper.writer();
+        this.requestReader = objectMapper.readerFor(ChunkRequest.class);
+        this.replyReader = objectMapper.readerFor(ChunkReply.class);
+        this.pollIntervalMillis = Math.max(1, pollInterval.toMillis());
+        try {
+            Files.createDirectories(requestDirectory);
+            Files.createDirectories(replyDirectory);
+            Files.createDirectories(finishedDirectory);
+            Files.createDirectories(claimedDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create the chunk channel directories in " + directory, e);
+        }
+    }
+
+    @Override
+    public void start(long stepExecutionId) {
+        try {
+            for (Path request : list(requestDirectory)) {
+                if (request.getFileName().toString().startsWith(stepExecutionId + "-")) {
+                    Files.deleteIfExists(request);
+                }
+            }
+            for (Path reply : list(replyDirectory.resolve(String.valueOf(stepExecutionId)))) {
+                Files.deleteIfExists(reply);
+            }
+            Files.deleteIfExists(finishedDirectory.resolve(String.valueOf(stepExecutionId)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear step execution " + stepExecutionId + " in the chunk channel", e);
+        }
+    }
+
+    @Override
+    public void send(ChunkRequest request) {
+        // zero-padded, so the chunks of a step are taken in order
+        write(requestDirectory, String.format("%d-%010d.json", request.stepExecutionId(), request.sequence()), request);
+    }
+
+    @Override
+    public ChunkRequest receive(Duration timeout) throws InterruptedException {
+        byte[] message = take(requestDirectory, timeout);
+        return message != null ? read(requestReader, message) : null;
+    }
+
+    @Override
+    public void reply(ChunkReply reply) {
+        String name = reply.closed()
+                ? "closed-" + reply.workerId() + ".json"
+                : String.format("%010d-%s.json", reply.sequence(), reply.workerId());
+        write(replyDirectory.resolve(String.valueOf(reply.stepExecutionId())), name, reply);
+    }
+
+    @Override
+    public ChunkReply receiveReply(long stepExecutionId, Duration timeout) throws InterruptedException {
+        byte[] message = take(replyDirectory.resolve(String.valueOf(stepExecutionId)), timeout);
+        return message != null ? read(replyReader, message) : null;
+    }
+
+    @Override
+    public void finish(long stepExecutionId) {
+        try {
+            Files.createFile(finishedDirectory.resolve(String.valueOf(stepExecutionId)));
+        } catch (FileAlreadyExistsException e) {
+            // finished before
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot mark step execution " + stepExecutionId + " as finished", e);
+        }
+    }
+
+    @Override
+    public boolean isFinished(long stepExecutionId) {
+        return Files.exists(finishedDirectory.resolve(String.valueOf(stepExecutionId)));
+    }
+
+    private void write(Path directory, String name, Object message) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(TEMP_PREFIX + UUID.randomUUID());
+            objectWriter.writeValue(temp.toFile(), message);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + name + " to " + directory, e);
+        }
+    }
+
+    /**
+     * Claims the first message of the directory, polling until {@code timeout}.
+     *
+     * @return its content, or {@code null} if the directory stayed empty
+     */
+    private byte[] take(Path directory, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            for (Path message : list(directory)) {
+                Path claimed = claimedDirectory.resolve(UUID.randomUUID() + "-" + message.getFileName());
+                try {
+                    Files.move(message, claimed, StandardCopyOption.ATOMIC_MOVE);
+                } catch (NoSuchFileException e) {
+                    // claimed by another reader
+                    continue;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot claim " + message, e);
+                }
+                try {
+                    byte[] content = Files.readAllBytes(claimed);
+                    Files.delete(claimed);
+                    return content;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read " + claimed, e);
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            Thread.sleep(Math.min(pollIntervalMillis, Math.max(1, remaining / 1_000_000)));
+        }
+    }
+
+    private static List<Path> list(Path directory) {
+        List<Path> messages = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return messages;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                path -> !path.getFileName().toString().startsWith(TEMP_PREFIX))) {
+            stream.forEach(messages::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list " + directory, e);
+        }
+        messages.sort(null);
+        return messages;
+    }
+
+    private static <T> T read(ObjectReader reader, byte[] message) {
+        try {
+            return reader.readValue(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read a chunk channel message", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.arpan.demo_batch.remote;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ChunkChannel} of a manager and workers in the same JVM: one queue of chunks and one queue of replies per step
+ * execution. The chunks are not bounded here, the manager limits how many it has in flight.
+ */
+public class InProcessChunkChannel implements ChunkChannel {
+
+    private final BlockingQueue<ChunkRequest> requests = new LinkedBlockingQueue<>();
+
+    private final Map<Long, BlockingQueue<ChunkReply>> replies = new ConcurrentHashMap<>();
+
+    private final Set<Long> finishedStepExecutions = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void start(long stepExecutionId) {
+        requests.removeIf(request -> request.stepExecutionId() == stepExecutionId);
+        replies.remove(stepExecutionId);
+        finishedStepExecutions.remove(stepExecutionId);
+    }
+
+    @Override
+    public void send(ChunkRequest request) {
+        requests.add(request);
+    }
+
+    @Override
+    public ChunkRequest receive(Duration timeout) throws InterruptedException {
+        return requests.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void reply(ChunkReply reply) {
+        replies(reply.stepExecutionId()).add(reply);
+    }
+
+    @Override
+    public ChunkReply receiveReply(long stepExecutionId, Duration timeout) throws InterruptedException {
+        return replies(stepExecutionId).poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void finish(long stepExecutionId) {
+        finishedStepExecutions.add(stepExecutionId);
+    }
+
+    @Override
+    public boolean isFinished(long stepExecutionId) {
+        return finishedStepExecutions.contains(stepExecutionId);
+    }
+
+    private BlockingQueue<ChunkReply> replies(long stepExecutionId) {
+        return replies.computeIfAbsent(stepExecutionId, id -> new LinkedBlockingQueue<>());
+    }
+}
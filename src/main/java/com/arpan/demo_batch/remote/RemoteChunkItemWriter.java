@@ -0,0 +1,272 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.listener.CustomSkipListener;
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.writer.DeadLetterSink;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writer of the manager step of remote chunking: every chunk is sent over the {@link ChunkChannel} to the workers,
+ * which process and write it and reply. At most {@code maxPendingChunks} chunks are unanswered at a time; the step
+ * waits for a reply before it reads more. A failed chunk, or more than {@code skipLimit} skipped items, fails the
+ * step with the next chunk sent, or when the step ends.
+ * <p>
+ * A chunk is committed by the manager once it is sent, but the restart state saved for the {@code reader} is that of
+ * the last chunk all chunks up to which were answered: {@link #update} puts the reader's state at that chunk in place
+ * of its current one. A restart reads the unanswered chunks again, so their items may be written twice (at least
+ * once delivery), but none is lost.
+ * <p>
+ * When the step ends, the writer waits for the remaining replies, lets the workers close their output of the step
+ * ({@link ChunkChannel#finish}) and waits until all workers that wrote a chunk did. The write, filter and process skip counts
+ * of the step execution are then those reported by the workers (until then the write count is the items sent), the
+ * skipped items are in the dead-letter file of the job execution and the step execution context holds
+ * {@value #RETRY_COUNT_KEY} and {@value #WORKER_COUNT_KEY}.
+ */
+@Slf4j
+public class RemoteChunkItemWriter implements ItemStreamWriter<Transaction>, StepExecutionListener {
+    public static final String RETRY_COUNT_KEY = "remoteChunking.retryCount";
+
+    public static final String WORKER_COUNT_KEY = "remoteChunking.workerCount";
+
+    private static final Duration FLUSH_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ChunkChannel chunkChannel;
+
+    private final ItemStream reader;
+
+    private final DeadLetterSink deadLetterSink;
+
+    private final int maxPendingChunks;
+
+    private final Duration replyTimeout;
+
+    private final int skipLimit;
+
+    private StepExecution stepExecution;
+
+    private Map<String, String> jobParameters;
+
+    private long sequence;
+
+    private final TreeSet<Long> unansweredChunks = new TreeSet<>();
+
+    /** Reader state after each chunk sent whose predecessors are not all answered yet. */
+    private final Deque<ReaderState> pendingStates = new ArrayDeque<>();
+
+    /** Reader state after the last chunk all chunks up to which were answered. */
+    private ReaderState restartState;
+
+    private final Set<String> workers = new HashSet<>();
+
+    private final Set<String> closedWorkers = new HashSet<>();
+
+    private long writeCount;
+
+    private long filterCount;
+
+    private long skipCount;
+
+    private long retryCount;
+
+    private String failure;
+
+    private long firstFailedChunk;
+
+    private record ReaderState(long sequence, ExecutionContext state) {
+    }
+
+    public RemoteChunkItemWriter(ChunkChannel chunkChannel, ItemStream reader, DeadLetterSink deadLetterSink,
+                                 int maxPendingChunks, Duration replyTimeout, int skipLimit) {
+        this.chunkChannel = chunkChannel;
+        this.reader = reader;
+        this.deadLetterSink = deadLetterSink;
+        this.maxPendingChunks = maxPendingChunks;
+        this.replyTimeout = replyTimeout;
+        this.skipLimit = skipLimit;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+        this.jobParameters = new LinkedHashMap<>();
+        stepExecution.getJobParameters().getParameters()
+                .forEach((name, parameter) -> jobParameters.put(name, String.valueOf(parameter.getValue())));
+        sequence = 0;
+        unansweredChunks.clear();
+        pendingStates.clear();
+        workers.clear();
+        closedWorkers.clear();
+        writeCount = 0;
+        filterCount = 0;
+        skipCount = 0;
+        retryCount = 0;
+        failure = null;
+        firstFailedChunk = Long.MAX_VALUE;
+        chunkChannel.start(stepExecution.getId());
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        // the reader is opened first, so this is where it starts
+        restartState = new ReaderState(0, readerState());
+    }
+
+    @Override
+    public void write(Chunk<? extends Transaction> chunk) throws Exception {
+        checkFailure();
+        sequence++;
+        chunkChannel.send(new ChunkRequest(stepExecution.getJobExecutionId(), stepExecution.getJobExecution()
+                .getJobInstance().getJobName(), jobParameters, stepExecution.getId(), stepExecution.getStepName(),
+                sequence, new ArrayList<>(chunk.getItems())));
+        unansweredChunks.add(sequence);
+        ChunkReply reply;
+        while ((reply = chunkChannel.receiveReply(stepExecution.getId(), Duration.ZERO)) != null) {
+            apply(reply);
+        }
+        while (unansweredChunks.size() > maxPendingChunks) {
+            awaitReply();
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        pendingStates.addLast(new ReaderState(sequence, readerState()));
+        for (Map.Entry<String, Object> entry : advanceRestartState().entrySet()) {
+            executionContext.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        boolean answered = awaitReplies(() -> !unansweredChunks.isEmpty());
+        // also after a timeout, so the workers that are still there close their output
+        chunkChannel.finish(stepExecution.getId());
+        if (answered) {
+            awaitReplies(() -> !closedWorkers.containsAll(workers));
+        }
+        deadLetterSink.flush(FLUSH_TIMEOUT);
+
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        if (restartState != null) {
+            // chunks answered since the last commit
+            for (Map.Entry<String, Object> entry : advanceRestartState().entrySet()) {
+                executionContext.put(entry.getKey(), entry.getValue());
+            }
+        }
+        stepExecution.setWriteCount(writeCount);
+        stepExecution.setFilterCount(filterCount);
+        stepExecution.setProcessSkipCount(skipCount);
+        executionContext.putLong(RETRY_COUNT_KEY, retryCount);
+        executionContext.putLong(WORKER_COUNT_KEY, workers.size());
+        executionContext.putLong(CustomSkipListener.DEAD_LETTER_COUNT_KEY, skipCount);
+        log.info("{} chunks of step {} written by {} workers: {} items written, {} filtered, {} skipped, {} retries",
+                sequence, stepExecution.getStepName(), workers.size(), writeCount, filterCount, skipCount, retryCount);
+        if (failure != null && stepExecution.getStatus() != BatchStatus.FAILED) {
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(new IllegalStateException(failure));
+            return ExitStatus.FAILED.addExitDescription(failure);
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code false} if a reply did not arrive in time
+     */
+    private boolean awaitReplies(BooleanSupplier pending) {
+        try {
+            while (pending.getAsBoolean()) {
+                awaitReply();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = failure != null ? failure : "Interrupted while waiting for the workers";
+        } catch (RuntimeException e) {
+            failure = failure != null ? failure : e.getMessage();
+        }
+        return false;
+    }
+
+    private void awaitReply() throws InterruptedException {
+        ChunkReply reply = chunkChannel.receiveReply(stepExecution.getId(), replyTimeout);
+        if (reply == null) {
+            throw new IllegalStateException("No reply from the workers of step " + stepExecution.getStepName()
+                    + " within " + replyTimeout + ", " + unansweredChunks.size() + " chunks unanswered");
+        }
+        apply(reply);
+    }
+
+    private void apply(ChunkReply reply) {
+        if (reply.closed()) {
+            closedWorkers.add(reply.workerId());
+            return;
+        }
+        unansweredChunks.remove(reply.sequence());
+        if (reply.failure() != null) {
+            firstFailedChunk = Math.min(firstFailedChunk, reply.sequence());
+            log.error("Chunk {} of step {} failed on worker {}: {}", reply.sequence(), stepExecution.getStepName(),
+                    reply.workerId(), reply.failure());
+            if (failure == null) {
+                failure = "Chunk " + reply.sequence() + " failed on worker " + reply.workerId() + ": " + reply.failure();
+            }
+            return;
+        }
+        workers.add(reply.workerId());
+        writeCount += reply.writeCount();
+        filterCount += reply.filterCount();
+        skipCount += reply.skipCount();
+        retryCount += reply.retryCount();
+        for (DeadLetterRecord record : reply.skipped()) {
+            deadLetterSink.add(record);
+        }
+        if (skipCount > skipLimit && failure == null) {
+            failure = "Skip limit of " + skipLimit + " exceeded: " + skipCount + " items skipped";
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    /**
+     * Moves the restart state to the last chunk sent whose predecessors are all answered, not past a failed chunk.
+     */
+    private ExecutionContext advanceRestartState() {
+        long answeredUpTo = Math.min(unansweredChunks.isEmpty() ? sequence : unansweredChunks.first() - 1,
+                firstFailedChunk - 1);
+        while (!pendingStates.isEmpty() && pendingStates.peekFirst().sequence() <= answeredUpTo) {
+            restartState = pendingStates.pollFirst();
+        }
+        return restartState.state();
+    }
+
+    private ExecutionContext readerState() {
+        ExecutionContext state = new ExecutionContext();
+        reader.update(state);
+        return state;
+    }
+}
@@ -0,0 +1,246 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.exception.UserMissingException;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.processor.RetryItemProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Worker side of remote chunking: {@code threads} worker threads take chunks from the {@link ChunkChannel}, run them
+ * through a {@link RetryItemProcessor} and write them, and reply with the counts and the skipped items.
+ * <p>
+ * Every thread is a worker of its own, {@code <workerName>-<n>}, with its own processor and writer for every step
+ * execution it receives chunks of, created by the {@link StepComponentsFactory} with the first chunk. The writer is
+ * opened then and closed when the manager {@link ChunkChannel#finish finishes} the step, so a step's output is one
+ * file per worker that took part.
+ * <p>
+ * Retry and skip follow the retry step: a failed lookup ({@link UserNotFoundException}) is attempted up to
+ * {@code retryLimit} times per item and then skipped, a missing user ({@link UserMissingException}) is skipped at
+ * once. Any other failure, e.g. the open circuit breaker of the user service, or a failed write fails the chunk,
+ * which is not written. Unlike in the step, a retry is a new attempt of the item alone, not of the whole chunk.
+ */
+@Slf4j
+public class RemoteChunkWorker implements SmartLifecycle {
+
+    private final ChunkChannel chunkChannel;
+
+    private final String workerName;
+
+    private final int threads;
+
+    private final int retryLimit;
+
+    private final StepComponentsFactory stepComponentsFactory;
+
+    private Duration pollInterval = Duration.ofMillis(100);
+
+    private final List<Thread> workerThreads = new ArrayList<>();
+
+    private volatile boolean running;
+
+    /**
+     * The processor and the writer a worker uses for the chunks of one step execution.
+     */
+    public record StepComponents(RetryItemProcessor processor, ItemStreamWriter<Transaction> writer) {
+    }
+
+    @FunctionalInterface
+    public interface StepComponentsFactory {
+        /**
+         * @param request  the first chunk of the step execution the worker received
+         * @param workerId the worker, to tell its output apart from that of the others
+         */
+        StepComponents create(ChunkRequest request, String workerId);
+    }
+
+    public RemoteChunkWorker(ChunkChannel chunkChannel, String workerName, int threads, int retryLimit,
+                             StepComponentsFactory stepComponentsFactory) {
+        this.chunkChannel = chunkChannel;
+        this.workerName = workerName;
+        this.threads = threads;
+        this.retryLimit = retryLimit;
+        this.stepComponentsFactory = stepComponentsFactory;
+    }
+
+    /**
+     * How long a worker waits for a chunk before it checks whether the steps it has output of are finished.
+     */
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        for (int i = 0; i < threads; i++) {
+            String workerId = workerName + "-" + i;
+            workerThreads.add(Thread.ofPlatform().name("chunk-worker-" + i).start(() -> work(workerId)));
+        }
+        if (threads > 0) {
+            log.info("{} remote chunking workers started", threads);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread workerThread : workerThreads) {
+            workerThread.interrupt();
+        }
+        for (Thread workerThread : workerThreads) {
+            try {
+                workerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        workerThreads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void work(String workerId) {
+        Map<Long, WorkerStep> steps = new HashMap<>();
+        try {
+            while (running) {
+                ChunkRequest request = chunkChannel.receive(pollInterval);
+                ChunkReply reply = request != null ? process(request, workerId, steps) : null;
+                if (reply != null) {
+                    chunkChannel.reply(reply);
+                }
+                closeFinished(steps, workerId, false);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            log.error("Remote chunking worker {} stopped", workerId, e);
+        } finally {
+            closeFinished(steps, workerId, true);
+        }
+    }
+
+    /**
+     * @return the reply to the chunk, or {@code null} if nobody waits for it
+     */
+    private ChunkReply process(ChunkRequest request, String workerId, Map<Long, WorkerStep> steps) {
+        WorkerStep step = steps.get(request.stepExecutionId());
+        try {
+            if (step == null) {
+                if (chunkChannel.isFinished(request.stepExecutionId())) {
+                    // left over from a step execution that failed or timed out, its manager no longer listens
+                    log.warn("Dropped chunk {} of the finished step execution {}", request.sequence(),
+                            request.stepExecutionId());
+                    return null;
+                }
+                step = new WorkerStep(request, stepComponentsFactory.create(request, workerId));
+                steps.put(request.stepExecutionId(), step);
+            }
+            return step.process(request, workerId);
+        } catch (Exception e) {
+            log.error("Chunk {} of step {} failed", request.sequence(), request.stepName(), e);
+            return ChunkReply.failed(request, workerId, e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void closeFinished(Map<Long, WorkerStep> steps, String workerId, boolean all) {
+        for (Iterator<Map.Entry<Long, WorkerStep>> iterator = steps.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Long, WorkerStep> entry = iterator.next();
+            if (all || chunkChannel.isFinished(entry.getKey())) {
+                iterator.remove();
+                try {
+                    entry.getValue().close();
+                } catch (RuntimeException e) {
+                    log.error("Closing the output of step execution {} failed", entry.getKey(), e);
+                }
+                chunkChannel.reply(ChunkReply.closed(entry.getKey(), workerId));
+            }
+        }
+    }
+
+    /**
+     * Processor and writer of one worker for one step execution, opened with its first chunk.
+     */
+    private class WorkerStep {
+
+        private final StepComponents components;
+
+        private final StepExecution stepExecution;
+
+        WorkerStep(ChunkRequest request, StepComponents components) {
+            this.components = components;
+            this.stepExecution = new StepExecution(request.stepName(), new JobExecution(request.jobExecutionId()),
+                    request.stepExecutionId());
+            components.processor().beforeStep(stepExecution);
+            components.writer().open(new ExecutionContext());
+        }
+
+        ChunkReply process(ChunkRequest request, String workerId) throws Exception {
+            RetryItemProcessor processor = components.processor();
+            List<Transaction> output = new ArrayList<>(request.items().size());
+            List<DeadLetterRecord> skipped = new ArrayList<>();
+            int filterCount = 0;
+            int retryCount = 0;
+            try {
+                for (Transaction item : request.items()) {
+                    processor.afterRead(item);
+                }
+                for (Transaction item : request.items()) {
+                    for (int attempt = 1; ; attempt++) {
+                        try {
+                            Transaction processed = processor.process(item);
+                            if (processed == null) {
+                                filterCount++;
+                            } else {
+                                output.add(processed);
+                            }
+                            break;
+                        } catch (UserNotFoundException e) {
+                            if (attempt < retryLimit && !(e instanceof UserMissingException)) {
+                                retryCount++;
+                                continue;
+                            }
+                            log.info("Item {} was skipped due to the exception {}", item, e.getMessage());
+                            skipped.add(new DeadLetterRecord(request.jobExecutionId(), request.jobName(),
+                                    request.stepExecutionId(), request.stepName(), DeadLetterRecord.Phase.PROCESS, item,
+                                    null, e.getClass().getName(), e.getMessage(),
+                                    attempt - 1 + processor.getRetryCount(item.getUserId()), Instant.now()));
+                            break;
+                        }
+                    }
+                }
+                components.writer().write(new Chunk<>(output));
+            } finally {
+                processor.afterChunk(null);
+            }
+            return ChunkReply.written(request, workerId, output.size(), filterCount, retryCount, skipped);
+        }
+
+        void close() {
+            try {
+                components.processor().afterStep(stepExecution);
+            } finally {
+                components.writer().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.arpan.demo_batch.repository;
+
+/**
+ * How the job repository stores the state of running steps, selected with {@code batch.job-repository.mode}.
+ */
+public enum JobRepositoryMode {
+    /**
+     * Every chunk commit stores the step execution and its execution context in the {@code BATCH_*} tables.
+     */
+    JDBC,
+    /**
+     * Chunk commits update the step execution in memory only; it is stored with {@link WriteBehindJobRepository}
+     * at most every {@code batch.job-repository.flush-interval} and when the step ends.
+     */
+    WRITE_BEHIND
+}
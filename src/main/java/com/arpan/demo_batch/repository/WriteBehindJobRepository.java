@@ -0,0 +1,216 @@
+package com.arpan.demo_batch.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Job repository that stores the chunk updates of running steps behind their back.
+ * <p>
+ * The first update of a step execution (when it starts) and every update once it left the running state (completed,
+ * failed, stopped) go straight to the delegate. The updates in between, one step execution and one execution
+ * context update per chunk, only mark the step execution dirty; its latest state is stored in one go by the first
+ * update that comes at least {@code flushInterval} after the previous store, and always when the step ends. With a
+ * zero interval a step is only stored when it starts and ends. Updates are stored on the step's own thread, within
+ * the chunk transaction, so what is stored is always the state of a committed chunk.
+ * <p>
+ * Until a step execution is stored again, the {@code BATCH_*} tables (and the {@code JobExplorer}) show its state
+ * of the last store, a stop request is noticed at the next store, and a restart after a crash starts from the last
+ * stored chunk instead of the last committed one. Job executions and everything else are passed through unchanged.
+ */
+@Slf4j
+public class WriteBehindJobRepository implements JobRepository {
+
+    private final JobRepository delegate;
+
+    private final long flushIntervalNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final Map<Long, PendingStepExecution> runningSteps = new ConcurrentHashMap<>();
+
+    public WriteBehindJobRepository(JobRepository delegate, Duration flushInterval) {
+        this(delegate, flushInterval, System::nanoTime);
+    }
+
+    WriteBehindJobRepository(JobRepository delegate, Duration flushInterval, LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public void update(StepExecution stepExecution) {
+        PendingStepExecution pending = runningSteps.get(stepExecution.getId());
+        if (pending == null || !isRunning(stepExecution)) {
+            if (pending != null) {
+                runningSteps.remove(stepExecution.getId());
+                if (pending.contextDirty) {
+                    delegate.updateExecutionContext(stepExecution);
+                }
+                log.info("Step {} ended: stored {} of {} step execution updates",
+                        stepExecution.getStepName(), pending.stored + 1, pending.updates + 1);
+            }
+            delegate.update(stepExecution);
+            if (isRunning(stepExecution) && stepExecution.getId() != null) {
+                runningSteps.put(stepExecution.getId(), new PendingStepExecution(nanoClock.getAsLong()));
+            }
+            return;
+        }
+        pending.updates++;
+        pending.stateDirty = true;
+        flushIfDue(stepExecution, pending);
+    }
+
+    @Override
+    public void updateExecutionContext(StepExecution stepExecution) {
+        PendingStepExecution pending = runningSteps.get(stepExecution.getId());
+        if (pending == null || !isRunning(stepExecution)) {
+            delegate.updateExecutionContext(stepExecution);
+            return;
+        }
+        pending.contextDirty = true;
+        flushIfDue(stepExecution, pending);
+    }
+
+    private void flushIfDue(StepExecution stepExecution, PendingStepExecution pending) {
+        long now = nanoClock.getAsLong();
+        if (flushIntervalNanos <= 0 || now - pending.lastFlushNanos < flushIntervalNanos) {
+            return;
+        }
+        if (pending.contextDirty) {
+            delegate.updateExecutionContext(stepExecution);
+            pending.contextDirty = false;
+        }
+        if (pending.stateDirty) {
+            delegate.update(stepExecution);
+            pending.stateDirty = false;
+            pending.stored++;
+        }
+        pending.lastFlushNanos = now;
+    }
+
+    private static boolean isRunning(StepExecution stepExecution) {
+        return stepExecution.getStatus().isRunning() && stepExecution.getEndTime() == null;
+    }
+
+    @Override
+    public List<String> getJobNames() {
+        return delegate.getJobNames();
+    }
+
+    @Override
+    public List<JobInstance> findJobInstancesByName(String jobName, int start, int count) {
+        return delegate.findJobInstancesByName(jobName, start, count);
+    }
+
+    @Override
+    public List<JobExecution> findJobExecutions(JobInstance jobInstance) {
+        return delegate.findJobExecutions(jobInstance);
+    }
+
+    @Override
+    public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
+        return delegate.isJobInstanceExists(jobName, jobParameters);
+    }
+
+    @Override
+    public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+        return delegate.createJobInstance(jobName, jobParameters);
+    }
+
+    @Override
+    public JobExecution createJobExecution(String jobName, JobParameters jobParameters)
+            throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+        return delegate.createJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public void update(JobExecution jobExecution) {
+        delegate.update(jobExecution);
+    }
+
+    @Override
+    public void add(StepExecution stepExecution) {
+        delegate.add(stepExecution);
+    }
+
+    @Override
+    public void addAll(Collection<StepExecution> stepExecutions) {
+        delegate.addAll(stepExecutions);
+    }
+
+    @Override
+    public void updateExecutionContext(JobExecution jobExecution) {
+        delegate.updateExecutionContext(jobExecution);
+    }
+
+    @Override
+    public JobInstance getJobInstance(String jobName, JobParameters jobParameters) {
+        return delegate.getJobInstance(jobName, jobParameters);
+    }
+
+    @Override
+    public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
+        return delegate.getLastStepExecution(jobInstance, stepName);
+    }
+
+    @Override
+    public long getStepExecutionCount(JobInstance jobInstance, String stepName) {
+        return delegate.getStepExecutionCount(jobInstance, stepName);
+    }
+
+    @Override
+    public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
+        return delegate.getLastJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public void deleteStepExecution(StepExecution stepExecution) {
+        runningSteps.remove(stepExecution.getId());
+        delegate.deleteStepExecution(stepExecution);
+    }
+
+    @Override
+    public void deleteJobExecution(JobExecution jobExecution) {
+        delegate.deleteJobExecution(jobExecution);
+    }
+
+    @Override
+    public void deleteJobInstance(JobInstance jobInstance) {
+        delegate.deleteJobInstance(jobInstance);
+    }
+
+    /**
+     * Store state of one running step execution; only touched by the thread running the step.
+     */
+    private static final class PendingStepExecution {
+
+        private long lastFlushNanos;
+
+        private boolean stateDirty;
+
+        private boolean contextDirty;
+
+        private long updates;
+
+        private long stored;
+
+        PendingStepExecution(long lastFlushNanos) {
+            this.lastFlushNanos = lastFlushNanos;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.arpan.demo_batch.retry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries an asynchronous operation with exponential backoff and jitter.
+ * <p>
+ * The delay before retry {@code n} is drawn from {@code [d / 2, d]} with
+ * {@code d = min(maxBackoff, initialBackoff * multiplier^(n - 1))}, so clients that failed together do not retry
+ * together. Retries are scheduled with {@link CompletableFuture#delayedExecutor}; no thread sleeps while waiting.
+ */
+@Slf4j
+public class ExponentialBackoffRetrier {
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final double multiplier;
+
+    public ExponentialBackoffRetrier(int maxAttempts, Duration initialBackoff, Duration maxBackoff, double multiplier) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.multiplier = multiplier;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Runs {@code operation} and runs it again after a backoff each time it fails with an exception accepted by
+     * {@code retryable}, up to {@code maxAttempts} attempts in total. The returned future completes with the first
+     * result, or exceptionally with the failure of the last attempt.
+     */
+    public <T> CompletableFuture<T> retry(Supplier<CompletableFuture<T>> operation, Predicate<Throwable> retryable) {
+        return retry(operation, retryable, failure -> { });
+    }
+
+    /**
+     * Like {@link #retry(Supplier, Predicate)}, calling {@code onRetry} with the failure each time a retry is scheduled.
+     */
+    public <T> CompletableFuture<T> retry(Supplier<CompletableFuture<T>> operation, Predicate<Throwable> retryable,
+                                          Consumer<Throwable> onRetry) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(1, operation, retryable, onRetry, result);
+        return result;
+    }
+
+    /**
+     * Delay before the retry following attempt {@code attempt}.
+     */
+    long backoffMillis(int attempt) {
+        double exponential = initialBackoffMillis * Math.pow(multiplier, attempt - 1);
+        long delay = (long) Math.min(maxBackoffMillis, exponential);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private <T> void attempt(int attempt, Supplier<CompletableFuture<T>> operation, Predicate<Throwable> retryable,
+                             Consumer<Throwable> onRetry, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(error);
+            if (attempt >= maxAttempts || !retryable.test(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = backoffMillis(attempt);
+            log.warn("Attempt {} of {} failed ({}), retrying in {} ms", attempt, maxAttempts, cause.getMessage(), delay);
+            onRetry.accept(cause);
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(attempt + 1, operation, retryable, onRetry, result));
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
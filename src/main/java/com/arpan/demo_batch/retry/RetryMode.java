@@ -0,0 +1,16 @@
+package com.arpan.demo_batch.retry;
+
+/**
+ * How a failed user lookup is retried, selected with {@code batch.retry.mode}.
+ */
+public enum RetryMode {
+    /**
+     * The fault-tolerant step retries: the chunk is rolled back and processed again, up to 3 attempts per item.
+     */
+    CHUNK,
+    /**
+     * The processor retries the lookup of the failing item only, with {@link ExponentialBackoffRetrier}. The other
+     * items of the chunk are not processed again, and an item whose lookup keeps failing is skipped without rollback.
+     */
+    ITEM
+}
@@ -0,0 +1,321 @@
+package com.arpan.demo_batch.writer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.core.io.WritableResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes items as a JSON array, in the same format as {@link org.springframework.batch.item.json.JsonFileItemWriter}
+ * ({@code [}, one object per line, {@code ]}).
+ * <p>
+ * Items are serialized by one {@link JsonGenerator} that lives as long as the writer is open, straight into a large
+ * {@link ByteBuffer} in front of a {@link FileChannel}; no String is created per item. The generator is driven by the
+ * Jackson databind serializer of the item type or, cheaper, by a {@link JsonItemSerializer} writing the fields itself.
+ * <p>
+ * The buffer is only written to the file when the chunk transaction commits (or when it is full). A rolled back chunk
+ * is discarded and the file is truncated back to the end of the last committed chunk.
+ * <p>
+ * {@link #update(ExecutionContext)} saves the byte position and item count the file has once the current chunk is
+ * committed, so a restart truncates the file there and continues the array.
+ */
+@Slf4j
+public class BufferedJsonFileItemWriter<T> extends ItemStreamSupport implements ItemStreamWriter<T> {
+    public static final String POSITION_KEY = "position";
+    public static final String WRITTEN_KEY = "written";
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final String HEADER = "[" + LINE_SEPARATOR;
+    private static final String ITEM_PREFIX = " ";
+    private static final String ITEM_SEPARATOR = "," + LINE_SEPARATOR + ITEM_PREFIX;
+    private static final String FOOTER = LINE_SEPARATOR + "]" + LINE_SEPARATOR;
+
+    private final WritableResource resource;
+
+    private final ObjectMapper objectMapper;
+
+    private final JsonItemSerializer<? super T> itemSerializer;
+
+    private final ByteBuffer buffer;
+
+    private final OutputStream bufferStream = new BufferOutputStream();
+
+    private boolean saveState = true;
+
+    private boolean forceSync;
+
+    private FileChannel channel;
+
+    private JsonGenerator generator;
+
+    /** File size at the end of the last committed chunk. */
+    private long committedPosition;
+
+    private long committedCount;
+
+    private long pendingCount;
+
+    private boolean synchronizationRegistered;
+
+    /**
+     * Serializes the items with the Jackson databind serializer of {@code itemType}.
+     */
+    public BufferedJsonFileItemWriter(WritableResource resource, Class<T> itemType) {
+        this(resource, itemType, new ObjectMapper(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedJsonFileItemWriter(WritableResource resource, Class<T> itemType, ObjectMapper objectMapper,
+                                      int bufferSize) {
+        this(resource, JsonItemSerializer.databind(objectMapper, itemType), objectMapper, bufferSize);
+    }
+
+    public BufferedJsonFileItemWriter(WritableResource resource, JsonItemSerializer<? super T> itemSerializer) {
+        this(resource, itemSerializer, new ObjectMapper(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public BufferedJsonFileItemWriter(WritableResource resource, JsonItemSerializer<? super T> itemSerializer,
+                                      ObjectMapper objectMapper, int bufferSize) {
+        this.resource = resource;
+        this.itemSerializer = itemSerializer;
+        this.objectMapper = objectMapper;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    /**
+     * Forces the written chunk to the storage device before the transaction commits. Off by default, like
+     * {@code forceSync} of the Spring Batch file writers: the chunk is then handed to the OS at commit.
+     */
+    public void setForceSync(boolean forceSync) {
+        this.forceSync = forceSync;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        try {
+            Path path = resource.getFile().toPath();
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            buffer.clear();
+            pendingCount = 0;
+            synchronizationRegistered = false;
+            generator = createGenerator();
+
+            String positionKey = getExecutionContextKey(POSITION_KEY);
+            if (saveState && executionContext.containsKey(positionKey)) {
+                committedPosition = executionContext.getLong(positionKey);
+                committedCount = executionContext.getLong(getExecutionContextKey(WRITTEN_KEY));
+                if (channel.size() < committedPosition) {
+                    throw new ItemStreamException("File " + path + " is smaller than at the last commit ("
+                            + channel.size() + " < " + committedPosition + " bytes)");
+                }
+                channel.truncate(committedPosition).position(committedPosition);
+                log.info("Restarting {} at byte position {} ({} items written)",
+                        resource.getFilename(), committedPosition, committedCount);
+                return;
+            }
+            channel.truncate(0).position(0);
+            committedCount = 0;
+            generator.writeRaw(HEADER);
+            flushPending();
+            committedPosition = channel.position();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + resource, e);
+        }
+    }
+
+    @Override
+    public void write(Chunk<? extends T> chunk) throws Exception {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            for (T item : chunk) {
+                generator.writeRaw(committedCount + pendingCount == 0 ? ITEM_PREFIX : ITEM_SEPARATOR);
+                itemSerializer.serialize(item, generator);
+                pendingCount++;
+            }
+            generator.flush();
+        } catch (IOException | RuntimeException e) {
+            // the generator may hold half an item; the chunk is rolled back, so start again from a clean one
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                generator = createGenerator();
+            } else {
+                discardPending();
+            }
+            throw e;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            flushPending();
+            markCommitted();
+        } else if (!synchronizationRegistered) {
+            TransactionSynchronizationManager.registerSynchronization(new ChunkSynchronization());
+            synchronizationRegistered = true;
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (saveState && channel != null) {
+            try {
+                // what the file will hold once the current chunk is committed
+                executionContext.putLong(getExecutionContextKey(POSITION_KEY), channel.position() + buffer.position());
+                executionContext.putLong(getExecutionContextKey(WRITTEN_KEY), committedCount + pendingCount);
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to get the position of " + resource, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (pendingCount > 0) {
+                // a chunk whose transaction never completed
+                discardPending();
+            }
+            generator.writeRaw(FOOTER);
+            flushPending();
+            generator.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close " + resource, e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close {}", resource, e);
+            }
+            channel = null;
+            generator = null;
+        }
+    }
+
+    private JsonGenerator createGenerator() throws IOException {
+        JsonGenerator jsonGenerator = objectMapper.getFactory().createGenerator(bufferStream, JsonEncoding.UTF8);
+        // items are separated by ITEM_SEPARATOR, not by the default root value separator (a space)
+        jsonGenerator.setRootValueSeparator(null);
+        return jsonGenerator;
+    }
+
+    /**
+     * Writes everything generated so far to the file.
+     */
+    private void flushPending() throws IOException {
+        generator.flush();
+        drainBuffer();
+        if (forceSync) {
+            channel.force(false);
+        }
+    }
+
+    private void markCommitted() throws IOException {
+        committedPosition = channel.position();
+        committedCount += pendingCount;
+        pendingCount = 0;
+    }
+
+    private void discardPending() throws IOException {
+        buffer.clear();
+        generator = createGenerator();
+        channel.truncate(committedPosition).position(committedPosition);
+        pendingCount = 0;
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Copies the generator output into {@link #buffer}, spilling it to the file when it is full.
+     */
+    private class BufferOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drainBuffer();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    drainBuffer();
+                }
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+    }
+
+    /**
+     * Writes the chunk before the transaction commits, so a failed write fails the commit, and makes the chunk
+     * part of the file only once the commit succeeded.
+     */
+    private class ChunkSynchronization implements TransactionSynchronization {
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            try {
+                flushPending();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to write chunk to " + resource, e);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronizationRegistered = false;
+            if (channel == null) {
+                return;
+            }
+            try {
+                if (status == STATUS_COMMITTED) {
+                    markCommitted();
+                } else {
+                    discardPending();
+                }
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to complete chunk of " + resource, e);
+            }
+        }
+    }
+}
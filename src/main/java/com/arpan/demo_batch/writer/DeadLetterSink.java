@@ -0,0 +1,240 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Appends {@link DeadLetterRecord}s as newline-delimited JSON to one file per job execution,
+ * {@code <directory>/dead-letter-<jobExecutionId>.ndjson}.
+ * <p>
+ * {@link #add} only puts the record in a bounded queue; a single writer thread takes it from there and writes up to
+ * {@code batchSize} records at once, waiting at most {@code flushInterval} for a batch to fill up. All records are
+ * serialized by one shared {@link ObjectWriter}. When the queue is full, {@link #add} waits up to
+ * {@code offerTimeout} and then gives up: the record is logged instead and counted as dropped, so a stuck file system
+ * slows the step down but does not stop it.
+ * <p>
+ * As a job listener it removes a file left over for the id of a starting job execution, e.g. by a job repository
+ * that was recreated since.
+ * <p>
+ * Meters: {@code batch.dead-letter.records} by {@code outcome} ({@code written} or {@code dropped}) and the
+ * {@code batch.dead-letter.queue.size} gauge.
+ */
+@Slf4j
+public class DeadLetterSink implements JobExecutionListener, AutoCloseable {
+    static final String FILE_PREFIX = "dead-letter-";
+
+    private final Path directory;
+
+    private final BlockingQueue<Object> queue;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final long offerTimeoutNanos;
+
+    private final ObjectWriter objectWriter;
+
+    private final Counter writtenCounter;
+
+    private final Counter droppedCounter;
+
+    private final Thread writerThread;
+
+    /**
+     * Entry of the queue that is completed once the records queued before it are written.
+     */
+    private record Flush(CompletableFuture<Void> done, boolean close) {
+    }
+
+    public DeadLetterSink(Path directory, int queueCapacity, int batchSize, Duration flushInterval,
+                          Duration offerTimeout, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.objectWriter = objectMapper.writerFor(DeadLetterRecord.class);
+        this.writtenCounter = Counter.builder("batch.dead-letter.records")
+                .description("Skipped items stored in the dead-letter files")
+                .tag("outcome", "written")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("batch.dead-letter.records")
+                .description("Skipped items stored in the dead-letter files")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("batch.dead-letter.queue.size", queue, BlockingQueue::size)
+                .description("Skipped items waiting to be written to the dead-letter files")
+                .register(meterRegistry);
+        this.writerThread = Thread.ofPlatform().name("dead-letter-writer").daemon().start(this::run);
+    }
+
+    /**
+     * The dead-letter file of a job execution; it only exists once a record of the execution was written.
+     */
+    public Path file(long jobExecutionId) {
+        return directory.resolve(FILE_PREFIX + jobExecutionId + ".ndjson");
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        try {
+            if (Files.deleteIfExists(file(jobExecution.getId()))) {
+                log.warn("Removed the dead-letter file left over for job execution {}", jobExecution.getId());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot remove " + file(jobExecution.getId()), e);
+        }
+    }
+
+    /**
+     * Queues the record for writing.
+     *
+     * @return {@code false} if the queue stayed full for {@code offerTimeout} and the record was dropped
+     */
+    public boolean add(DeadLetterRecord record) {
+        try {
+            if (queue.offer(record, offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drop(List.of(record), "the dead-letter queue is full");
+        return false;
+    }
+
+    /**
+     * Waits until the records added before are written.
+     */
+    public void flush(Duration timeout) {
+        await(new Flush(new CompletableFuture<>(), false), timeout);
+    }
+
+    /**
+     * Writes the queued records and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (writerThread.isAlive()) {
+            await(new Flush(new CompletableFuture<>(), true), Duration.ofSeconds(30));
+        }
+    }
+
+    private void await(Flush flush, Duration timeout) {
+        try {
+            if (!queue.offer(flush, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Dead-letter queue still full after " + timeout);
+            }
+            flush.done().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while flushing the dead-letter queue", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Dead-letter records not written within " + timeout, e);
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                boolean flushRequested = batch.get(0) instanceof Flush;
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (!flushRequested && batch.size() < batchSize) {
+                    int from = batch.size();
+                    if (queue.drainTo(batch, batchSize - from) == 0) {
+                        Object next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    for (int i = from; i < batch.size(); i++) {
+                        flushRequested |= batch.get(i) instanceof Flush;
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Dead-letter writer interrupted, {} queued records are not written", queue.size());
+                return;
+            }
+            write(batch);
+            boolean close = false;
+            for (Object entry : batch) {
+                if (entry instanceof Flush flush) {
+                    flush.done().complete(null);
+                    close |= flush.close();
+                }
+            }
+            batch.clear();
+            if (close) {
+                return;
+            }
+        }
+    }
+
+    private void write(List<Object> batch) {
+        Map<Long, List<DeadLetterRecord>> recordsByExecution = new LinkedHashMap<>();
+        for (Object entry : batch) {
+            if (entry instanceof DeadLetterRecord record) {
+                recordsByExecution.computeIfAbsent(record.getJobExecutionId(), id -> new ArrayList<>()).add(record);
+            }
+        }
+        recordsByExecution.forEach((jobExecutionId, records) -> {
+            try {
+                Files.createDirectories(directory);
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file(jobExecutionId),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND))) {
+                    for (DeadLetterRecord record : records) {
+                        out.write(objectWriter.writeValueAsBytes(record));
+                        out.write('\n');
+                    }
+                }
+                writtenCounter.increment(records.size());
+            } catch (IOException e) {
+                drop(records, "writing " + file(jobExecutionId) + " failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void drop(List<DeadLetterRecord> records, String reason) {
+        droppedCounter.increment(records.size());
+        for (DeadLetterRecord record : records) {
+            String json;
+            try {
+                json = objectWriter.writeValueAsString(record);
+            } catch (JsonProcessingException e) {
+                json = record.toString();
+            }
+            log.error("Dead-letter record dropped, {}: {}", reason, json);
+        }
+    }
+}
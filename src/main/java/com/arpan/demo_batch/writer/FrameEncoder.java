@@ -0,0 +1,18 @@
+package com.arpan.demo_batch.writer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a block of bytes as one self-contained frame of an {@link OutputCompression}.
+ */
+interface FrameEncoder extends AutoCloseable {
+
+    /**
+     * Encodes {@code data[0, length)}. The returned buffer is only valid until the next call.
+     */
+    ByteBuffer encode(byte[] data, int length);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,56 @@
+package com.arpan.demo_batch.writer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes each block as a complete gzip member (RFC 1952), reusing one {@link Deflater} and output array.
+ */
+class GzipFrameEncoder implements FrameEncoder {
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int TRAILER_LENGTH = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] output = new byte[64 * 1024];
+
+    @Override
+    public ByteBuffer encode(byte[] data, int length) {
+        System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+        int size = HEADER.length;
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            size += deflater.deflate(output, size, output.length - size);
+        }
+        if (size + TRAILER_LENGTH > output.length) {
+            output = Arrays.copyOf(output, size + TRAILER_LENGTH);
+        }
+        crc.reset();
+        crc.update(data, 0, length);
+        size = writeIntLittleEndian((int) crc.getValue(), size);
+        size = writeIntLittleEndian(length, size);
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    private int writeIntLittleEndian(int value, int offset) {
+        output[offset] = (byte) value;
+        output[offset + 1] = (byte) (value >>> 8);
+        output[offset + 2] = (byte) (value >>> 16);
+        output[offset + 3] = (byte) (value >>> 24);
+        return offset + 4;
+    }
+}
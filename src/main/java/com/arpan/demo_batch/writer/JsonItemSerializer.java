@@ -0,0 +1,25 @@
+package com.arpan.demo_batch.writer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+
+/**
+ * Writes one item as a JSON value with the generator of a writer.
+ */
+@FunctionalInterface
+public interface JsonItemSerializer<T> {
+
+    void serialize(T item, JsonGenerator generator) throws IOException;
+
+    /**
+     * Serializes with the Jackson databind serializer of {@code itemType}.
+     */
+    static <T> JsonItemSerializer<T> databind(ObjectMapper objectMapper, Class<T> itemType) {
+        ObjectWriter objectWriter = objectMapper.writerFor(itemType).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return (item, generator) -> objectWriter.writeValue(generator, item);
+    }
+}
@@ -0,0 +1,45 @@
+package com.arpan.demo_batch.writer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compression of the NDJSON part files written by {@link RollingNdjsonItemWriter}.
+ * <p>
+ * Every committed chunk is written as one or more complete gzip members or zstd frames. A part is therefore a
+ * concatenation of members/frames, which {@code gunzip}, {@code zstd -d} and {@link java.util.zip.GZIPInputStream}
+ * read as one stream, and which can be truncated at any commit boundary on restart.
+ */
+public enum OutputCompression {
+    NONE(".ndjson") {
+        @Override
+        FrameEncoder newEncoder() {
+            return (data, length) -> ByteBuffer.wrap(data, 0, length);
+        }
+    },
+    /** {@link java.util.zip.Deflater} of the JDK. */
+    GZIP(".ndjson.gz") {
+        @Override
+        FrameEncoder newEncoder() {
+            return new GzipFrameEncoder();
+        }
+    },
+    /** Pure Java zstd of aircompressor. */
+    ZSTD(".ndjson.zst") {
+        @Override
+        FrameEncoder newEncoder() {
+            return new ZstdFrameEncoder();
+        }
+    };
+
+    private final String extension;
+
+    OutputCompression(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    abstract FrameEncoder newEncoder();
+}
@@ -0,0 +1,15 @@
+package com.arpan.demo_batch.writer;
+
+/**
+ * Format of the job output, selected with {@code batch.output.format}.
+ */
+public enum OutputFormat {
+    /**
+     * {@link BufferedJsonFileItemWriter}: one file holding a JSON array.
+     */
+    JSON,
+    /**
+     * {@link RollingNdjsonItemWriter}: numbered newline-delimited JSON parts, optionally compressed.
+     */
+    NDJSON
+}
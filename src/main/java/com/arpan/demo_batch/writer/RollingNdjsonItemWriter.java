@@ -0,0 +1,402 @@
+package com.arpan.demo_batch.writer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes items as newline-delimited JSON into numbered part files {@code <baseName>-00000.ndjson},
+ * {@code <baseName>-00001.ndjson}, ..., optionally compressed ({@link OutputCompression}).
+ * <p>
+ * A new part is started before an item that would go past {@link #setMaxItemsPerPart(long) maxItemsPerPart} items or
+ * {@link #setMaxBytesPerPart(long) maxBytesPerPart} uncompressed bytes, also in the middle of a chunk. Like
+ * {@link BufferedJsonFileItemWriter}, items go through one reusable {@link JsonGenerator} into a buffer that is
+ * written when the chunk is committed (or when it is full); with compression every such block becomes a complete
+ * gzip member or zstd frame.
+ * <p>
+ * {@link #update(ExecutionContext)} saves the part index, the byte position in that part and the part's counters as
+ * they are once the current chunk is committed. A rolled back chunk is removed again, including any part it started,
+ * and a restart truncates the saved part at the saved position and continues it.
+ */
+@Slf4j
+public class RollingNdjsonItemWriter<T> extends ItemStreamSupport implements ItemStreamWriter<T> {
+    public static final String PART_INDEX_KEY = "part.index";
+    public static final String PART_POSITION_KEY = "part.position";
+    public static final String PART_ITEMS_KEY = "part.items";
+    public static final String PART_BYTES_KEY = "part.bytes";
+    public static final String WRITTEN_KEY = "written";
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path directory;
+
+    private final String baseName;
+
+    private final OutputCompression compression;
+
+    private final JsonItemSerializer<? super T> itemSerializer;
+
+    private final ObjectMapper objectMapper;
+
+    private final byte[] frameBuffer;
+
+    private final OutputStream frameStream = new FrameOutputStream();
+
+    private long maxItemsPerPart;
+
+    private long maxBytesPerPart;
+
+    private boolean saveState = true;
+
+    private boolean forceSync;
+
+    private FrameEncoder encoder;
+
+    private FileChannel channel;
+
+    private JsonGenerator generator;
+
+    private int frameLength;
+
+    private int partIndex;
+
+    private long partItems;
+
+    /** Uncompressed bytes of the current part that went through the generator. */
+    private long partBytes;
+
+    private long written;
+
+    private Committed committed;
+
+    private boolean synchronizationRegistered;
+
+    public RollingNdjsonItemWriter(Path directory, String baseName, OutputCompression compression,
+                                   JsonItemSerializer<? super T> itemSerializer) {
+        this(directory, baseName, compression, itemSerializer, new ObjectMapper(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public RollingNdjsonItemWriter(Path directory, String baseName, OutputCompression compression,
+                                   JsonItemSerializer<? super T> itemSerializer, ObjectMapper objectMapper,
+                                   int bufferSize) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.compression = compression;
+        this.itemSerializer = itemSerializer;
+        this.objectMapper = objectMapper;
+        this.frameBuffer = new byte[bufferSize];
+    }
+
+    /**
+     * Maximum number of items per part, 0 for no limit.
+     */
+    public void setMaxItemsPerPart(long maxItemsPerPart) {
+        this.maxItemsPerPart = maxItemsPerPart;
+    }
+
+    /**
+     * Maximum uncompressed size of a part, 0 for no limit. A part always gets at least one item, so a single item
+     * larger than the limit makes a larger part.
+     */
+    public void setMaxBytesPerPart(long maxBytesPerPart) {
+        this.maxBytesPerPart = maxBytesPerPart;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    /**
+     * Forces the written chunk to the storage device before the transaction commits.
+     */
+    public void setForceSync(boolean forceSync) {
+        this.forceSync = forceSync;
+    }
+
+    /**
+     * Path of the part with the given index.
+     */
+    public Path partPath(int index) {
+        return directory.resolve(String.format("%s-%05d%s", baseName, index, compression.getExtension()));
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        try {
+            Files.createDirectories(directory);
+            encoder = compression.newEncoder();
+            channel = null;
+            synchronizationRegistered = false;
+
+            String partIndexKey = getExecutionContextKey(PART_INDEX_KEY);
+            if (saveState && executionContext.containsKey(partIndexKey)) {
+                committed = new Committed(executionContext.getInt(partIndexKey),
+                        executionContext.getLong(getExecutionContextKey(PART_POSITION_KEY)),
+                        executionContext.getLong(getExecutionContextKey(PART_ITEMS_KEY)),
+                        executionContext.getLong(getExecutionContextKey(PART_BYTES_KEY)),
+                        executionContext.getLong(getExecutionContextKey(WRITTEN_KEY)));
+                restoreCommitted();
+                log.info("Restarting {} at byte position {} ({} items written)",
+                        partPath(partIndex).getFileName(), committed.position(), written);
+                return;
+            }
+            // parts of an earlier run would otherwise be mixed with the new ones
+            deletePartsFrom(0);
+            committed = new Committed(0, 0, 0, 0, 0);
+            restoreCommitted();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + partPath(partIndex), e);
+        }
+    }
+
+    @Override
+    public void write(Chunk<? extends T> chunk) throws Exception {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            for (T item : chunk) {
+                if (partItems > 0 && partFull()) {
+                    startNextPart();
+                }
+                itemSerializer.serialize(item, generator);
+                generator.writeRaw('\n');
+                partItems++;
+                written++;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                restoreCommitted();
+            } else {
+                // the generator may hold half an item; the rollback restores the file
+                generator = createGenerator();
+            }
+            throw e;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            flushFrame();
+            markCommitted();
+        } else if (!synchronizationRegistered) {
+            TransactionSynchronizationManager.registerSynchronization(new ChunkSynchronization());
+            synchronizationRegistered = true;
+        }
+    }
+
+    /**
+     * Writes the pending items as a complete frame first, so the saved position is exact for compressed parts too.
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (saveState && channel != null) {
+            try {
+                flushFrame();
+                executionContext.putInt(getExecutionContextKey(PART_INDEX_KEY), partIndex);
+                executionContext.putLong(getExecutionContextKey(PART_POSITION_KEY), channel.position());
+                executionContext.putLong(getExecutionContextKey(PART_ITEMS_KEY), partItems);
+                executionContext.putLong(getExecutionContextKey(PART_BYTES_KEY), partBytes);
+                executionContext.putLong(getExecutionContextKey(WRITTEN_KEY), written);
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to write " + partPath(partIndex), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (written != committed.written()) {
+                // a chunk whose transaction never completed
+                restoreCommitted();
+            }
+            flushFrame();
+            generator.close();
+            if (forceSync) {
+                channel.force(false);
+            }
+            log.info("Closed {} after {} parts and {} items", baseName, partIndex + 1, written);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close " + partPath(partIndex), e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close {}", partPath(partIndex), e);
+            }
+            encoder.close();
+            channel = null;
+            generator = null;
+        }
+    }
+
+    private boolean partFull() {
+        return (maxItemsPerPart > 0 && partItems >= maxItemsPerPart)
+                || (maxBytesPerPart > 0 && partBytes + generator.getOutputBuffered() >= maxBytesPerPart);
+    }
+
+    private void startNextPart() throws IOException {
+        flushFrame();
+        if (forceSync) {
+            channel.force(false);
+        }
+        channel.close();
+        partIndex++;
+        openPart(0);
+        partItems = 0;
+        partBytes = 0;
+    }
+
+    private void openPart(long position) throws IOException {
+        Path path = partPath(partIndex);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < position) {
+            throw new ItemStreamException("File " + path + " is smaller than at the last commit ("
+                    + channel.size() + " < " + position + " bytes)");
+        }
+        channel.truncate(position).position(position);
+    }
+
+    /**
+     * Drops everything written after the last commit, including parts started since, and continues from there.
+     */
+    private void restoreCommitted() throws IOException {
+        frameLength = 0;
+        generator = createGenerator();
+        if (channel != null) {
+            channel.close();
+        }
+        deletePartsFrom(committed.partIndex() + 1);
+        partIndex = committed.partIndex();
+        partItems = committed.partItems();
+        partBytes = committed.partBytes();
+        written = committed.written();
+        openPart(committed.position());
+    }
+
+    private void markCommitted() throws IOException {
+        committed = new Committed(partIndex, channel.position(), partItems, partBytes, written);
+    }
+
+    private void deletePartsFrom(int index) throws IOException {
+        while (Files.deleteIfExists(partPath(index))) {
+            index++;
+        }
+    }
+
+    private JsonGenerator createGenerator() throws IOException {
+        JsonGenerator jsonGenerator = objectMapper.getFactory().createGenerator(frameStream, JsonEncoding.UTF8);
+        // lines are ended by writeRaw('\n'), not separated by the default root value separator (a space)
+        jsonGenerator.setRootValueSeparator(null);
+        return jsonGenerator;
+    }
+
+    /**
+     * Writes the items generated so far to the current part, compressed as one frame.
+     */
+    private void flushFrame() throws IOException {
+        generator.flush();
+        writeFrame();
+    }
+
+    private void writeFrame() throws IOException {
+        if (frameLength == 0) {
+            return;
+        }
+        ByteBuffer frame = encoder.encode(frameBuffer, frameLength);
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+        frameLength = 0;
+    }
+
+    private record Committed(int partIndex, long position, long partItems, long partBytes, long written) {
+    }
+
+    /**
+     * Collects the generator output in {@link #frameBuffer}, writing a frame whenever it is full.
+     */
+    private class FrameOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            if (frameLength == frameBuffer.length) {
+                writeFrame();
+            }
+            frameBuffer[frameLength++] = (byte) b;
+            partBytes++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            partBytes += length;
+            while (length > 0) {
+                if (frameLength == frameBuffer.length) {
+                    writeFrame();
+                }
+                int count = Math.min(length, frameBuffer.length - frameLength);
+                System.arraycopy(bytes, offset, frameBuffer, frameLength, count);
+                frameLength += count;
+                offset += count;
+                length -= count;
+            }
+        }
+    }
+
+    /**
+     * Writes the chunk before the transaction commits, so a failed write fails the commit, and makes the chunk
+     * part of the output only once the commit succeeded.
+     */
+    private class ChunkSynchronization implements TransactionSynchronization {
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            try {
+                flushFrame();
+                if (forceSync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to write chunk to " + partPath(partIndex), e);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronizationRegistered = false;
+            if (channel == null) {
+                return;
+            }
+            try {
+                if (status == STATUS_COMMITTED) {
+                    markCommitted();
+                } else {
+                    restoreCommitted();
+                }
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to complete chunk of " + partPath(partIndex), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link Transaction} field by field, producing the same JSON as the databind serializer
+ * ({@code {"userId":1,"username":"John Doe","email":"john@doe.com","amount":100.0}}) without its per-item lookups.
+ * The field names are encoded once.
+ */
+public class TransactionJsonSerializer implements JsonItemSerializer<Transaction> {
+    private static final SerializableString USER_ID = new SerializedString("userId");
+    private static final SerializableString USERNAME = new SerializedString("username");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString AMOUNT = new SerializedString("amount");
+
+    @Override
+    public void serialize(Transaction transaction, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(USER_ID);
+        generator.writeNumber(transaction.getUserId());
+        generator.writeFieldName(USERNAME);
+        generator.writeString(transaction.getUsername());
+        generator.writeFieldName(EMAIL);
+        generator.writeString(transaction.getEmail());
+        generator.writeFieldName(AMOUNT);
+        generator.writeNumber(transaction.getAmount());
+        generator.writeEndObject();
+    }
+}
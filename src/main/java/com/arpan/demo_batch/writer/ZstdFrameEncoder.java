@@ -0,0 +1,24 @@
+package com.arpan.demo_batch.writer;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes each block as a complete zstd frame with the pure Java compressor of aircompressor.
+ */
+class ZstdFrameEncoder implements FrameEncoder {
+    private final ZstdCompressor compressor = new ZstdCompressor();
+
+    private byte[] output = new byte[0];
+
+    @Override
+    public ByteBuffer encode(byte[] data, int length) {
+        int maxLength = compressor.maxCompressedLength(length);
+        if (output.length < maxLength) {
+            output = new byte[maxLength];
+        }
+        int size = compressor.compress(data, 0, length, output, 0, output.length);
+        return ByteBuffer.wrap(output, 0, size);
+    }
+}
@@ -0,0 +1,105 @@
+package com.arpan.demo_batch;
+
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.exception.UserServiceUnavailableException;
+import com.arpan.demo_batch.model.User;
+import com.arpan.demo_batch.reader.ByteRangeFlatFileItemReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Fails retryBatchJob in its second chunk and restarts it: the reader continues at the byte offset of the last
+ * committed chunk and the writer at the matching output position.
+ */
+@SpringBootTest(properties = {
+        "batch.output.file=file:target/retryBatchJobRestartTest.json",
+        "batch.dead-letter.dir=target/retryBatchJobRestartTest",
+        "batch.chunk.size=5",
+        "batch.chunk.adaptive.enabled=false",
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class RetryBatchJobRestartTest {
+
+    @MockitoBean
+    private UserServiceClient userServiceClient;
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenFailedJobIsRestarted_thenItContinuesAtTheSavedByteOffset() throws Exception {
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n");
+        IntStream.rangeClosed(11, 22).forEach(userId -> csv.append(userId).append(", ").append(userId * 100).append('\n'));
+        Path input = Files.writeString(tempDir.resolve("input.csv"), csv);
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters();
+        // user 19 is in the second chunk (user 2 always fails in the processor)
+        lookUpUsers(19);
+
+        JobExecution failedExecution = jobLauncher.run(retryBatchJob, jobParameters);
+
+        assertEquals(BatchStatus.FAILED, failedExecution.getStatus());
+        StepExecution failedStep = failedExecution.getStepExecutions().iterator().next();
+        assertEquals(5, failedStep.getWriteCount());
+        long committedOffset = csv.substring(0, csv.indexOf("16, 1600")).getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(committedOffset, failedStep.getExecutionContext()
+                .getLong("CSV-Reader." + ByteRangeFlatFileItemReader.BYTE_OFFSET_KEY));
+        assertEquals(6, failedStep.getExecutionContext()
+                .getLong("CSV-Reader." + ByteRangeFlatFileItemReader.LINE_NUMBER_KEY));
+
+        lookUpUsers(-1);
+        JobExecution restartedExecution = jobLauncher.run(retryBatchJob, jobParameters);
+
+        assertEquals(BatchStatus.COMPLETED, restartedExecution.getStatus());
+        StepExecution restartedStep = restartedExecution.getStepExecutions().iterator().next();
+        assertEquals(7, restartedStep.getReadCount());
+        assertEquals(7, restartedStep.getWriteCount());
+        List<Integer> writtenUserIds = new ArrayList<>();
+        for (JsonNode transaction : new ObjectMapper().readTree(Path.of("target/retryBatchJobRestartTest.json").toFile())) {
+            writtenUserIds.add(transaction.get("userId").asInt());
+        }
+        assertEquals(IntStream.rangeClosed(11, 22).boxed().toList(), writtenUserIds);
+    }
+
+    private void lookUpUsers(int unavailableUserId) {
+        doAnswer(invocation -> {
+            int userId = invocation.getArgument(0);
+            if (userId == unavailableUserId) {
+                throw new UserServiceUnavailableException("User service down");
+            }
+            return new User(userId, "user-" + userId, "user" + userId + "@demo.com");
+        }).when(userServiceClient).fetchUser(anyInt());
+    }
+}
@@ -0,0 +1,129 @@
+package com.arpan.demo_batch;
+
+import com.arpan.demo_batch.chunk.AdaptiveChunkSizePolicy;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.preflight.PreflightDecider;
+import com.arpan.demo_batch.utils.LogUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the real retryBatchJob. The user service is not running, so every lookup fails and the items are skipped.
+ */
+@SpringBootTest(properties = {
+        "batch.output.file=file:target/retryBatchJobTest.json",
+        "batch.user-service.base-url=http://localhost:1/users",
+        // every test looks up unreachable users; the shared context must not carry an open circuit into the next test
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class RetryBatchJobTest {
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenInputFileParameterIsGiven_thenThatFileIsRead() throws Exception {
+        Path input = writeCsv("userid, transaction_amount\n7, 700\n8, 800\n9, 900\n");
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, jobParameters(input, null));
+
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        StepExecution retryStep = jobExecution.getStepExecutions().iterator().next();
+        LogUtils.printLog(retryStep);
+        assertEquals("retryStep", retryStep.getStepName());
+        assertEquals(3, retryStep.getReadCount());
+        assertEquals(3, retryStep.getSkipCount());
+        // one chunk of the 3 items; every item fails: the rollbacks of the retries shrink the chunk size down to the
+        // minimum
+        assertEquals("3 x 1", retryStep.getExecutionContext().getString(AdaptiveChunkSizePolicy.SIZES_KEY));
+        assertEquals(1, retryStep.getExecutionContext().getInt(AdaptiveChunkSizePolicy.LAST_SIZE_KEY));
+    }
+
+    @Test
+    public void whenJobRuns_thenStepMetricsAreRecorded() throws Exception {
+        Path input = writeCsv("userid, transaction_amount\n7, 700\n8, 800\n");
+        double skipsBefore = skips();
+
+        jobLauncher.run(retryBatchJob, jobParameters(input, null));
+
+        assertEquals(2, skips() - skipsBefore);
+        // every item fails; other contexts can add a SUCCESS timer through the global registry
+        assertTrue(meterRegistry.get("spring.batch.item.process")
+                .tag("spring.batch.item.process.step.name", "retryStep")
+                .tag("spring.batch.item.process.status", "FAILURE").timer().count() > 0);
+        assertTrue(meterRegistry.get("user.service.requests").tag("type", "single").tag("outcome", "error").timer().count() > 0);
+        assertEquals(0, meterRegistry.get("batch.step.items.rate").tag("step", "retryStep").gauge().value());
+    }
+
+    @Test
+    public void whenPreflightIsRequested_thenItRunsBeforeTheMainStep() throws Exception {
+        Path input = writeCsv("userid, transaction_amount\n7, 700\n8, 800\n9, 900\n");
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, jobParameters(input, 2L));
+
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        List<StepExecution> steps = List.copyOf(jobExecution.getStepExecutions());
+        assertEquals("preflightStep", steps.get(0).getStepName());
+        assertEquals(2, steps.get(0).getExecutionContext().getInt("preflight.sampledLines"));
+        assertEquals("retryStep", steps.get(1).getStepName());
+    }
+
+    @Test
+    public void whenPreflightFindsInvalidLines_thenTheJobFailsBeforeTheMainStep() throws Exception {
+        Path input = writeCsv("userid, transaction_amount\n7, 700\nnot-a-number, 800\n");
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, jobParameters(input, 10L));
+
+        assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+        assertEquals(1, jobExecution.getStepExecutions().size());
+        assertEquals(1, jobExecution.getStepExecutions().iterator().next().getExecutionContext().getInt("preflight.invalidLines"));
+    }
+
+    private double skips() {
+        Counter skips = meterRegistry.find("batch.skips").tag("step", "retryStep").tag("phase", "process").counter();
+        return skips != null ? skips.count() : 0;
+    }
+
+    private JobParameters jobParameters(Path input, Long preflightLines) {
+        JobParametersBuilder builder = new JobParametersBuilder()
+                .addLong("startAt", System.nanoTime())
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString());
+        if (preflightLines != null) {
+            builder.addLong(PreflightDecider.PREFLIGHT_LINES_PARAMETER, preflightLines);
+        }
+        return builder.toJobParameters();
+    }
+
+    private Path writeCsv(String content) throws Exception {
+        Path input = tempDir.resolve("transactions.csv");
+        Files.writeString(input, content);
+        return input;
+    }
+}
@@ -9,10 +9,15 @@ import com.arpan.demo_batch.model.Transaction;
 import com.arpan.demo_batch.utils.MockItemProcessor;
 import com.arpan.demo_batch.utils.MockItemReader;
 import com.arpan.demo_batch.utils.MockItemWriter;
+import com.arpan.demo_batch.writer.DeadLetterSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.listener.StepExecutionListenerSupport;
 import org.springframework.batch.core.repository.JobRepository;
@@ -24,6 +29,7 @@ import org.springframework.batch.item.ItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.retry.RetryListener;
 import org.springframework.retry.annotation.Recover;
 import org.springframework.retry.annotation.Retryable;
 import org.springframework.retry.policy.SimpleRetryPolicy;
@@ -31,6 +37,8 @@ import org.springframework.retry.support.RetryTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 
@@ -82,10 +90,23 @@ public class TestConfig {
                 .listener(new CustomRetryListener())
                 .skipLimit(100)
                 .skip(UserNotFoundException.class)
-                .listener(new CustomSkipListener())
+                .listener((SkipListener<Transaction, Transaction>) customSkipListener())
+                .listener((RetryListener) customSkipListener())
+                .listener((StepExecutionListener) customSkipListener())
                 .build();
     }
 
+    @Bean
+    public CustomSkipListener customSkipListener() {
+        return new CustomSkipListener(deadLetterSink(), item -> 0);
+    }
+
+    @Bean
+    public DeadLetterSink deadLetterSink() {
+        return new DeadLetterSink(Path.of("target/retryTest-dead-letter"), 100, 100, Duration.ofMillis(100),
+                Duration.ofSeconds(1), new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry());
+    }
+
     @Bean
     public ItemReader<Transaction> mockItemReader() throws Exception {
         System.out.println("mockItemReader........");
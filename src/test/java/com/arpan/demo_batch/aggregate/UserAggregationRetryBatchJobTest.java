@@ -0,0 +1,100 @@
+package com.arpan.demo_batch.aggregate;
+
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Runs retryBatchJob with the per-user summary and a memory budget of a few users, so the summary is merged from
+ * spilled runs.
+ */
+@SpringBootTest(properties = {
+        "batch.aggregation.enabled=true",
+        "batch.aggregation.memory-budget=1KB",
+        "batch.aggregation.dir=target/userAggregationRetryBatchJobTest",
+        "batch.output.file=file:target/userAggregationRetryBatchJobTest.json",
+        "batch.dead-letter.dir=target/userAggregationRetryBatchJobTest/dead-letter",
+        "batch.chunk.size=5",
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class UserAggregationRetryBatchJobTest {
+    private static final Path DIRECTORY = Path.of("target/userAggregationRetryBatchJobTest");
+
+    @MockitoBean
+    private UserServiceClient userServiceClient;
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenJobRuns_thenTheSummaryHoldsTheWrittenAmountsPerUser() throws Exception {
+        doAnswer(invocation -> {
+            int userId = invocation.getArgument(0);
+            return new User(userId, "user-" + userId, "user" + userId + "@demo.com");
+        }).when(userServiceClient).fetchUser(anyInt());
+        // 40 users with two transactions each; user 2 always fails in the processor and is skipped
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n2, 200\n");
+        for (int round = 1; round <= 2; round++) {
+            for (int userId = 10; userId < 50; userId++) {
+                csv.append(userId).append(", ").append(userId * round).append('\n');
+            }
+        }
+        Path input = Files.writeString(tempDir.resolve("input.csv"), csv);
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        assertEquals(80, stepExecution.getWriteCount());
+        assertEquals(40, stepExecution.getExecutionContext().getLong(UserAggregatingItemWriter.USERS_KEY));
+        assertTrue(stepExecution.getExecutionContext().getInt(UserAggregatingItemWriter.SPILL_COUNT_KEY) > 0);
+        List<String> expected = new ArrayList<>(List.of(UserAmountAggregator.HEADER));
+        for (int userId = 10; userId < 50; userId++) {
+            expected.add(userId + ",2," + (userId * 3.0) + "," + (double) userId + "," + (userId * 2.0));
+        }
+        Path summary = UserAggregatingItemWriter.summaryFile(DIRECTORY, jobExecution.getId());
+        assertEquals(expected, Files.readAllLines(summary));
+        assertEquals(0, spillFiles(jobExecution.getId()));
+    }
+
+    private static long spillFiles(long jobExecutionId) throws Exception {
+        long count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(DIRECTORY, "userSummary-" + jobExecutionId + ".spill-*")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package com.arpan.demo_batch.aggregate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserAmountAggregatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void whenUsersFitInMemory_thenTheSummaryIsSortedByUserId() throws Exception {
+        UserAmountAggregator aggregator = new UserAmountAggregator(1 << 20, directory, "summary");
+        aggregator.add(5, 10);
+        aggregator.add(3, 1.5);
+        aggregator.add(5, -2);
+        aggregator.add(-7, 4);
+
+        long users = aggregator.writeSummary(directory.resolve("summary.csv"));
+
+        assertEquals(3, users);
+        assertEquals(0, aggregator.spillCount());
+        assertEquals(List.of(UserAmountAggregator.HEADER, "-7,1,4.0,4.0,4.0", "3,1,1.5,1.5,1.5", "5,2,8.0,-2.0,10.0"),
+                Files.readAllLines(directory.resolve("summary.csv")));
+    }
+
+    @Test
+    public void whenUsersExceedTheBudget_thenTheSpilledRunsAreMergedIntoTheSummary() throws Exception {
+        // 12 users fit in the table
+        UserAmountAggregator aggregator = new UserAmountAggregator(16, directory, "summary");
+        Map<Integer, double[]> expected = new TreeMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int userId = random.nextInt(2_000) - 1_000;
+            double amount = random.nextInt(10_000) / 100.0;
+            aggregator.add(userId, amount);
+            double[] stats = expected.computeIfAbsent(userId, id -> new double[]{0, 0, Double.MAX_VALUE, -Double.MAX_VALUE});
+            stats[0]++;
+            stats[1] += amount;
+            stats[2] = Math.min(stats[2], amount);
+            stats[3] = Math.max(stats[3], amount);
+        }
+        assertTrue(aggregator.spillCount() > 100);
+
+        long users = aggregator.writeSummary(directory.resolve("summary.csv"));
+
+        assertEquals(expected.size(), users);
+        List<String> lines = Files.readAllLines(directory.resolve("summary.csv"));
+        assertEquals(expected.size() + 1, lines.size());
+        List<Integer> userIds = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            int userId = Integer.parseInt(fields[0]);
+            double[] stats = expected.get(userId);
+            userIds.add(userId);
+            assertEquals((long) stats[0], Long.parseLong(fields[1]), line);
+            assertEquals(stats[1], Double.parseDouble(fields[2]), 1e-6, line);
+            assertEquals(stats[2], Double.parseDouble(fields[3]), line);
+            assertEquals(stats[3], Double.parseDouble(fields[4]), line);
+        }
+        assertEquals(List.copyOf(expected.keySet()), userIds);
+        // only the summary is left
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("summary.csv")), files.toList());
+        }
+    }
+
+    @Test
+    public void whenBudgetIsGiven_thenTheTableStaysWithinIt() {
+        int capacity = UserAmountAggregator.maxCapacity(256L << 20);
+
+        assertEquals(1 << 22, capacity);
+        assertTrue((long) capacity * UserAmountAggregator.BYTES_PER_SLOT <= 256L << 20);
+        assertEquals(16, UserAmountAggregator.maxCapacity(0));
+    }
+}
@@ -0,0 +1,59 @@
+package com.arpan.demo_batch.cache;
+
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserCacheTest {
+
+    @Test
+    public void whenSameUserRequestedTwice_thenLoaderCalledOnce() {
+        UserCache userCache = new UserCache(10, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        userCache.get(1, id -> load(id, loads));
+        User user = userCache.get(1, id -> load(id, loads));
+
+        assertEquals("user-1", user.getName());
+        assertEquals(1, loads.get(), "Loader should only be called on the first miss");
+        assertEquals(1, userCache.stats().hitCount());
+        assertEquals(1, userCache.stats().missCount());
+    }
+
+    @Test
+    public void whenLoaderFails_thenNothingIsCached() {
+        UserCache userCache = new UserCache(10, Duration.ofMinutes(1));
+
+        assertThrows(UserNotFoundException.class, () -> userCache.get(2, id -> {
+            throw new UserNotFoundException("not found");
+        }));
+
+        assertNull(userCache.getIfPresent(2));
+    }
+
+    @Test
+    public void whenMaximumSizeExceeded_thenEntriesAreEvicted() {
+        UserCache userCache = new UserCache(5, Duration.ofMinutes(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int userId = 0; userId < 100; userId++) {
+            userCache.get(userId, id -> load(id, loads));
+        }
+        userCache.cleanUp();
+
+        assertEquals(5, userCache.size());
+        assertEquals(95, userCache.stats().evictionCount());
+    }
+
+    private User load(int userId, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new User(userId, "user-" + userId, "user" + userId + "@demo.com");
+    }
+}
@@ -0,0 +1,95 @@
+package com.arpan.demo_batch.cache;
+
+import com.arpan.demo_batch.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenSnapshotIsLoaded_thenUsersAreResolvedById() throws Exception {
+        Path file = write("userId,name,email\r\n7,Zoë,zoe@demo.com\r\n\r\n-3,minus,\r\n7,Zoë Smith,zoe@demo.com\r\n2147483647,max,max@demo.com");
+
+        UserSnapshot snapshot = UserSnapshot.load(file);
+
+        assertEquals(3, snapshot.size());
+        assertEquals(new User(7, "Zoë Smith", "zoe@demo.com"), snapshot.get(7));
+        assertEquals(new User(-3, "minus", ""), snapshot.get(-3));
+        assertEquals(new User(Integer.MAX_VALUE, "max", "max@demo.com"), snapshot.get(Integer.MAX_VALUE));
+        assertNull(snapshot.get(8));
+        assertFalse(snapshot.contains(0));
+    }
+
+    @Test
+    public void whenLineHasNoUserId_thenLoadingFails() throws Exception {
+        Path file = write("1,one,one@demo.com\nx,two,two@demo.com\n");
+
+        IOException failure = assertThrows(IOException.class, () -> UserSnapshot.load(file));
+
+        assertTrue(failure.getMessage().contains("line 2"));
+    }
+
+    @Test
+    public void whenRecordsFillPages_thenTheyContinueOnTheNextPage() {
+        UserSnapshot snapshot = new UserSnapshot(0, 8);
+        for (int userId = 0; userId < 1000; userId++) {
+            byte[] line = ("user-" + userId + "user" + userId + "@demo.com").getBytes(StandardCharsets.UTF_8);
+            int nameLength = ("user-" + userId).length();
+            snapshot.put(userId, line, 0, nameLength, nameLength, line.length - nameLength);
+        }
+
+        for (int userId = 0; userId < 1000; userId++) {
+            assertEquals(new User(userId, "user-" + userId, "user" + userId + "@demo.com"), snapshot.get(userId));
+        }
+    }
+
+    @Test
+    public void whenMillionUsersAreLoaded_thenTheyTakeLessThan64BytesEach() throws Exception {
+        Path file = tempDir.resolve("users.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int userId = 1; userId <= 1_000_000; userId++) {
+                writer.write(userId + ",user-" + userId + ",user" + userId + "@demo.com\n");
+            }
+        }
+
+        UserSnapshot snapshot = UserSnapshot.load(file);
+
+        assertEquals(1_000_000, snapshot.size());
+        assertEquals(new User(999_999, "user-999999", "user999999@demo.com"), snapshot.get(999_999));
+        // 31 bytes of name and email per user
+        long bytesPerUser = snapshot.memoryBytes() / snapshot.size();
+        assertTrue(bytesPerUser < 64, bytesPerUser + " bytes per user");
+    }
+
+    @Test
+    public void whenFileIsUnchanged_thenTheLoadedSnapshotIsReused() throws Exception {
+        Path file = write("1,one,one@demo.com\n");
+        UserSnapshotLoader loader = new UserSnapshotLoader();
+
+        UserSnapshot first = loader.load(file);
+        assertSame(first, loader.load(file));
+
+        Files.writeString(file, "1,one,one@demo.com\n2,two,two@demo.com\n");
+        assertEquals(2, loader.load(file).size());
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.writeString(tempDir.resolve("users.csv"), content);
+    }
+}
@@ -0,0 +1,109 @@
+package com.arpan.demo_batch.chunk;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AdaptiveChunkSizePolicyTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final AdaptiveChunkSizePolicy policy =
+            new AdaptiveChunkSizePolicy(5, 2, 100, Duration.ofMillis(100), 0.2, nanoTime::get);
+
+    private StepExecution stepExecution;
+
+    private ChunkContext chunkContext;
+
+    @BeforeEach
+    public void setup() {
+        stepExecution = new JobExecution(1L).createStepExecution("retryStep");
+        chunkContext = new ChunkContext(new StepContext(stepExecution));
+        policy.beforeStep(stepExecution);
+    }
+
+    @Test
+    public void whenChunksAreFasterThanTheTarget_thenTheSizeGrowsAtMostTwofoldPerChunk() {
+        // 1 ms per item: 100 items fit in the target
+        chunk(5, Duration.ofMillis(5), 0);
+        assertEquals(10, policy.getChunkSize());
+        chunk(10, Duration.ofMillis(10), 0);
+        assertEquals(20, policy.getChunkSize());
+        chunk(20, Duration.ofMillis(20), 0);
+        chunk(40, Duration.ofMillis(40), 0);
+        chunk(80, Duration.ofMillis(80), 0);
+        assertEquals(100, policy.getChunkSize());
+    }
+
+    @Test
+    public void whenChunksAreSlowerThanTheTarget_thenTheSizeShrinksToWhatFits() {
+        // 50 ms per item: 2 items fit in the target
+        chunk(5, Duration.ofMillis(250), 0);
+
+        assertEquals(2, policy.getChunkSize());
+    }
+
+    @Test
+    public void whenChunkIsRolledBackOrManyItemsAreSkipped_thenTheSizeIsHalved() {
+        chunk(5, Duration.ofMillis(5), 0);
+        assertEquals(10, policy.getChunkSize());
+
+        policy.beforeChunk(chunkContext);
+        policy.afterChunkError(chunkContext);
+        assertEquals(5, policy.getChunkSize());
+
+        chunk(5, Duration.ofMillis(5), 2);
+        assertEquals(2, policy.getChunkSize());
+    }
+
+    @Test
+    public void whenStepEnds_thenTheSizesAreStoredAndARestartContinuesWithTheLastOne() {
+        chunk(5, Duration.ofMillis(5), 0);
+        chunk(10, Duration.ofMillis(10), 0);
+        chunk(3, Duration.ofMillis(3), 0);
+        policy.afterStep(stepExecution);
+
+        // the last chunk read 3 of its 20 items
+        assertEquals("3 x 1, 5 x 1, 10 x 1", stepExecution.getExecutionContext().getString(AdaptiveChunkSizePolicy.SIZES_KEY));
+        assertEquals(3, stepExecution.getExecutionContext().getInt(AdaptiveChunkSizePolicy.MIN_SIZE_KEY));
+        assertEquals(10, stepExecution.getExecutionContext().getInt(AdaptiveChunkSizePolicy.MAX_SIZE_KEY));
+        assertEquals(6.0, stepExecution.getExecutionContext().getDouble(AdaptiveChunkSizePolicy.AVERAGE_SIZE_KEY));
+        assertEquals(40, stepExecution.getExecutionContext().getInt(AdaptiveChunkSizePolicy.LAST_SIZE_KEY));
+
+        AdaptiveChunkSizePolicy restarted =
+                new AdaptiveChunkSizePolicy(5, 2, 100, Duration.ofMillis(100), 0.2, nanoTime::get);
+        restarted.beforeStep(stepExecution);
+        assertEquals(40, restarted.getChunkSize());
+    }
+
+    @Test
+    public void whenChunkSizeIsReached_thenTheChunkIsComplete() {
+        RepeatContext context = policy.start(new RepeatContextSupport(null));
+        for (int i = 0; i < 4; i++) {
+            policy.update(context);
+            assertFalse(policy.isComplete(context));
+        }
+        policy.update(context);
+        assertTrue(policy.isComplete(context));
+    }
+
+    private void chunk(int items, Duration duration, int skips) {
+        policy.beforeChunk(chunkContext);
+        stepExecution.setReadCount(stepExecution.getReadCount() + items);
+        stepExecution.setProcessSkipCount(stepExecution.getProcessSkipCount() + skips);
+        nanoTime.addAndGet(duration.toNanos());
+        policy.afterChunk(chunkContext);
+    }
+}
@@ -0,0 +1,125 @@
+package com.arpan.demo_batch.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final CircuitBreaker circuitBreaker =
+            new CircuitBreaker("test", 50, 4, 4, Duration.ofSeconds(10), 2, nanoTime::get);
+
+    @Test
+    public void whenFailureRateIsBelowTheThreshold_thenTheBreakerStaysClosed() {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        // the first failure has left the window of the last 4 calls
+        call(true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void whenFewerThanTheMinimumCallsFailed_thenTheBreakerStaysClosed() {
+        call(true);
+        call(true);
+        call(true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void whenFailureRateReachesTheThreshold_thenCallsAreRejectedUntilTheOpenDurationPassed() {
+        call(false);
+        call(true);
+        call(false);
+        call(true);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(permitted(circuitBreaker.tryAcquirePermission()));
+
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertTrue(permitted(circuitBreaker.tryAcquirePermission()));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void whenAllTrialCallsSucceed_thenTheBreakerCloses() {
+        open();
+
+        long firstTrial = circuitBreaker.tryAcquirePermission();
+        long secondTrial = circuitBreaker.tryAcquirePermission();
+        assertTrue(permitted(firstTrial));
+        assertTrue(permitted(secondTrial));
+        // only halfOpenCalls trial calls are permitted
+        assertFalse(permitted(circuitBreaker.tryAcquirePermission()));
+        circuitBreaker.onSuccess(firstTrial);
+        circuitBreaker.onSuccess(secondTrial);
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(permitted(circuitBreaker.tryAcquirePermission()));
+    }
+
+    @Test
+    public void whenATrialCallFails_thenTheBreakerOpensAgain() {
+        open();
+
+        long trial = circuitBreaker.tryAcquirePermission();
+        assertTrue(permitted(trial));
+        circuitBreaker.onFailure(trial);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(permitted(circuitBreaker.tryAcquirePermission()));
+    }
+
+    @Test
+    public void whenCallsOfTheClosedBreakerEndWhileItIsHalfOpen_thenTheirOutcomesAreIgnored() {
+        long closedSuccess = circuitBreaker.tryAcquirePermission();
+        long closedFailure = circuitBreaker.tryAcquirePermission();
+        open();
+        long trial = circuitBreaker.tryAcquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        // neither closes nor reopens the breaker, nor counts as a trial call
+        circuitBreaker.onSuccess(closedSuccess);
+        circuitBreaker.onSuccess(closedSuccess);
+        circuitBreaker.onFailure(closedFailure);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.onSuccess(trial);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        call(false);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+    }
+
+    private void call(boolean failure) {
+        long permission = circuitBreaker.tryAcquirePermission();
+        assertTrue(permitted(permission));
+        if (failure) {
+            circuitBreaker.onFailure(permission);
+        } else {
+            circuitBreaker.onSuccess(permission);
+        }
+    }
+
+    private static boolean permitted(long permission) {
+        return permission != CircuitBreaker.NOT_PERMITTED;
+    }
+}
@@ -0,0 +1,111 @@
+package com.arpan.demo_batch.client;
+
+import com.arpan.demo_batch.loadtest.StubUserService;
+import com.arpan.demo_batch.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConnectionLimitInterceptorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://users/1"));
+
+    @Test
+    public void whenAllConnectionsAreInUse_thenTheRequestWaitsUntilOneIsClosed() throws Exception {
+        ConnectionLimitInterceptor interceptor =
+                new ConnectionLimitInterceptor("user-service", 1, Duration.ofSeconds(5), meterRegistry);
+        ClientHttpResponse first = interceptor.intercept(request, new byte[0],
+                (req, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+        assertEquals(1.0, gauge("http.client.connections.active"));
+
+        CompletableFuture<ClientHttpResponse> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return interceptor.intercept(request, new byte[0],
+                        (req, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waitFor(() -> interceptor.getPending() == 1);
+        assertEquals(1.0, gauge("http.client.connections.pending"));
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0.0, gauge("http.client.connections.active"));
+        assertEquals(2, meterRegistry.get("http.client.connections.acquire").timer().count());
+    }
+
+    @Test
+    public void whenNoConnectionIsFreedInTime_thenTheRequestFails() throws Exception {
+        ConnectionLimitInterceptor interceptor =
+                new ConnectionLimitInterceptor("user-service", 1, Duration.ofMillis(50), meterRegistry);
+        interceptor.intercept(request, new byte[0], (req, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+
+        assertThrows(IOException.class, () -> interceptor.intercept(request, new byte[0],
+                (req, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK)));
+    }
+
+    @Test
+    public void whenRequestFails_thenItsConnectionIsFreed() {
+        ConnectionLimitInterceptor interceptor =
+                new ConnectionLimitInterceptor("user-service", 1, Duration.ofMillis(50), meterRegistry);
+
+        assertThrows(IOException.class, () -> interceptor.intercept(request, new byte[0], (req, body) -> {
+            throw new IOException("Connection refused");
+        }));
+
+        assertEquals(0, interceptor.getActive());
+    }
+
+    @Test
+    public void whenLookupsRunConcurrently_thenAtMostMaxConnectionsReachTheService() throws Exception {
+        try (StubUserService userService = new StubUserService(Duration.ofMillis(50));
+             HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build()) {
+            RestTemplate restTemplate = new RestTemplate(new JdkClientHttpRequestFactory(httpClient));
+            restTemplate.getInterceptors().add(
+                    new ConnectionLimitInterceptor("user-service", 2, Duration.ofSeconds(5), meterRegistry));
+            try (UserServiceClient client = new UserServiceClient(restTemplate, userService.baseUrl(), 8)) {
+                Map<Integer, User> users = client.fetchUsersConcurrently(IntStream.rangeClosed(1, 8).boxed().toList());
+
+                assertEquals(8, users.size());
+                assertEquals(List.of("user-1", "user-8"), List.of(users.get(1).getName(), users.get(8).getName()));
+                assertEquals(2, userService.maxConcurrentRequests());
+            }
+        }
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
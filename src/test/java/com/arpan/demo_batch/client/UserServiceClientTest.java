@@ -0,0 +1,239 @@
+package com.arpan.demo_batch.client;
+
+import com.arpan.demo_batch.exception.UserMissingException;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.exception.UserServiceUnavailableException;
+import com.arpan.demo_batch.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class UserServiceClientTest {
+    private static final String BASE_URL = "http://localhost:9191/users";
+
+    private MockRestServiceServer userService;
+
+    private UserServiceClient userServiceClient;
+
+    private CircuitBreaker circuitBreaker;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setup() {
+        RestTemplate restTemplate = new RestTemplate();
+        userService = MockRestServiceServer.bindTo(restTemplate).build();
+        userServiceClient = new UserServiceClient(restTemplate, BASE_URL);
+        circuitBreaker = new CircuitBreaker("user-service", 50, 4, 4, Duration.ofMinutes(1), 1);
+        userServiceClient.setCircuitBreaker(circuitBreaker);
+        userServiceClient.setMissingUserTtl(Duration.ofMinutes(1), 100);
+        userServiceClient.setMeterRegistry(meterRegistry);
+    }
+
+    @Test
+    public void whenUserIsNotFound_thenLaterLookupsFailWithoutARequest() {
+        userService.expect(once(), requestTo(BASE_URL + "/7"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        assertThrows(UserMissingException.class, () -> userServiceClient.fetchUser(7));
+        assertThrows(UserMissingException.class, () -> userServiceClient.fetchUser(7));
+
+        userService.verify();
+        assertTrue(userServiceClient.isKnownMissing(7));
+        // a missing user is an answer of a healthy service
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1, meterRegistry.get("user.service.requests").tag("outcome", "missing").timer().count());
+    }
+
+    @Test
+    public void whenIdIsAbsentFromTheBulkResponse_thenItIsNotRequestedAgain() {
+        userService.expect(once(), requestTo(BASE_URL + "?ids=1,2"))
+                .andRespond(withSuccess("[{\"userId\":1,\"name\":\"user-1\"}]", MediaType.APPLICATION_JSON));
+        userService.expect(once(), requestTo(BASE_URL + "?ids=1"))
+                .andRespond(withSuccess("[{\"userId\":1,\"name\":\"user-1\"}]", MediaType.APPLICATION_JSON));
+
+        assertEquals(1, userServiceClient.fetchUsers(List.of(1, 2)).size());
+        Map<Integer, ?> usersById = userServiceClient.fetchUsers(List.of(1, 2));
+
+        userService.verify();
+        assertEquals(1, usersById.size());
+        assertTrue(userServiceClient.isKnownMissing(2));
+    }
+
+    @Test
+    public void whenServiceKeepsFailing_thenTheCircuitOpensAndNoRequestIsMade() {
+        userService.expect(times(4), requestTo(BASE_URL + "/3"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(UserNotFoundException.class, () -> userServiceClient.fetchUser(3));
+        }
+        assertThrows(UserServiceUnavailableException.class, () -> userServiceClient.fetchUser(3));
+        assertThrows(UserServiceUnavailableException.class, () -> userServiceClient.fetchUsers(List.of(4, 5)));
+
+        userService.verify();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(4, meterRegistry.get("user.service.requests").tag("outcome", "error").timer().count());
+        assertEquals(2, meterRegistry.get("user.service.rejected").counter().count());
+    }
+
+    @Test
+    public void whenSameUserIsLookedUpConcurrently_thenOneRequestIsSharedWithItsResult() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch lookupsJoined = new CountDownLatch(1);
+        userService.expect(once(), requestTo(BASE_URL + "/5"))
+                .andRespond(request -> {
+                    requestStarted.countDown();
+                    try {
+                        lookupsJoined.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return withSuccess("{\"userId\":5,\"name\":\"user-5\"}", MediaType.APPLICATION_JSON)
+                            .createResponse(request);
+                });
+
+        CompletableFuture<User> first = userServiceClient.fetchUserAsync(5);
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<User> second = userServiceClient.fetchUserAsync(5);
+        CompletableFuture<User> third = CompletableFuture.supplyAsync(() -> userServiceClient.fetchUser(5));
+        while (meterRegistry.get("user.service.coalesced").counter().count() < 2) {
+            Thread.sleep(1);
+        }
+        lookupsJoined.countDown();
+
+        User user = first.get(5, TimeUnit.SECONDS);
+        assertEquals("user-5", user.getName());
+        assertSame(user, second.get(5, TimeUnit.SECONDS));
+        assertSame(user, third.get(5, TimeUnit.SECONDS));
+        userService.verify();
+        assertEquals(1, meterRegistry.get("user.service.requests").tag("type", "single").tag("outcome", "success")
+                .timer().count());
+    }
+
+    @Test
+    public void whenSharedLookupFails_thenEveryJoinedLookupFailsAndTheNextOneSendsARequest() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch lookupJoined = new CountDownLatch(1);
+        userService.expect(once(), requestTo(BASE_URL + "/6"))
+                .andRespond(request -> {
+                    requestStarted.countDown();
+                    try {
+                        lookupJoined.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return withStatus(HttpStatus.SERVICE_UNAVAILABLE).createResponse(request);
+                });
+        userService.expect(once(), requestTo(BASE_URL + "/6"))
+                .andRespond(withSuccess("{\"userId\":6,\"name\":\"user-6\"}", MediaType.APPLICATION_JSON));
+
+        CompletableFuture<User> first = userServiceClient.fetchUserAsync(6);
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<User> second = userServiceClient.fetchUserAsync(6);
+        lookupJoined.countDown();
+
+        CompletionException firstFailure = assertThrows(CompletionException.class, first::join);
+        CompletionException secondFailure = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(UserNotFoundException.class, firstFailure.getCause());
+        assertSame(firstFailure.getCause(), secondFailure.getCause());
+        assertEquals("user-6", userServiceClient.fetchUser(6).getName());
+
+        userService.verify();
+        assertEquals(1, meterRegistry.get("user.service.coalesced").counter().count());
+    }
+
+    @Test
+    public void whenSharedLookupThrowsAnError_thenTheJoinedLookupFailsAndTheNextOneSendsARequest() throws Exception {
+        CountDownLatch requestStarted = new CountDownLatch(1);
+        CountDownLatch lookupJoined = new CountDownLatch(1);
+        userService.expect(once(), requestTo(BASE_URL + "/5"))
+                .andRespond(request -> {
+                    requestStarted.countDown();
+                    try {
+                        lookupJoined.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new StackOverflowError("deeply nested response");
+                });
+        userService.expect(once(), requestTo(BASE_URL + "/5"))
+                .andRespond(withSuccess("{\"userId\":5,\"name\":\"user-5\"}", MediaType.APPLICATION_JSON));
+
+        CompletableFuture<User> first = userServiceClient.fetchUserAsync(5);
+        assertTrue(requestStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<User> second = userServiceClient.fetchUserAsync(5);
+        lookupJoined.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, failure.getCause());
+        assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertEquals("user-5", userServiceClient.fetchUserAsync(5).get(5, TimeUnit.SECONDS).getName());
+
+        userService.verify();
+    }
+
+    @Test
+    public void whenClientIsClosed_thenEveryLookupIsRejectedAndNoneJoinsAnUnstartedOne() {
+        userServiceClient.close();
+
+        assertThrows(RejectedExecutionException.class, () -> userServiceClient.fetchUserAsync(7));
+        assertThrows(RejectedExecutionException.class, () -> userServiceClient.fetchUserAsync(7));
+        assertEquals(0, meterRegistry.get("user.service.coalesced").counter().count());
+    }
+
+    @Test
+    public void whenTrialCallThrowsAnError_thenTheCircuitOpensAgainAndRecovers() {
+        AtomicLong nanoTime = new AtomicLong();
+        circuitBreaker = new CircuitBreaker("user-service", 50, 4, 4, Duration.ofMinutes(1), 1, nanoTime::get);
+        userServiceClient.setCircuitBreaker(circuitBreaker);
+        userService.expect(times(4), requestTo(BASE_URL + "/4"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        userService.expect(once(), requestTo(BASE_URL + "/4"))
+                .andRespond(request -> {
+                    throw new StackOverflowError("deeply nested response");
+                });
+        userService.expect(once(), requestTo(BASE_URL + "/4"))
+                .andRespond(withSuccess("{\"userId\":4,\"name\":\"user-4\"}", MediaType.APPLICATION_JSON));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(UserNotFoundException.class, () -> userServiceClient.fetchUser(4));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertThrows(StackOverflowError.class, () -> userServiceClient.fetchUser(4));
+        // the failed trial call opens the breaker again instead of keeping its only half-open permit
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals("user-4", userServiceClient.fetchUser(4).getName());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        userService.verify();
+    }
+}
@@ -0,0 +1,173 @@
+package com.arpan.demo_batch.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "batch.output.file=file:target/batchJobControllerTest.json",
+        "batch.user-service.base-url=http://localhost:1/users",
+        "batch.user-service.circuit-breaker.enabled=false",
+        "batch.launcher.max-concurrent-jobs=1",
+        "batch.launcher.queue-capacity=1"
+})
+@AutoConfigureMockMvc
+public class BatchJobControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ThreadPoolTaskExecutor jobLaunchExecutor;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenJobIsStarted_thenTheExecutionIdIsReturnedAndProgressCanBePolled() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("transactions.csv"), "userid, transaction_amount\n7, 700\n8, 800\n");
+
+        JsonNode launched = json(mockMvc.perform(get("/importData")
+                        .param("jobName", "retryBatchJob")
+                        .param("inputFile", input.toString()))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString());
+        long executionId = launched.get("executionId").asLong();
+
+        JsonNode progress = awaitEnd(executionId);
+        assertEquals("COMPLETED", progress.get("status").asText());
+        assertEquals(2, progress.get("readCount").asLong());
+        assertEquals(2, progress.get("skipCount").asLong());
+        assertEquals(2, progress.get("estimatedItems").asLong());
+        assertEquals("retryStep", progress.get("steps").get(0).get("stepName").asText());
+    }
+
+    @Test
+    public void whenCsvIsUploaded_thenUploadImportJobProcessesTheBody() throws Exception {
+        JsonNode launched = json(mockMvc.perform(post("/importData/upload")
+                        .contentType("text/csv")
+                        .content("userid, transaction_amount\n7, 700\n8, 800\n9, 900\n"))
+                .andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString());
+        long executionId = launched.get("executionId").asLong();
+        assertEquals("uploadImportJob", launched.get("jobName").asText());
+
+        JsonNode progress = awaitEnd(executionId);
+        assertEquals("COMPLETED", progress.get("status").asText());
+        assertEquals(3, progress.get("readCount").asLong());
+        assertEquals(3, progress.get("skipCount").asLong());
+        assertEquals("uploadImportStep", progress.get("steps").get(0).get("stepName").asText());
+        Files.deleteIfExists(Path.of("output/uploadImport-" + executionId + ".json"));
+
+        mockMvc.perform(post("/jobs/executions/{executionId}/restart", executionId))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void whenTheLauncherIsBusy_thenLaunchesAreQueuedUntilTheQueueIsFull() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("transactions.csv"), "userid, transaction_amount\n7, 700\n");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        // takes the only job thread
+        jobLaunchExecutor.execute(() -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long queuedExecutionId;
+        try {
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+            JsonNode queued = json(mockMvc.perform(get("/importData")
+                            .param("jobName", "retryBatchJob")
+                            .param("inputFile", input.toString()))
+                    .andExpect(status().isAccepted())
+                    .andReturn().getResponse().getContentAsString());
+            queuedExecutionId = queued.get("executionId").asLong();
+            assertEquals("STARTING", queued.get("status").asText());
+
+            // the job is queued, so it is not launched again
+            mockMvc.perform(get("/importData")
+                            .param("jobName", "retryBatchJob")
+                            .param("inputFile", input.toString()))
+                    .andExpect(status().isConflict());
+            // the queue is full
+            JsonNode rejected = json(mockMvc.perform(post("/importData/upload")
+                            .contentType("text/csv")
+                            .content("userid, transaction_amount\n7, 700\n"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andReturn().getResponse().getContentAsString());
+            assertEquals("uploadImportJob", rejected.get("jobName").asText());
+            assertEquals("FAILED", rejected.get("status").asText());
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals("COMPLETED", awaitEnd(queuedExecutionId).get("status").asText());
+    }
+
+    @Test
+    public void whenJobIsUnknown_thenNotFoundIsReturned() throws Exception {
+        mockMvc.perform(get("/importData").param("jobName", "noSuchJob"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/jobs/executions/{executionId}", Long.MAX_VALUE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void whenCompletedExecutionIsStoppedOrRestarted_thenConflictIsReturned() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("transactions.csv"), "userid, transaction_amount\n7, 700\n");
+        long executionId = json(mockMvc.perform(get("/importData")
+                        .param("jobName", "retryBatchJob")
+                        .param("inputFile", input.toString()))
+                .andReturn().getResponse().getContentAsString()).get("executionId").asLong();
+        awaitEnd(executionId);
+
+        mockMvc.perform(post("/jobs/executions/{executionId}/stop", executionId))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/jobs/executions/{executionId}/restart", executionId))
+                .andExpect(status().isConflict());
+    }
+
+    private JsonNode awaitEnd(long executionId) throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            JsonNode progress = json(mockMvc.perform(get("/jobs/executions/{executionId}", executionId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+            String status = progress.get("status").asText();
+            if (!status.equals("STARTING") && !status.equals("STARTED")) {
+                return progress;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Job did not end in time: " + progress);
+            Thread.sleep(50);
+        }
+    }
+
+    private JsonNode json(String content) throws Exception {
+        return objectMapper.readTree(content);
+    }
+}
@@ -0,0 +1,113 @@
+package com.arpan.demo_batch.listener;
+
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.model.Transaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.retry.context.RetryContextSupport;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchMetricsListenerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final BatchMetricsListener listener = new BatchMetricsListener(meterRegistry, nanoTime::get);
+
+    private StepExecution stepExecution;
+
+    @BeforeEach
+    public void setup() {
+        stepExecution = new JobExecution(1L).createStepExecution("retryStep");
+        StepSynchronizationManager.register(stepExecution);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        StepSynchronizationManager.close();
+    }
+
+    @Test
+    public void whenItemIsRetried_thenRetriesAreCountedByException() {
+        RetryContextSupport retryContext = new RetryContextSupport(null);
+        // first attempt
+        listener.open(retryContext, null);
+        retryContext.registerThrowable(new UserNotFoundException("lookup failed"));
+        listener.open(retryContext, null);
+        retryContext.registerThrowable(new UserNotFoundException("lookup failed"));
+        listener.open(retryContext, null);
+
+        assertEquals(2, meterRegistry.get("batch.retries")
+                .tag("step", "retryStep")
+                .tag("exception", "UserNotFoundException")
+                .counter().count());
+    }
+
+    @Test
+    public void whenItemsAreSkipped_thenSkipsAreCountedByPhase() {
+        listener.onSkipInProcess(new Transaction(1, 10), new UserNotFoundException("missing"));
+        listener.onSkipInProcess(new Transaction(2, 10), new UserNotFoundException("missing"));
+        listener.onSkipInRead(new IllegalArgumentException("bad line"));
+
+        assertEquals(2, meterRegistry.get("batch.skips").tag("phase", "process").counter().count());
+        assertEquals(1, meterRegistry.get("batch.skips")
+                .tag("phase", "read")
+                .tag("exception", "IllegalArgumentException")
+                .counter().count());
+    }
+
+    @Test
+    public void whenChunkIsRolledBack_thenTheRollbackIsCounted() {
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+        chunkContext.setAttribute(ChunkListener.ROLLBACK_EXCEPTION_KEY, new UserNotFoundException("lookup failed"));
+
+        listener.afterChunkError(chunkContext);
+
+        assertEquals(1, meterRegistry.get("batch.rollbacks")
+                .tag("step", "retryStep")
+                .tag("exception", "UserNotFoundException")
+                .counter().count());
+    }
+
+    @Test
+    public void whenChunksAreWritten_thenTheRateIsItemsPerSecondOfTheLastInterval() {
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+        listener.beforeStep(stepExecution);
+
+        stepExecution.setWriteCount(50);
+        nanoTime.addAndGet(Duration.ofMillis(500).toNanos());
+        listener.afterChunk(chunkContext);
+        // less than a second measured: no rate yet
+        assertEquals(0, rate());
+
+        stepExecution.setWriteCount(100);
+        nanoTime.addAndGet(Duration.ofMillis(500).toNanos());
+        listener.afterChunk(chunkContext);
+        assertEquals(100, rate());
+
+        stepExecution.setWriteCount(400);
+        nanoTime.addAndGet(Duration.ofSeconds(2).toNanos());
+        listener.afterChunk(chunkContext);
+        assertEquals(150, rate());
+
+        listener.afterStep(stepExecution);
+        assertEquals(0, rate());
+    }
+
+    private double rate() {
+        return meterRegistry.get("batch.step.items.rate").tag("step", "retryStep").gauge().value();
+    }
+}
@@ -0,0 +1,39 @@
+package com.arpan.demo_batch.listener;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InputSizeEstimatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenFileFitsInTheSample_thenRecordsAreCountedExactly() throws Exception {
+        Path csv = Files.writeString(tempDir.resolve("input.csv"), "userid, transaction_amount\n1, 100\n2, 200\n3, 300");
+
+        InputSizeEstimator estimator = new InputSizeEstimator(location -> new FileSystemResource(csv), 1);
+
+        assertEquals(3, estimator.estimateItems(new FileSystemResource(csv)));
+    }
+
+    @Test
+    public void whenFileIsLargerThanTheSample_thenRecordsAreEstimatedFromTheAverageLineLength() throws Exception {
+        StringBuilder content = new StringBuilder("userid, transaction_amount\n");
+        for (int i = 0; i < 10_000; i++) {
+            content.append(1000 + i % 9000).append(", ").append(100 + i % 900).append('\n');
+        }
+        Path csv = Files.writeString(tempDir.resolve("input.csv"), content);
+
+        InputSizeEstimator estimator = new InputSizeEstimator(location -> new FileSystemResource(csv), 1, 1024);
+
+        long estimate = estimator.estimateItems(new FileSystemResource(csv));
+        assertEquals(10_000, estimate, 10_000 * 0.05);
+    }
+}
@@ -0,0 +1,233 @@
+package com.arpan.demo_batch.loadtest;
+
+import com.arpan.demo_batch.DemoBatchApplication;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.controller.JobProgress;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Load test of {@code retryBatchJob} against a {@link StubUserService}, to compare builds on the same machine.
+ * <p>
+ * Generates a {@code recordRetry.csv}-shaped input (always the same for the same options), starts the application
+ * with the stub as user service, runs the job {@code loadtest.runs} times and writes {@code report-<time>.json} to
+ * {@code loadtest.dir}: the throughput of every run and their median, the counts of the job, and count, mean, max and
+ * p50/p95/p99 of the user service requests and the Spring Batch item and chunk timers over all runs.
+ * <p>
+ * Options, all {@code --name=value}:
+ * <ul>
+ *     <li>{@code loadtest.rows} (1000000), {@code loadtest.users} (100000 distinct user ids),
+ *     {@code loadtest.runs} (1), {@code loadtest.dir} ({@code target/loadtest})</li>
+ *     <li>{@code loadtest.stub.latency}, {@code loadtest.stub.jitter}, {@code loadtest.stub.error-rate},
+ *     {@code loadtest.stub.missing-rate}: see {@link StubUserService.Behavior}</li>
+ *     <li>{@code loadtest.baseline}: an earlier report; the runner exits with 1 when the median throughput is more
+ *     than {@code loadtest.max-regression} (0.1) below the baseline's</li>
+ * </ul>
+ * Any other argument is passed to the application, e.g. {@code --batch.enrichment.mode=BULK}.
+ */
+@Slf4j
+public class LoadTestRunner {
+
+    private static final List<String> TIMERS =
+            List.of("user.service.requests", "spring.batch.item.process", "spring.batch.chunk.write");
+
+    private static final String PERCENTILES = "0.5,0.95,0.99";
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int rows = Integer.parseInt(option(options, "loadtest.rows", "1000000"));
+        int users = Integer.parseInt(option(options, "loadtest.users", "100000"));
+        int runs = Integer.parseInt(option(options, "loadtest.runs", "1"));
+        Path dir = Path.of(option(options, "loadtest.dir", "target/loadtest"));
+        Files.createDirectories(dir);
+        Path input = dir.resolve("recordRetry-" + rows + "-" + users + ".csv");
+        generateInput(input, rows, users);
+
+        List<String> applicationArgs = Arrays.stream(args).filter(arg -> !arg.startsWith("--loadtest.")).toList();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("time", LocalDateTime.now());
+        report.put("rows", rows);
+        report.put("users", users);
+        report.put("arguments", applicationArgs);
+
+        try (StubUserService userService = new StubUserService(0, StubUserService.behavior(options, "loadtest.stub."))) {
+            report.put("stub", userService.behavior());
+            List<String> arguments = new ArrayList<>(applicationArgs);
+            defaultArgument(options, arguments, "batch.user-service.base-url", userService.baseUrl());
+            defaultArgument(options, arguments, "batch.output.file", dir.resolve("retryOutput.json").toUri().toString());
+            defaultArgument(options, arguments, "logging.level.root", "WARN");
+            defaultArgument(options, arguments, "logging.level." + LoadTestRunner.class.getPackageName(), "INFO");
+            for (String timer : TIMERS) {
+                // percentiles over all runs instead of the last two minutes
+                defaultArgument(options, arguments, "management.metrics.distribution.percentiles." + timer, PERCENTILES);
+                defaultArgument(options, arguments, "management.metrics.distribution.expiry." + timer, "1d");
+                defaultArgument(options, arguments, "management.metrics.distribution.buffer-length." + timer, "1");
+            }
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoBatchApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run(arguments.toArray(String[]::new))) {
+                JobLauncher jobLauncher = context.getBean("jobLauncher", JobLauncher.class);
+                Job retryBatchJob = context.getBean("retryBatchJob", Job.class);
+                List<Map<String, Object>> runResults = new ArrayList<>();
+                for (int run = 0; run < runs; run++) {
+                    runResults.add(runJob(jobLauncher, retryBatchJob, input));
+                }
+                report.put("itemsPerSecond", median(runResults.stream()
+                        .mapToDouble(result -> (double) result.get("itemsPerSecond"))
+                        .toArray()));
+                report.put("runs", runResults);
+                report.put("timers", timers(context.getBean(MeterRegistry.class)));
+            }
+            report.put("stubRequests", userService.requestCount());
+            report.put("stubErrors", userService.errorCount());
+            report.put("stubMissingUsers", userService.missingUserCount());
+            report.put("stubMaxConcurrentRequests", userService.maxConcurrentRequests());
+        }
+
+        int exitCode = 0;
+        if (options.containsProperty("loadtest.baseline")) {
+            exitCode = compareWithBaseline(report, Path.of(options.getProperty("loadtest.baseline")),
+                    Double.parseDouble(option(options, "loadtest.max-regression", "0.1")));
+        }
+        Path reportFile = dir.resolve("report-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        objectMapper().writeValue(reportFile.toFile(), report);
+        log.info("Load test report {}: {} items/s (median of {} runs)", reportFile, report.get("itemsPerSecond"), runs);
+        return exitCode;
+    }
+
+    private static Map<String, Object> runJob(JobLauncher jobLauncher, Job job, Path input) throws Exception {
+        long start = System.nanoTime();
+        JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // the lines consumed per second by the steps, as reported by the progress endpoint
+        JobProgress progress = JobProgress.of(jobExecution, LocalDateTime.now());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", progress.status());
+        result.put("seconds", seconds);
+        result.put("itemsPerSecond", progress.itemsPerSecond());
+        result.put("readCount", progress.readCount());
+        result.put("writeCount", progress.writeCount());
+        result.put("skipCount", progress.skipCount());
+        log.info("Run of {}: {} in {} s, {} items/s", job.getName(), progress.status(),
+                String.format("%.1f", seconds), String.format("%.0f", progress.itemsPerSecond()));
+        return result;
+    }
+
+    private static Map<String, Object> timers(MeterRegistry meterRegistry) {
+        Map<String, Object> timers = new LinkedHashMap<>();
+        for (String name : TIMERS) {
+            for (Timer timer : meterRegistry.find(name).timers()) {
+                HistogramSnapshot snapshot = timer.takeSnapshot();
+                if (snapshot.count() == 0) {
+                    continue;
+                }
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("count", snapshot.count());
+                values.put("meanMillis", snapshot.mean(TimeUnit.MILLISECONDS));
+                values.put("maxMillis", snapshot.max(TimeUnit.MILLISECONDS));
+                for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                    values.put("p" + Math.round(percentile.percentile() * 100) + "Millis",
+                            percentile.value(TimeUnit.MILLISECONDS));
+                }
+                timers.put(name + timer.getId().getTags().stream()
+                        .map(tag -> tag.getKey() + "=" + tag.getValue())
+                        .collect(Collectors.joining(",", "{", "}")), values);
+            }
+        }
+        return timers;
+    }
+
+    private static int compareWithBaseline(Map<String, Object> report, Path baselineFile, double maxRegression)
+            throws IOException {
+        JsonNode baseline = objectMapper().readTree(baselineFile.toFile());
+        double baselineItemsPerSecond = baseline.path("itemsPerSecond").asDouble();
+        double itemsPerSecond = (double) report.get("itemsPerSecond");
+        double change = itemsPerSecond / baselineItemsPerSecond - 1;
+        report.put("baseline", Map.of("file", baselineFile.toString(),
+                "itemsPerSecond", baselineItemsPerSecond,
+                "change", change));
+        if (change < -maxRegression) {
+            log.error("Throughput regression: {} items/s against {} items/s in {} ({}%)", String.format("%.0f", itemsPerSecond),
+                    String.format("%.0f", baselineItemsPerSecond), baselineFile, String.format("%.1f", change * 100));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes {@code rows} transactions of random users in {@code [1, users]}, from a fixed seed.
+     */
+    static void generateInput(Path input, int rows, int users) throws IOException {
+        Random random = new Random(rows * 31L + users);
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("userid, transaction_amount\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write((random.nextInt(users) + 1) + ", " + (random.nextInt(10_000) + 1) + "\n");
+            }
+        }
+    }
+
+    private static void defaultArgument(SimpleCommandLinePropertySource options, List<String> arguments,
+                                        String name, String value) {
+        if (!options.containsProperty(name)) {
+            arguments.add("--" + name + "=" + value);
+        }
+    }
+
+    private static String option(SimpleCommandLinePropertySource options, String name, String defaultValue) {
+        return options.containsProperty(name) ? options.getProperty(name) : defaultValue;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+                .enable(SerializationFeature.INDENT_OUTPUT);
+    }
+}
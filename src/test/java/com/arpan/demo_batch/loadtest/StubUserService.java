@@ -0,0 +1,222 @@
+package com.arpan.demo_batch.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process user service answering the two requests of {@code UserServiceClient} on the loopback interface:
+ * {@code GET /users/{id}} and {@code GET /users?ids=1,2,3}, with the users {@code user-<id>} /
+ * {@code user<id>@demo.com}. How it answers is set with a {@link Behavior}:
+ * <ul>
+ *     <li>every request waits {@code latency} plus a uniformly distributed part of {@code jitter}</li>
+ *     <li>a share {@code errorRate} of the requests is answered with {@code 503}</li>
+ *     <li>the ids in {@code missingIds} and a share {@code missingRate} of all ids do not exist: {@code 404} for
+ *     the single lookup, left out of the bulk answer. Which ids are missing only depends on the id, so a retried
+ *     lookup of a missing user fails again</li>
+ * </ul>
+ * Requests are handled on virtual threads, so the latency does not limit the concurrency. {@link #main} runs it on
+ * its own, e.g. on the port of {@code batch.user-service.base-url}:
+ * {@code --port=9191 --latency=20ms --jitter=10ms --error-rate=0.01 --missing-rate=0.001}.
+ */
+public class StubUserService implements AutoCloseable {
+
+    static {
+        // without TCP_NODELAY small responses wait for the client's delayed ACK (about 40ms per request)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    public record Behavior(Duration latency, Duration jitter, double errorRate, double missingRate,
+                           Set<Integer> missingIds) {
+
+        public static Behavior latency(Duration latency) {
+            return new Behavior(latency, Duration.ZERO, 0, 0, Set.of());
+        }
+
+        boolean isMissing(int userId) {
+            // the golden ratio hash spreads consecutive ids evenly over [0, 2^32)
+            return missingIds.contains(userId)
+                    || Integer.toUnsignedLong(userId * 0x9E3779B9) < missingRate * (1L << 32);
+        }
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Behavior behavior;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder missingUsers = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public StubUserService(Duration latency) throws IOException {
+        this(0, Behavior.latency(latency));
+    }
+
+    /**
+     * @param port the port to listen on, 0 for a free one
+     */
+    public StubUserService(int port, Behavior behavior) throws IOException {
+        this.behavior = behavior;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/users", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * The {@code batch.user-service.base-url} of this service.
+     */
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/users";
+    }
+
+    public Behavior behavior() {
+        return behavior;
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Requests answered with {@code 503}.
+     */
+    public long errorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Users answered as missing, by {@code 404} or left out of a bulk answer.
+     */
+    public long missingUserCount() {
+        return missingUsers.sum();
+    }
+
+    /**
+     * The most requests that were handled at the same time.
+     */
+    public int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            requests.increment();
+            sleep(behavior.latency().plusNanos(behavior.jitter().isZero()
+                    ? 0
+                    : ThreadLocalRandom.current().nextLong(behavior.jitter().toNanos())));
+            if (behavior.errorRate() > 0 && ThreadLocalRandom.current().nextDouble() < behavior.errorRate()) {
+                errors.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            String body;
+            if (query != null && query.startsWith("ids=")) {
+                StringBuilder users = new StringBuilder("[");
+                for (String id : query.substring(4).split(",")) {
+                    int userId = Integer.parseInt(id);
+                    if (behavior.isMissing(userId)) {
+                        missingUsers.increment();
+                        continue;
+                    }
+                    if (users.length() > 1) {
+                        users.append(',');
+                    }
+                    users.append(userJson(userId));
+                }
+                body = users.append(']').toString();
+            } else if (path.startsWith("/users/")) {
+                int userId = Integer.parseInt(path.substring("/users/".length()));
+                if (behavior.isMissing(userId)) {
+                    missingUsers.increment();
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                body = userJson(userId);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static String userJson(int userId) {
+        return "{\"userId\":" + userId + ",\"name\":\"user-" + userId + "\",\"email\":\"user" + userId + "@demo.com\"}";
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    static Behavior behavior(SimpleCommandLinePropertySource options, String prefix) {
+        return new Behavior(
+                duration(options.getProperty(prefix + "latency"), Duration.ZERO),
+                duration(options.getProperty(prefix + "jitter"), Duration.ZERO),
+                number(options.getProperty(prefix + "error-rate")),
+                number(options.getProperty(prefix + "missing-rate")),
+                Set.of());
+    }
+
+    private static Duration duration(String value, Duration defaultValue) {
+        return value != null ? DurationStyle.detectAndParse(value) : defaultValue;
+    }
+
+    private static double number(String value) {
+        return value != null ? Double.parseDouble(value) : 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int port = Integer.parseInt(options.containsProperty("port") ? options.getProperty("port") : "9191");
+        StubUserService userService = new StubUserService(port, behavior(options, ""));
+        Runtime.getRuntime().addShutdownHook(new Thread(userService::close));
+        System.out.println("Stub user service on " + userService.baseUrl() + " with " + userService.behavior());
+        Thread.currentThread().join();
+    }
+}
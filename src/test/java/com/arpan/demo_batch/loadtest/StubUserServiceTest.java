@@ -0,0 +1,70 @@
+package com.arpan.demo_batch.loadtest;
+
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.exception.UserMissingException;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StubUserServiceTest {
+
+    @Test
+    public void whenUserExists_thenItIsReturnedBySingleAndBulkLookup() throws Exception {
+        try (StubUserService userService = new StubUserService(Duration.ZERO);
+             UserServiceClient client = new UserServiceClient(new RestTemplate(), userService.baseUrl())) {
+            assertEquals("user-7", client.fetchUser(7).getName());
+            assertEquals("user8@demo.com", client.fetchUsers(List.of(7, 8)).get(8).getEmail());
+            assertEquals(2, userService.requestCount());
+        }
+    }
+
+    @Test
+    public void whenUserIsMissing_thenSingleLookupFailsAndBulkLookupLeavesItOut() throws Exception {
+        StubUserService.Behavior behavior = new StubUserService.Behavior(Duration.ZERO, Duration.ZERO, 0, 0, Set.of(5));
+        try (StubUserService userService = new StubUserService(0, behavior);
+             UserServiceClient client = new UserServiceClient(new RestTemplate(), userService.baseUrl())) {
+            assertThrows(UserMissingException.class, () -> client.fetchUser(5));
+            assertEquals(Set.of(4), client.fetchUsers(List.of(4, 5)).keySet());
+            assertEquals(2, userService.missingUserCount());
+        }
+    }
+
+    @Test
+    public void whenErrorRateIsOne_thenEveryRequestFailsWithServiceUnavailable() throws Exception {
+        StubUserService.Behavior behavior = new StubUserService.Behavior(Duration.ZERO, Duration.ZERO, 1, 0, Set.of());
+        try (StubUserService userService = new StubUserService(0, behavior);
+             UserServiceClient client = new UserServiceClient(new RestTemplate(), userService.baseUrl())) {
+            UserNotFoundException exception = assertThrows(UserNotFoundException.class, () -> client.fetchUser(3));
+            assertTrue(exception.getMessage().contains("503"), exception.getMessage());
+            assertEquals(1, userService.errorCount());
+        }
+    }
+
+    @Test
+    public void whenMissingRateIsSet_thenAboutThatShareOfIdsIsMissing() {
+        StubUserService.Behavior behavior = new StubUserService.Behavior(Duration.ZERO, Duration.ZERO, 0, 0.1, Set.of());
+
+        long missing = IntStream.rangeClosed(1, 10_000).filter(behavior::isMissing).count();
+
+        assertTrue(missing > 900 && missing < 1100, missing + " ids missing");
+    }
+
+    @Test
+    public void whenLatencyIsSet_thenRequestsTakeAtLeastThatLong() throws Exception {
+        try (StubUserService userService = new StubUserService(Duration.ofMillis(50));
+             UserServiceClient client = new UserServiceClient(new RestTemplate(), userService.baseUrl())) {
+            long start = System.nanoTime();
+            client.fetchUser(1);
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(50)) >= 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.arpan.demo_batch.partition;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.reader.ByteRangeFlatFileItemReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CsvByteRangePartitionerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenFileIsPartitioned_thenEveryLineIsReadExactlyOnce() throws Exception {
+        FileSystemResource csv = writeCsv(1000);
+
+        Map<String, ExecutionContext> partitions = new CsvByteRangePartitioner(csv, 1).partition(7);
+
+        List<Integer> userIds = new ArrayList<>();
+        for (ExecutionContext partition : partitions.values()) {
+            userIds.addAll(readPartition(csv, partition, new ExecutionContext()));
+        }
+        assertEquals(7, partitions.size());
+        assertEquals(1000, userIds.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, userIds.get(i));
+        }
+    }
+
+    @Test
+    public void whenPartitionIsRestarted_thenItContinuesFromTheSavedOffset() throws Exception {
+        FileSystemResource csv = writeCsv(100);
+        ExecutionContext partition = new CsvByteRangePartitioner(csv, 1).partition(1).get("partition0");
+
+        ByteRangeFlatFileItemReader<Transaction> reader = reader(csv, partition);
+        ExecutionContext stepContext = new ExecutionContext();
+        reader.open(stepContext);
+        for (int i = 0; i < 40; i++) {
+            reader.read();
+        }
+        reader.update(stepContext);
+        reader.close();
+
+        List<Integer> remaining = readPartition(csv, partition, stepContext);
+        assertEquals(60, remaining.size());
+        assertEquals(41, remaining.get(0));
+        assertEquals(41, stepContext.getLong("CSV-Partition-Reader." + ByteRangeFlatFileItemReader.LINE_NUMBER_KEY));
+    }
+
+    private List<Integer> readPartition(FileSystemResource csv, ExecutionContext partition, ExecutionContext stepContext)
+            throws Exception {
+        ByteRangeFlatFileItemReader<Transaction> reader = reader(csv, partition);
+        reader.open(stepContext);
+        List<Integer> userIds = new ArrayList<>();
+        Transaction transaction;
+        while ((transaction = reader.read()) != null) {
+            userIds.add(transaction.getUserId());
+        }
+        reader.close();
+        return userIds;
+    }
+
+    private ByteRangeFlatFileItemReader<Transaction> reader(FileSystemResource csv, ExecutionContext partition) {
+        ByteRangeFlatFileItemReader<Transaction> reader = new ByteRangeFlatFileItemReader<>(csv,
+                new SpringBatchRetryConfig().lineMapper(),
+                partition.getLong(CsvByteRangePartitioner.START_OFFSET_KEY),
+                partition.getLong(CsvByteRangePartitioner.END_OFFSET_KEY),
+                partition.getInt(CsvByteRangePartitioner.LINES_TO_SKIP_KEY));
+        reader.setName("CSV-Partition-Reader");
+        return reader;
+    }
+
+    private FileSystemResource writeCsv(int lines) throws Exception {
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n");
+        for (int i = 1; i <= lines; i++) {
+            csv.append(i).append(", ").append(i * 100).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path file = tempDir.resolve("transactions.csv");
+        Files.writeString(file, csv);
+        return new FileSystemResource(file);
+    }
+}
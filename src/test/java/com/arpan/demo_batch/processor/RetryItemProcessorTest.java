@@ -0,0 +1,265 @@
+package com.arpan.demo_batch.processor;
+
+import com.arpan.demo_batch.cache.UserCache;
+import com.arpan.demo_batch.cache.UserSnapshotLoader;
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.model.Transaction;
+import com.arpan.demo_batch.retry.ExponentialBackoffRetrier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class RetryItemProcessorTest {
+    private static final String BASE_URL = "http://localhost:9191/users";
+
+    private MockRestServiceServer userService;
+
+    private RetryItemProcessor processor;
+
+    @BeforeEach
+    public void setup() {
+        RestTemplate restTemplate = new RestTemplate();
+        userService = MockRestServiceServer.bindTo(restTemplate).build();
+
+        processor = new RetryItemProcessor(false, EnrichmentMode.BULK);
+        ReflectionTestUtils.setField(processor, "userServiceClient", new UserServiceClient(restTemplate, BASE_URL));
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    public void whenChunkIsRead_thenUsersAreFetchedWithOneBulkRequest() {
+        userService.expect(once(), requestTo(BASE_URL + "?ids=1,3"))
+                .andRespond(withSuccess(usersJson(1, 3), MediaType.APPLICATION_JSON));
+
+        List<Transaction> chunk = readChunk(1, 3, 1);
+        for (Transaction transaction : chunk) {
+            processor.process(transaction);
+        }
+
+        userService.verify();
+        assertEquals("user-1", chunk.get(0).getUsername());
+        assertEquals("user3@demo.com", chunk.get(1).getEmail());
+        assertEquals("user-1", chunk.get(2).getUsername());
+    }
+
+    @Test
+    public void whenBulkEndpointIsMissing_thenUsersAreFetchedOneByOne() {
+        userService.expect(once(), requestTo(BASE_URL + "?ids=1,3"))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        userService.expect(once(), requestTo(BASE_URL + "/1"))
+                .andRespond(withSuccess(userJson(1), MediaType.APPLICATION_JSON));
+        userService.expect(once(), requestTo(BASE_URL + "/3"))
+                .andRespond(withSuccess(userJson(3), MediaType.APPLICATION_JSON));
+
+        for (Transaction transaction : readChunk(1, 3)) {
+            processor.process(transaction);
+        }
+
+        userService.verify();
+    }
+
+    @Test
+    public void whenIdIsMissingFromBulkResponse_thenOnlyThatItemFails() {
+        userService.expect(once(), requestTo(BASE_URL + "?ids=1,4"))
+                .andRespond(withSuccess(usersJson(1), MediaType.APPLICATION_JSON));
+        userService.expect(once(), requestTo(BASE_URL + "/4"))
+                .andRespond(withSuccess(userJson(4), MediaType.APPLICATION_JSON));
+
+        List<Transaction> chunk = readChunk(1, 4);
+        processor.process(chunk.get(0));
+        assertThrows(UserNotFoundException.class, () -> processor.process(chunk.get(1)));
+
+        // a retry of the failed item uses the per-id lookup
+        assertEquals("user-4", processor.process(chunk.get(1)).getUsername());
+        userService.verify();
+    }
+
+    @Test
+    public void whenConcurrentMode_thenChunkUsersAreFetchedInParallelUpToTheConcurrencyAndOrderIsKept() {
+        RestTemplate restTemplate = new RestTemplate();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch concurrencyReached = new CountDownLatch(1);
+        // holds the requests until 4 are in flight at once, which never happens if they are sent one after the other
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            int requests = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(requests, Math::max);
+            try {
+                if (requests == 4) {
+                    concurrencyReached.countDown();
+                }
+                concurrencyReached.await(5, TimeUnit.SECONDS);
+                // gives lookups beyond the limit the time to show up
+                Thread.sleep(20);
+                return execution.execute(request, body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        MockRestServiceServer concurrentUserService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        processor = new RetryItemProcessor(false, EnrichmentMode.CONCURRENT);
+        ReflectionTestUtils.setField(processor, "userServiceClient", new UserServiceClient(restTemplate, BASE_URL, 4));
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+        for (int userId = 10; userId < 20; userId++) {
+            concurrentUserService.expect(once(), requestTo(BASE_URL + "/" + userId))
+                    .andRespond(withSuccess(userJson(userId), MediaType.APPLICATION_JSON));
+        }
+
+        List<Transaction> chunk = readChunk(10, 11, 12, 13, 14, 15, 16, 17, 18, 19);
+        List<Transaction> processed = new ArrayList<>();
+        for (Transaction transaction : chunk) {
+            processed.add(processor.process(transaction));
+        }
+
+        concurrentUserService.verify();
+        assertEquals(0, concurrencyReached.getCount());
+        assertEquals(4, maxInFlight.get());
+        for (int i = 0; i < processed.size(); i++) {
+            assertEquals("user-" + (10 + i), processed.get(i).getUsername());
+        }
+    }
+
+    @Test
+    public void whenItemRetryIsOn_thenOnlyTheFailingLookupIsRetried() {
+        RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer retryingUserService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        processor = new RetryItemProcessor(false, EnrichmentMode.ITEM);
+        processor.setItemRetrier(new ExponentialBackoffRetrier(3, Duration.ofMillis(10), Duration.ofMillis(20), 2.0));
+        ReflectionTestUtils.setField(processor, "userServiceClient", new UserServiceClient(restTemplate, BASE_URL, 4));
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+        retryingUserService.expect(once(), requestTo(BASE_URL + "/1"))
+                .andRespond(withSuccess(userJson(1), MediaType.APPLICATION_JSON));
+        retryingUserService.expect(times(2), requestTo(BASE_URL + "/3"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        retryingUserService.expect(once(), requestTo(BASE_URL + "/3"))
+                .andRespond(withSuccess(userJson(3), MediaType.APPLICATION_JSON));
+        retryingUserService.expect(times(3), requestTo(BASE_URL + "/4"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+        StepExecution stepExecution = new StepExecution("retryStep", null);
+        processor.beforeStep(stepExecution);
+        List<Transaction> chunk = readChunk(1, 3, 4);
+        assertEquals("user-1", processor.process(chunk.get(0)).getUsername());
+        assertEquals("user-3", processor.process(chunk.get(1)).getUsername());
+        assertThrows(UserNotFoundException.class, () -> processor.process(chunk.get(2)));
+        processor.afterStep(stepExecution);
+
+        retryingUserService.verify();
+        assertEquals(4, stepExecution.getExecutionContext().getLong("itemRetry.retryCount"));
+        assertEquals(1, stepExecution.getExecutionContext().getLong("itemRetry.exhaustedCount"));
+    }
+
+    @Test
+    public void whenUsersArePrefetched_thenProcessUsesThemAndLooksUpFailedPrefetchesAgain() {
+        RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer prefetchingUserService = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+        processor = new RetryItemProcessor(false, EnrichmentMode.CONCURRENT);
+        ReflectionTestUtils.setField(processor, "userServiceClient", new UserServiceClient(restTemplate, BASE_URL, 4));
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+        prefetchingUserService.expect(once(), requestTo(BASE_URL + "/1"))
+                .andRespond(withSuccess(userJson(1), MediaType.APPLICATION_JSON));
+        prefetchingUserService.expect(once(), requestTo(BASE_URL + "/4"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        prefetchingUserService.expect(once(), requestTo(BASE_URL + "/4"))
+                .andRespond(withSuccess(userJson(4), MediaType.APPLICATION_JSON));
+
+        processor.beforeStep(new StepExecution("pipelinedRetryStep", null));
+        processor.prefetch(new Transaction(1, 100));
+        processor.prefetch(new Transaction(4, 400));
+        // prefetched ids are not part of the concurrent lookup of the chunk
+        List<Transaction> chunk = readChunk(1, 4);
+
+        assertEquals("user-1", processor.process(chunk.get(0)).getUsername());
+        assertEquals("user-4", processor.process(chunk.get(1)).getUsername());
+        prefetchingUserService.verify();
+    }
+
+    @Test
+    public void whenPrefetchCannotBeStarted_thenItsPermitIsReleased() {
+        UserServiceClient closedClient = new UserServiceClient(new RestTemplate(), BASE_URL, 4);
+        closedClient.close();
+        processor = new RetryItemProcessor(false, EnrichmentMode.CONCURRENT);
+        ReflectionTestUtils.setField(processor, "userServiceClient", closedClient);
+        ReflectionTestUtils.setField(processor, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+        processor.setPrefetchParallelism(1);
+
+        // with the permit of the first prefetch lost, the second one would wait forever
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            processor.prefetch(new Transaction(1, 100));
+            processor.prefetch(new Transaction(2, 200));
+        });
+    }
+
+    @Test
+    public void whenUserSnapshotIsSet_thenOnlyUsersMissingFromItAreRequested(@TempDir Path tempDir) throws Exception {
+        Path snapshot = tempDir.resolve("users.csv");
+        Files.writeString(snapshot, "userId,name,email\n1,snapshot-1,one@demo.com\n3,snapshot-3,three@demo.com\n");
+        processor.setUserSnapshot(new UserSnapshotLoader(), snapshot);
+        userService.expect(once(), requestTo(BASE_URL + "?ids=4"))
+                .andRespond(withSuccess(usersJson(4), MediaType.APPLICATION_JSON));
+
+        StepExecution stepExecution = new StepExecution("retryStep", null);
+        processor.beforeStep(stepExecution);
+        List<Transaction> chunk = readChunk(1, 4, 3);
+        for (Transaction transaction : chunk) {
+            processor.process(transaction);
+        }
+        processor.afterStep(stepExecution);
+
+        userService.verify();
+        assertEquals(List.of("snapshot-1", "user-4", "snapshot-3"), chunk.stream().map(Transaction::getUsername).toList());
+        assertEquals(2, stepExecution.getExecutionContext().getLong("userSnapshot.hitCount"));
+        assertEquals(1, stepExecution.getExecutionContext().getLong("userSnapshot.missCount"));
+    }
+
+    private List<Transaction> readChunk(int... userIds) {
+        List<Transaction> chunk = new ArrayList<>();
+        for (int userId : userIds) {
+            Transaction transaction = new Transaction(userId, userId * 100);
+            processor.afterRead(transaction);
+            chunk.add(transaction);
+        }
+        return chunk;
+    }
+
+    private static String usersJson(int... userIds) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < userIds.length; i++) {
+            json.append(i == 0 ? "" : ",").append(userJson(userIds[i]));
+        }
+        return json.append("]").toString();
+    }
+
+    private static String userJson(int userId) {
+        return "{\"userId\":" + userId + ",\"name\":\"user-" + userId + "\",\"email\":\"user" + userId + "@demo.com\"}";
+    }
+}
@@ -0,0 +1,181 @@
+package com.arpan.demo_batch.reader;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MappedTransactionItemReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenReadingMixedFormats_thenResultMatchesTheFlatFileReader() throws Exception {
+        FileSystemResource csv = write("userid, transaction_amount\n"
+                + "1, 100\n"
+                + "2,200.5\r\n"
+                + "  3 ,  -0.25  \n"
+                + "4, 1e3\n"
+                + "5, 123456789.123456789, extra\n"
+                + "8, 800,\n"
+                + "6, 0.1\n"
+                + "7, 600");
+
+        List<Transaction> expected = readAll(flatFileReader(csv), new ExecutionContext());
+
+        List<Transaction> actual = readAll(new MappedTransactionItemReader(csv, 1), new ExecutionContext());
+
+        assertEquals(8, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void whenBlankLinesArePresent_thenTheyAreSkipped() throws Exception {
+        FileSystemResource csv = write("userid, transaction_amount\n\n1, 100\n   \r\n2, 200\n\n");
+
+        List<Transaction> transactions = readAll(new MappedTransactionItemReader(csv, 1), new ExecutionContext());
+
+        assertEquals(List.of(new Transaction(1, 100), new Transaction(2, 200)), transactions);
+    }
+
+    @Test
+    public void whenLinesCrossMappingWindows_thenEveryLineIsRead() throws Exception {
+        FileSystemResource csv = writeCsv(5000);
+        MappedTransactionItemReader reader = new MappedTransactionItemReader(csv, 1);
+        reader.setWindowSize(1000);
+
+        List<Transaction> transactions = readAll(reader, new ExecutionContext());
+
+        assertEquals(5000, transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            assertEquals(i + 1, transactions.get(i).getUserId());
+            assertEquals((i + 1) * 100 + 0.5, transactions.get(i).getAmount());
+        }
+    }
+
+    @Test
+    public void whenRestarted_thenReadingContinuesAtTheSavedOffset() throws Exception {
+        FileSystemResource csv = writeCsv(100);
+        MappedTransactionItemReader reader = new MappedTransactionItemReader(csv, 1);
+        reader.setName("reader");
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        for (int i = 0; i < 30; i++) {
+            reader.read();
+        }
+        reader.update(executionContext);
+        reader.close();
+
+        MappedTransactionItemReader restarted = new MappedTransactionItemReader(csv, 1);
+        restarted.setName("reader");
+        List<Transaction> remaining = readAll(restarted, executionContext);
+
+        assertEquals(70, remaining.size());
+        assertEquals(31, remaining.get(0).getUserId());
+    }
+
+    @Test
+    public void whenInputIsShorterThanTheSavedOffset_thenTheRestartFails() throws Exception {
+        FileSystemResource csv = writeCsv(100);
+        MappedTransactionItemReader reader = new MappedTransactionItemReader(csv, 1);
+        reader.setName("reader");
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        for (int i = 0; i < 30; i++) {
+            reader.read();
+        }
+        reader.update(executionContext);
+        reader.close();
+        writeCsv(10);
+
+        MappedTransactionItemReader restarted = new MappedTransactionItemReader(csv, 1);
+        restarted.setName("reader");
+
+        assertThrows(ItemStreamException.class, () -> restarted.open(executionContext));
+        restarted.close();
+    }
+
+    @Test
+    public void whenUserIdIsInvalid_thenParseExceptionIsThrown() throws Exception {
+        FileSystemResource csv = write("userid, transaction_amount\nabc, 100\n");
+        MappedTransactionItemReader reader = new MappedTransactionItemReader(csv, 1);
+        reader.setName("reader");
+        reader.open(new ExecutionContext());
+
+        FlatFileParseException exception = assertThrows(FlatFileParseException.class, reader::read);
+        assertEquals("abc, 100", exception.getInput());
+        assertEquals(2, exception.getLineNumber());
+    }
+
+    @Test
+    public void whenAmountIsEmptyOrHasNoDigit_thenBothReadersThrowParseException() throws Exception {
+        for (String line : List.of("1,", "1, ", "1", "1, -", "1, +", "1, .", "1, -.")) {
+            FileSystemResource csv = write("userid, transaction_amount\n" + line + "\n");
+
+            FlatFileItemReader<Transaction> flatFileReader = flatFileReader(csv);
+            flatFileReader.open(new ExecutionContext());
+            assertThrows(FlatFileParseException.class, flatFileReader::read, line);
+            flatFileReader.close();
+
+            MappedTransactionItemReader reader = new MappedTransactionItemReader(csv, 1);
+            reader.setName("reader");
+            reader.open(new ExecutionContext());
+            FlatFileParseException exception = assertThrows(FlatFileParseException.class, reader::read, line);
+            assertEquals(line, exception.getInput());
+            reader.close();
+        }
+    }
+
+    private static FlatFileItemReader<Transaction> flatFileReader(FileSystemResource csv) {
+        FlatFileItemReader<Transaction> flatFileReader = new FlatFileItemReader<>();
+        flatFileReader.setResource(csv);
+        flatFileReader.setLinesToSkip(1);
+        flatFileReader.setLineMapper(new SpringBatchRetryConfig().lineMapper());
+        flatFileReader.setName("flatFileReader");
+        return flatFileReader;
+    }
+
+    private List<Transaction> readAll(ItemStreamReader<Transaction> reader, ExecutionContext executionContext)
+            throws Exception {
+        if (reader instanceof MappedTransactionItemReader mappedReader) {
+            mappedReader.setName("reader");
+        }
+        reader.open(executionContext);
+        List<Transaction> transactions = new ArrayList<>();
+        Transaction transaction;
+        while ((transaction = reader.read()) != null) {
+            transactions.add(transaction);
+        }
+        reader.close();
+        return transactions;
+    }
+
+    private FileSystemResource writeCsv(int lines) throws Exception {
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n");
+        for (int i = 1; i <= lines; i++) {
+            csv.append(i).append(", ").append(i * 100).append(".5\n");
+        }
+        return write(csv.toString());
+    }
+
+    private FileSystemResource write(String content) throws Exception {
+        Path file = tempDir.resolve("transactions.csv");
+        Files.writeString(file, content);
+        return new FileSystemResource(file);
+    }
+}
@@ -0,0 +1,125 @@
+package com.arpan.demo_batch.reader;
+
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.model.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class ReadAheadItemReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenItemsAreRead_thenOnReadSeesEveryItemInInputOrder() throws Exception {
+        List<Integer> readAhead = new CopyOnWriteArrayList<>();
+        ReadAheadItemReader<Transaction> reader = new ReadAheadItemReader<>(csvReader(writeCsv(50)), 4);
+        reader.setOnRead(transaction -> readAhead.add(transaction.getUserId()));
+
+        reader.open(new ExecutionContext());
+        List<Integer> userIds = new ArrayList<>();
+        Transaction transaction;
+        while ((transaction = reader.read()) != null) {
+            userIds.add(transaction.getUserId());
+        }
+        assertNull(reader.read());
+        reader.close();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int userId = 1; userId <= 50; userId++) {
+            expected.add(userId);
+        }
+        assertEquals(expected, userIds);
+        assertEquals(expected, readAhead);
+    }
+
+    @Test
+    public void whenRestarted_thenReadingContinuesAfterTheLastItemTakenNotTheLastItemReadAhead() throws Exception {
+        FileSystemResource csv = writeCsv(100);
+        ExecutionContext executionContext = new ExecutionContext();
+        ReadAheadItemReader<Transaction> reader = new ReadAheadItemReader<>(csvReader(csv), 50);
+        reader.open(executionContext);
+        for (int i = 0; i < 30; i++) {
+            reader.read();
+        }
+        // give the read-ahead thread time to fill the queue
+        Thread.sleep(100);
+        reader.update(executionContext);
+        reader.close();
+
+        assertEquals(31, executionContext.getLong("reader." + ByteRangeFlatFileItemReader.LINE_NUMBER_KEY));
+        ReadAheadItemReader<Transaction> restarted = new ReadAheadItemReader<>(csvReader(csv), 50);
+        restarted.open(executionContext);
+        assertEquals(31, restarted.read().getUserId());
+        restarted.close();
+    }
+
+    @Test
+    public void whenLineCannotBeParsed_thenItFailsAtItsPlaceAndReadingGoesOn() throws Exception {
+        FileSystemResource csv = write("userid, transaction_amount\n1, 100\nabc, 200\n3, 300\n");
+        ReadAheadItemReader<Transaction> reader = new ReadAheadItemReader<>(csvReader(csv), 10);
+
+        reader.open(new ExecutionContext());
+        assertEquals(1, reader.read().getUserId());
+        FlatFileParseException exception = assertThrows(FlatFileParseException.class, reader::read);
+        assertEquals("abc, 200", exception.getInput());
+        assertEquals(3, reader.read().getUserId());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void whenOnReadThrowsAnError_thenReadThrowsItInsteadOfWaitingForever() throws Exception {
+        ReadAheadItemReader<Transaction> reader = new ReadAheadItemReader<>(csvReader(writeCsv(3)), 10);
+        reader.setOnRead(transaction -> {
+            if (transaction.getUserId() == 2) {
+                throw new StackOverflowError();
+            }
+        });
+
+        reader.open(new ExecutionContext());
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertEquals(1, reader.read().getUserId());
+            assertThrows(StackOverflowError.class, reader::read);
+            assertEquals(3, reader.read().getUserId());
+            assertNull(reader.read());
+        });
+        reader.close();
+    }
+
+    private static ByteRangeFlatFileItemReader<Transaction> csvReader(FileSystemResource csv) {
+        ByteRangeFlatFileItemReader<Transaction> reader =
+                new ByteRangeFlatFileItemReader<>(csv, new SpringBatchRetryConfig().lineMapper(), 1);
+        reader.setName("reader");
+        return reader;
+    }
+
+    private FileSystemResource writeCsv(int lines) throws Exception {
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n");
+        for (int i = 1; i <= lines; i++) {
+            csv.append(i).append(", ").append(i * 100).append('\n');
+        }
+        return write(csv.toString());
+    }
+
+    private FileSystemResource write(String content) throws Exception {
+        Path file = tempDir.resolve("transactions.csv");
+        Files.writeString(file, content);
+        return new FileSystemResource(file);
+    }
+}
@@ -0,0 +1,124 @@
+package com.arpan.demo_batch.reader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UploadPipeTest {
+
+    @Test
+    public void whenBodyIsLargerThanTheBuffer_thenTheTransferWaitsForTheReader() throws Exception {
+        UploadPipe pipe = new UploadPipe("upload", 2, 4, Duration.ofSeconds(5));
+        byte[] body = new byte[100];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(body));
+
+        CompletableFuture<Boolean> transfer = CompletableFuture.supplyAsync(() -> transfer(pipe, counting));
+
+        Thread.sleep(300);
+        assertFalse(transfer.isDone());
+        // two blocks queued and one waiting for room
+        assertEquals(12, counting.count);
+        assertArrayEquals(body, pipe.inputStream().readAllBytes());
+        assertTrue(transfer.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void whenReaderClosesEarly_thenTheTransferStops() throws Exception {
+        UploadPipe pipe = new UploadPipe("upload", 1, 4, Duration.ofSeconds(5));
+        CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(new byte[1000]));
+
+        CompletableFuture<Boolean> transfer = CompletableFuture.supplyAsync(() -> transfer(pipe, counting));
+        InputStream inputStream = pipe.inputStream();
+        assertEquals(4, inputStream.readNBytes(4).length);
+        inputStream.close();
+
+        assertFalse(transfer.get(5, TimeUnit.SECONDS));
+        assertTrue(counting.count < 1000);
+    }
+
+    @Test
+    public void whenReaderDoesNotTakeTheUpload_thenTheTransferTimesOutAndTheReaderFails() throws Exception {
+        UploadPipe pipe = new UploadPipe("upload", 1, 4, Duration.ofMillis(200));
+
+        assertThrows(TimeoutException.class, () -> pipe.transferFrom(new ByteArrayInputStream(new byte[12])));
+
+        InputStream inputStream = pipe.inputStream();
+        assertEquals(4, inputStream.readNBytes(4).length);
+        IOException failure = assertThrows(IOException.class, inputStream::read);
+        assertTrue(failure.getMessage().startsWith("The upload stalled after 4 bytes"), failure.getMessage());
+    }
+
+    @Test
+    public void whenBodyBreaksOff_thenTheReaderFailsInsteadOfEnding() throws Exception {
+        UploadPipe pipe = new UploadPipe("upload", 4, 4, Duration.ofSeconds(5));
+        InputStream broken = new InputStream() {
+            private int remaining = 6;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining == 0) {
+                    throw new IOException("Connection reset");
+                }
+                remaining--;
+                return 'x';
+            }
+        };
+
+        assertThrows(IOException.class, () -> pipe.transferFrom(broken));
+
+        InputStream inputStream = pipe.inputStream();
+        assertEquals(6, inputStream.readNBytes(6).length);
+        assertThrows(IOException.class, inputStream::read);
+    }
+
+    private static boolean transfer(UploadPipe pipe, InputStream body) {
+        try {
+            return pipe.transferFrom(body);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+        private final InputStream delegate;
+
+        private volatile int count;
+
+        CountingInputStream(InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = delegate.read();
+            if (read != -1) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = delegate.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
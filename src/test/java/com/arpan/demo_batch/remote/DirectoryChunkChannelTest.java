@@ -0,0 +1,125 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectoryChunkChannelTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void whenWorkersCompeteForChunks_thenEveryChunkIsReceivedOnceAndInOrder() throws Exception {
+        // one channel per JVM, sharing the directory
+        DirectoryChunkChannel manager = channel();
+        DirectoryChunkChannel worker1 = channel();
+        DirectoryChunkChannel worker2 = channel();
+        for (long sequence = 1; sequence <= 12; sequence++) {
+            manager.send(request(sequence));
+        }
+
+        List<Long> received1 = new ArrayList<>();
+        List<Long> received2 = new ArrayList<>();
+        Thread other = Thread.ofPlatform().start(() -> receiveAll(worker2, received2));
+        receiveAll(worker1, received1);
+        other.join();
+
+        Set<Long> received = new HashSet<>(received1);
+        received.addAll(received2);
+        assertEquals(12, received1.size() + received2.size());
+        assertEquals(12, received.size());
+        assertEquals(received1.stream().sorted().toList(), received1);
+        assertEquals(received2.stream().sorted().toList(), received2);
+    }
+
+    @Test
+    public void whenWorkerReplies_thenOnlyTheManagerOfTheStepReceivesIt() throws Exception {
+        DirectoryChunkChannel manager = channel();
+        DirectoryChunkChannel worker = channel();
+        manager.send(request(1));
+        ChunkRequest request = worker.receive(Duration.ofSeconds(1));
+        DeadLetterRecord skipped = new DeadLetterRecord(1, "retryBatchJob", 7, "remoteChunkingRetryStep",
+                DeadLetterRecord.Phase.PROCESS, request.items().get(0), null, "UserMissingException", "missing", 0,
+                Instant.parse("2025-01-01T00:00:00Z"));
+
+        worker.reply(ChunkReply.written(request, "worker-1", 1, 0, 2, List.of(skipped)));
+
+        assertNull(manager.receiveReply(8, Duration.ZERO));
+        ChunkReply reply = manager.receiveReply(7, Duration.ofSeconds(1));
+        assertEquals(1, reply.sequence());
+        assertEquals("worker-1", reply.workerId());
+        assertEquals(1, reply.writeCount());
+        assertEquals(1, reply.skipCount());
+        assertEquals(2, reply.retryCount());
+        assertEquals(skipped, reply.skipped().get(0));
+        assertNull(manager.receiveReply(7, Duration.ofMillis(20)));
+    }
+
+    @Test
+    public void whenStepIsFinished_thenEveryWorkerSeesIt() {
+        DirectoryChunkChannel manager = channel();
+        DirectoryChunkChannel worker = channel();
+
+        assertFalse(worker.isFinished(7));
+        manager.finish(7);
+        manager.finish(7);
+
+        assertTrue(worker.isFinished(7));
+        assertFalse(worker.isFinished(8));
+    }
+
+    @Test
+    public void whenStepExecutionIdIsReused_thenStartDropsWhatTheEarlierOneLeft() throws Exception {
+        DirectoryChunkChannel manager = channel();
+        DirectoryChunkChannel worker = channel();
+        manager.send(request(1));
+        manager.send(request(2));
+        worker.reply(ChunkReply.failed(worker.receive(Duration.ofSeconds(1)), "worker-1", "failed"));
+        manager.finish(7);
+
+        manager.start(7);
+
+        assertFalse(worker.isFinished(7));
+        assertNull(worker.receive(Duration.ZERO));
+        assertNull(manager.receiveReply(7, Duration.ZERO));
+    }
+
+    private DirectoryChunkChannel channel() {
+        return new DirectoryChunkChannel(directory, objectMapper, Duration.ofMillis(5));
+    }
+
+    private static void receiveAll(ChunkChannel channel, List<Long> received) {
+        try {
+            ChunkRequest request;
+            while ((request = channel.receive(Duration.ofMillis(50))) != null) {
+                received.add(request.sequence());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ChunkRequest request(long sequence) {
+        return new ChunkRequest(1, "retryBatchJob", Map.of("userCache.enabled", "true"), 7,
+                "remoteChunkingRetryStep", sequence, List.of(new Transaction((int) sequence, sequence * 100)));
+    }
+}
@@ -0,0 +1,158 @@
+package com.arpan.demo_batch.remote;
+
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.exception.UserMissingException;
+import com.arpan.demo_batch.exception.UserServiceUnavailableException;
+import com.arpan.demo_batch.listener.CustomSkipListener;
+import com.arpan.demo_batch.model.User;
+import com.arpan.demo_batch.writer.DeadLetterSink;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Runs retryBatchJob in remote chunking mode with two workers in this JVM that exchange the chunks with the step
+ * through the directory channel, as worker JVMs would.
+ */
+@SpringBootTest(properties = {
+        "batch.step.mode=REMOTE_CHUNKING",
+        "batch.remote-chunking.channel=DIRECTORY",
+        "batch.remote-chunking.dir=target/remoteChunkingRetryBatchJobTest/channel",
+        "batch.remote-chunking.poll-interval=5ms",
+        "batch.remote-chunking.workers=2",
+        "batch.remote-chunking.max-pending-chunks=2",
+        "batch.remote-chunking.reply-timeout=30s",
+        "batch.dead-letter.dir=target/remoteChunkingRetryBatchJobTest/dead-letter",
+        "batch.chunk.size=5",
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class RemoteChunkingRetryBatchJobTest {
+
+    @MockitoBean
+    private UserServiceClient userServiceClient;
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private DeadLetterSink deadLetterSink;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenJobRuns_thenWorkersWriteTheChunksAndReportTheirCounts() throws Exception {
+        // user 2 always fails in the processor and is skipped after 3 attempts, user 33 does not exist
+        List<Integer> userIds = new ArrayList<>(IntStream.rangeClosed(10, 40).boxed().toList());
+        userIds.add(5, 2);
+        lookUpUsers(-1, 33);
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, jobParameters(userIds));
+
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        assertEquals("remoteChunkingRetryStep", stepExecution.getStepName());
+        assertEquals(32, stepExecution.getReadCount());
+        assertEquals(30, stepExecution.getWriteCount());
+        assertEquals(2, stepExecution.getProcessSkipCount());
+        assertEquals(2, stepExecution.getExecutionContext().getLong(RemoteChunkItemWriter.RETRY_COUNT_KEY));
+        assertEquals(2, stepExecution.getExecutionContext().getLong(CustomSkipListener.DEAD_LETTER_COUNT_KEY));
+        assertEquals(2, Files.readAllLines(deadLetterSink.file(jobExecution.getId())).size());
+        List<Integer> expected = userIds.stream().filter(userId -> userId != 2 && userId != 33).sorted().toList();
+        assertEquals(expected, writtenUserIds(stepExecution));
+    }
+
+    @Test
+    public void whenChunkFailsOnAWorker_thenTheRestartReadsFromTheLastAnsweredChunk() throws Exception {
+        // ids the other test did not put in the user cache
+        List<Integer> userIds = IntStream.rangeClosed(41, 52).boxed().toList();
+        JobParameters jobParameters = jobParameters(userIds);
+        // user 49 is in the second chunk
+        lookUpUsers(49, -1);
+
+        JobExecution failedExecution = jobLauncher.run(retryBatchJob, jobParameters);
+
+        assertEquals(BatchStatus.FAILED, failedExecution.getStatus());
+        StepExecution failedStep = failedExecution.getStepExecutions().iterator().next();
+        List<Integer> firstRun = writtenUserIds(failedStep);
+        assertTrue(firstRun.containsAll(List.of(41, 42, 43, 44, 45)));
+
+        lookUpUsers(-1, -1);
+        JobExecution restartedExecution = jobLauncher.run(retryBatchJob, jobParameters);
+
+        assertEquals(BatchStatus.COMPLETED, restartedExecution.getStatus());
+        StepExecution restartedStep = restartedExecution.getStepExecutions().iterator().next();
+        assertEquals(7, restartedStep.getReadCount());
+        assertEquals(7, restartedStep.getWriteCount());
+        assertEquals(IntStream.rangeClosed(46, 52).boxed().toList(), writtenUserIds(restartedStep));
+    }
+
+    private JobParameters jobParameters(List<Integer> userIds) throws IOException {
+        StringBuilder csv = new StringBuilder("userid, transaction_amount\n");
+        userIds.forEach(userId -> csv.append(userId).append(", ").append(userId * 100).append('\n'));
+        Path input = Files.writeString(tempDir.resolve("input.csv"), csv);
+        return new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters();
+    }
+
+    private void lookUpUsers(int unavailableUserId, int missingUserId) {
+        doAnswer(invocation -> {
+            int userId = invocation.getArgument(0);
+            if (userId == unavailableUserId) {
+                throw new UserServiceUnavailableException("User service down");
+            }
+            if (userId == missingUserId) {
+                throw new UserMissingException("User " + userId + " does not exist");
+            }
+            return new User(userId, "user-" + userId, "user" + userId + "@demo.com");
+        }).when(userServiceClient).fetchUser(anyInt());
+    }
+
+    /**
+     * The user ids in the worker outputs of the step execution, sorted; the outputs are removed.
+     */
+    private static List<Integer> writtenUserIds(StepExecution stepExecution) throws IOException {
+        List<Integer> userIds = new ArrayList<>();
+        try (DirectoryStream<Path> outputs = Files.newDirectoryStream(Path.of("output"),
+                "retryOutput-" + stepExecution.getId() + "-worker-*.json")) {
+            for (Path output : outputs) {
+                for (JsonNode transaction : new ObjectMapper().readTree(output.toFile())) {
+                    userIds.add(transaction.get("userId").asInt());
+                }
+                Files.delete(output);
+            }
+        }
+        userIds.sort(null);
+        return userIds;
+    }
+}
@@ -0,0 +1,98 @@
+package com.arpan.demo_batch.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class WriteBehindJobRepositoryTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private JobRepository delegate;
+
+    private StepExecution stepExecution;
+
+    @BeforeEach
+    public void setup() {
+        delegate = mock(JobRepository.class);
+        stepExecution = new StepExecution("retryStep", new JobExecution(1L), 10L);
+        stepExecution.setStatus(BatchStatus.STARTED);
+    }
+
+    @Test
+    public void whenStepIsRunning_thenChunkUpdatesAreStoredOncePerInterval() {
+        WriteBehindJobRepository repository = newRepository(Duration.ofSeconds(5));
+        repository.update(stepExecution);
+        verify(delegate, times(1)).update(stepExecution);
+
+        for (int chunk = 0; chunk < 10; chunk++) {
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            repository.updateExecutionContext(stepExecution);
+            repository.update(stepExecution);
+        }
+
+        // stored when starting, after 5 and after 10 seconds
+        verify(delegate, times(3)).update(stepExecution);
+        verify(delegate, times(2)).updateExecutionContext(stepExecution);
+    }
+
+    @Test
+    public void whenStepEnds_thenTheLatestStateIsStored() {
+        WriteBehindJobRepository repository = newRepository(Duration.ofSeconds(5));
+        repository.update(stepExecution);
+        repository.updateExecutionContext(stepExecution);
+        repository.update(stepExecution);
+        verify(delegate, never()).updateExecutionContext(stepExecution);
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        stepExecution.setEndTime(LocalDateTime.now());
+        repository.update(stepExecution);
+
+        verify(delegate, times(1)).updateExecutionContext(stepExecution);
+        verify(delegate, times(2)).update(stepExecution);
+    }
+
+    @Test
+    public void whenFlushIntervalIsZero_thenTheStepIsOnlyStoredWhenItStartsAndEnds() {
+        WriteBehindJobRepository repository = newRepository(Duration.ZERO);
+        repository.update(stepExecution);
+        for (int chunk = 0; chunk < 10; chunk++) {
+            nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+            repository.updateExecutionContext(stepExecution);
+            repository.update(stepExecution);
+        }
+        verify(delegate, times(1)).update(stepExecution);
+
+        stepExecution.setStatus(BatchStatus.FAILED);
+        repository.update(stepExecution);
+
+        verify(delegate, times(1)).updateExecutionContext(stepExecution);
+        verify(delegate, times(2)).update(stepExecution);
+    }
+
+    @Test
+    public void whenStepWasNotStartedThroughTheRepository_thenUpdatesArePassedThrough() {
+        WriteBehindJobRepository repository = newRepository(Duration.ofSeconds(5));
+
+        repository.updateExecutionContext(stepExecution);
+
+        verify(delegate, times(1)).updateExecutionContext(stepExecution);
+    }
+
+    private WriteBehindJobRepository newRepository(Duration flushInterval) {
+        return new WriteBehindJobRepository(delegate, flushInterval, nanos::get);
+    }
+}
@@ -0,0 +1,75 @@
+package com.arpan.demo_batch.repository;
+
+import com.arpan.demo_batch.chunk.AdaptiveChunkSizePolicy;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the real retryBatchJob with the write-behind job repository; the user service is not running.
+ */
+@SpringBootTest(properties = {
+        "batch.job-repository.mode=WRITE_BEHIND",
+        "batch.job-repository.flush-interval=0",
+        "batch.output.file=file:target/writeBehindRetryBatchJobTest.json",
+        "batch.user-service.base-url=http://localhost:1/users",
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class WriteBehindRetryBatchJobTest {
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenStepEnds_thenItsFinalStateIsStored() throws Exception {
+        Path input = tempDir.resolve("input.csv");
+        Files.writeString(input, "userid, transaction_amount\n7, 700\n8, 800\n9, 900\n");
+
+        JobExecution jobExecution = jobLauncher.run(retryBatchJob, new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters());
+
+        assertInstanceOf(WriteBehindJobRepository.class, jobRepository);
+        assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+        StepExecution storedStep = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().equals("retryStep"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(BatchStatus.COMPLETED, storedStep.getStatus());
+        assertEquals(3, storedStep.getReadCount());
+        assertEquals(3, storedStep.getSkipCount());
+        // written by the listeners and the writer when the step ends
+        assertEquals("3 x 1", storedStep.getExecutionContext().getString(AdaptiveChunkSizePolicy.SIZES_KEY));
+        assertTrue(storedStep.getExecutionContext().containsKey("transactionJsonFileItemWriter.position"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.arpan.demo_batch.retry;
+
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExponentialBackoffRetrierTest {
+
+    private final ExponentialBackoffRetrier retrier =
+            new ExponentialBackoffRetrier(3, Duration.ofMillis(100), Duration.ofMillis(150), 2.0);
+
+    @Test
+    public void whenOperationFailsThenSucceeds_thenResultCompletesAfterTheBackoffWithoutBlockingTheCaller() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        CompletableFuture<String> result = retrier.retry(() -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.failedFuture(new UserNotFoundException("not yet"))
+                : CompletableFuture.completedFuture("user"), UserNotFoundException.class::isInstance);
+
+        assertFalse(result.isDone());
+        assertEquals("user", result.join());
+        assertEquals(3, attempts.get());
+        // two backoffs of at least 50 and 75 ms
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 125);
+    }
+
+    @Test
+    public void whenEveryAttemptFails_thenLastFailureIsReturnedAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = retrier.retry(() -> CompletableFuture.failedFuture(
+                new UserNotFoundException("attempt " + attempts.incrementAndGet())), UserNotFoundException.class::isInstance);
+
+        CompletionException failure = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(UserNotFoundException.class, failure.getCause());
+        assertEquals("attempt 3", failure.getCause().getMessage());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void whenFailureIsNotRetryable_thenItIsReturnedAtOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = retrier.retry(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("broken");
+        }, UserNotFoundException.class::isInstance);
+
+        CompletionException failure = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyUpToTheMaximumWithJitter() {
+        ExponentialBackoffRetrier backoff =
+                new ExponentialBackoffRetrier(10, Duration.ofMillis(100), Duration.ofSeconds(1), 2.0);
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, backoff.backoffMillis(1));
+            assertBetween(100, 200, backoff.backoffMillis(2));
+            assertBetween(200, 400, backoff.backoffMillis(3));
+            assertBetween(500, 1000, backoff.backoffMillis(8));
+        }
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " not in [" + min + ", " + max + "]");
+    }
+}
@@ -0,0 +1,138 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.json.JacksonJsonObjectMarshaller;
+import org.springframework.batch.item.json.JsonFileItemWriter;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BufferedJsonFileItemWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @Test
+    public void whenWritingChunks_thenOutputMatchesTheJsonFileItemWriter() throws Exception {
+        Path expected = tempDir.resolve("expected.json");
+        JsonFileItemWriter<Transaction> jsonFileItemWriter =
+                new JsonFileItemWriter<>(new FileSystemResource(expected), new JacksonJsonObjectMarshaller<>());
+        jsonFileItemWriter.setName("jsonFileItemWriter");
+        writeChunks(jsonFileItemWriter, new ExecutionContext());
+
+        Path actual = tempDir.resolve("actual.json");
+        writeChunks(newWriter(actual, 64), new ExecutionContext());
+
+        assertEquals(Files.readString(expected), Files.readString(actual));
+    }
+
+    @Test
+    public void whenUsingTheTransactionSerializer_thenOutputMatchesTheDatabindSerializer() throws Exception {
+        Path expected = tempDir.resolve("expected.json");
+        writeChunks(newWriter(expected, 64), new ExecutionContext());
+
+        Path actual = tempDir.resolve("actual.json");
+        BufferedJsonFileItemWriter<Transaction> writer = new BufferedJsonFileItemWriter<>(
+                new FileSystemResource(actual), new TransactionJsonSerializer(), new ObjectMapper(), 64);
+        writer.setName("bufferedJsonFileItemWriter");
+        writeChunks(writer, new ExecutionContext());
+
+        assertEquals(Files.readString(expected), Files.readString(actual));
+    }
+
+    @Test
+    public void whenChunkIsRolledBack_thenItIsNotInTheFile() throws Exception {
+        Path output = tempDir.resolve("output.json");
+        BufferedJsonFileItemWriter<Transaction> writer = newWriter(output, 16);
+        writer.open(new ExecutionContext());
+
+        inTransaction(writer, transaction(1));
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                writer.write(Chunk.of(transaction(2), transaction(3)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+        inTransaction(writer, transaction(4));
+        writer.close();
+
+        assertEquals(expectedJson(1, 4), Files.readString(output));
+    }
+
+    @Test
+    public void whenRestarted_thenWritingContinuesAfterTheLastCommittedChunk() throws Exception {
+        Path output = tempDir.resolve("output.json");
+        ExecutionContext executionContext = new ExecutionContext();
+        BufferedJsonFileItemWriter<Transaction> writer = newWriter(output, 1024);
+        writer.open(executionContext);
+        inTransaction(writer, transaction(1), transaction(2));
+        writer.update(executionContext);
+        // the step fails: the writer is closed and the footer is written
+        writer.close();
+
+        BufferedJsonFileItemWriter<Transaction> restartedWriter = newWriter(output, 1024);
+        restartedWriter.open(executionContext);
+        inTransaction(restartedWriter, transaction(3));
+        restartedWriter.close();
+
+        assertEquals(expectedJson(1, 2, 3), Files.readString(output));
+    }
+
+    private BufferedJsonFileItemWriter<Transaction> newWriter(Path output, int bufferSize) {
+        BufferedJsonFileItemWriter<Transaction> writer = new BufferedJsonFileItemWriter<>(
+                new FileSystemResource(output), Transaction.class, new ObjectMapper(), bufferSize);
+        writer.setName("bufferedJsonFileItemWriter");
+        return writer;
+    }
+
+    private void writeChunks(ItemStreamWriter<Transaction> writer, ExecutionContext executionContext) throws Exception {
+        writer.open(executionContext);
+        inTransaction(writer, transaction(1), transaction(2), transaction(3));
+        inTransaction(writer);
+        inTransaction(writer, transaction(4), new Transaction(5, 0.1));
+        writer.update(executionContext);
+        writer.close();
+    }
+
+    private void inTransaction(ItemStreamWriter<Transaction> writer, Transaction... items) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                writer.write(Chunk.of(items));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static Transaction transaction(int userId) {
+        Transaction transaction = new Transaction(userId, userId * 100.5);
+        transaction.setUsername("User \"" + userId + "\"");
+        transaction.setEmail("user" + userId + "@example.com");
+        return transaction;
+    }
+
+    private static String expectedJson(int... userIds) {
+        JacksonJsonObjectMarshaller<Transaction> marshaller = new JacksonJsonObjectMarshaller<>();
+        StringBuilder json = new StringBuilder("[").append(System.lineSeparator());
+        for (int i = 0; i < userIds.length; i++) {
+            json.append(i == 0 ? " " : "," + System.lineSeparator() + " ")
+                    .append(marshaller.marshal(transaction(userIds[i])));
+        }
+        return json.append(System.lineSeparator()).append("]").append(System.lineSeparator()).toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.client.UserServiceClient;
+import com.arpan.demo_batch.config.SpringBatchRetryConfig;
+import com.arpan.demo_batch.exception.UserNotFoundException;
+import com.arpan.demo_batch.listener.CustomSkipListener;
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs retryBatchJob while the user service fails, then replays its dead-letter file once the service is back.
+ */
+@SpringBootTest(properties = {
+        "batch.output.file=file:target/deadLetterReplayJobTest.json",
+        "batch.dead-letter.dir=target/deadLetterReplayJobTest",
+        "batch.user-service.circuit-breaker.enabled=false"
+})
+public class DeadLetterReplayJobTest {
+
+    @MockitoBean
+    private UserServiceClient userServiceClient;
+
+    @Autowired
+    private Job retryBatchJob;
+
+    @Autowired
+    private Job deadLetterReplayJob;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private DeadLetterSink deadLetterSink;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenSkippedItemsAreReplayed_thenTheyAreProcessedAgain() throws Exception {
+        Path input = Files.writeString(tempDir.resolve("input.csv"), "userid, transaction_amount\n7, 700\n8, 800\n");
+        when(userServiceClient.fetchUser(anyInt())).thenThrow(new UserNotFoundException("User service down"));
+
+        JobExecution importExecution = jobLauncher.run(retryBatchJob, new JobParametersBuilder()
+                .addString(SpringBatchRetryConfig.INPUT_FILE_PARAMETER, input.toString())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, importExecution.getStatus());
+        List<DeadLetterRecord> deadLetters = readDeadLetters(importExecution.getId());
+        assertEquals(List.of(7, 8), deadLetters.stream().map(record -> record.getItem().getUserId()).toList());
+        DeadLetterRecord deadLetter = deadLetters.get(0);
+        assertEquals(DeadLetterRecord.Phase.PROCESS, deadLetter.getPhase());
+        assertEquals(UserNotFoundException.class.getName(), deadLetter.getExceptionType());
+        assertEquals("User service down", deadLetter.getMessage());
+        assertEquals("retryStep", deadLetter.getStepName());
+        assertEquals("retryBatchJob", deadLetter.getJobName());
+        // retryLimit(3): three attempts
+        assertEquals(2, deadLetter.getRetryCount());
+        assertEquals(2, stepExecution(importExecution).getExecutionContext().getLong(CustomSkipListener.DEAD_LETTER_COUNT_KEY));
+
+        doAnswer(invocation -> {
+            int userId = invocation.getArgument(0);
+            return new User(userId, "user-" + userId, "user" + userId + "@demo.com");
+        }).when(userServiceClient).fetchUser(anyInt());
+        JobExecution replayExecution = jobLauncher.run(deadLetterReplayJob, new JobParametersBuilder()
+                .addLong(SpringBatchRetryConfig.DEAD_LETTER_JOB_EXECUTION_PARAMETER, importExecution.getId())
+                .addLong("startAt", System.currentTimeMillis())
+                .toJobParameters());
+
+        assertEquals(BatchStatus.COMPLETED, replayExecution.getStatus());
+        StepExecution replayStep = stepExecution(replayExecution);
+        assertEquals(2, replayStep.getReadCount());
+        assertEquals(2, replayStep.getWriteCount());
+        assertEquals(0, replayStep.getSkipCount());
+        assertFalse(Files.exists(deadLetterSink.file(replayExecution.getId())));
+    }
+
+    private List<DeadLetterRecord> readDeadLetters(long jobExecutionId) throws Exception {
+        List<DeadLetterRecord> records = new ArrayList<>();
+        for (String line : Files.readAllLines(deadLetterSink.file(jobExecutionId))) {
+            records.add(objectMapper.readValue(line, DeadLetterRecord.class));
+        }
+        return records;
+    }
+
+    private static StepExecution stepExecution(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().iterator().next();
+    }
+}
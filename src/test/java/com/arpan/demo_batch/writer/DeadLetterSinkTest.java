@@ -0,0 +1,84 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.model.DeadLetterRecord;
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeadLetterSinkTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenRecordsAreFlushed_thenEachJobExecutionHasItsOwnFile() throws Exception {
+        try (DeadLetterSink sink = newSink(tempDir, 10_000)) {
+            for (int userId = 0; userId < 1000; userId++) {
+                assertTrue(sink.add(record(userId % 2 + 1, userId)));
+            }
+            sink.flush(Duration.ofSeconds(5));
+
+            List<String> lines = Files.readAllLines(sink.file(2));
+            assertEquals(500, lines.size());
+            DeadLetterRecord first = objectMapper.readValue(lines.get(0), DeadLetterRecord.class);
+            assertEquals(record(2, 1), first);
+            assertEquals(500, Files.readAllLines(sink.file(1)).size());
+            assertEquals(1000, meterRegistry.get("batch.dead-letter.records").tag("outcome", "written").counter().count());
+        }
+    }
+
+    @Test
+    public void whenFileCannotBeWritten_thenTheRecordsAreCountedAsDropped() throws Exception {
+        Path notADirectory = Files.writeString(tempDir.resolve("file"), "");
+        try (DeadLetterSink sink = newSink(notADirectory, 100)) {
+            sink.add(record(1, 7));
+            sink.flush(Duration.ofSeconds(5));
+
+            assertEquals(1, meterRegistry.get("batch.dead-letter.records").tag("outcome", "dropped").counter().count());
+        }
+    }
+
+    @Test
+    public void whenJobExecutionStarts_thenAFileLeftOverForItsIdIsRemoved() throws Exception {
+        try (DeadLetterSink sink = newSink(tempDir, 100)) {
+            Files.writeString(sink.file(3), "{}\n");
+
+            sink.beforeJob(new JobExecution(3L));
+
+            assertFalse(Files.exists(sink.file(3)));
+        }
+    }
+
+    private DeadLetterSink newSink(Path directory, int queueCapacity) {
+        return new DeadLetterSink(directory, queueCapacity, 64, Duration.ofMillis(50), Duration.ofSeconds(1),
+                objectMapper, meterRegistry);
+    }
+
+    private static DeadLetterRecord record(long jobExecutionId, int userId) {
+        return new DeadLetterRecord(jobExecutionId, "retryBatchJob", 10, "retryStep", DeadLetterRecord.Phase.PROCESS,
+                new Transaction(userId, userId * 100), null, "com.arpan.demo_batch.exception.UserNotFoundException",
+                "User " + userId + " not found", 2, Instant.parse("2024-01-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,179 @@
+package com.arpan.demo_batch.writer;
+
+import com.arpan.demo_batch.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.airlift.compress.zstd.ZstdInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RollingNdjsonItemWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @Test
+    public void whenMaxItemsIsReached_thenANewGzipPartIsStarted() throws Exception {
+        RollingNdjsonItemWriter<Transaction> writer = newWriter(OutputCompression.GZIP, 16);
+        writer.setMaxItemsPerPart(3);
+        writer.open(new ExecutionContext());
+        inTransaction(writer, 1, 2);
+        inTransaction(writer, 3, 4, 5, 6, 7);
+        writer.close();
+
+        assertEquals(List.of(1, 2, 3), userIds(writer.partPath(0), OutputCompression.GZIP));
+        assertEquals(List.of(4, 5, 6), userIds(writer.partPath(1), OutputCompression.GZIP));
+        assertEquals(List.of(7), userIds(writer.partPath(2), OutputCompression.GZIP));
+        assertFalse(Files.exists(writer.partPath(3)));
+    }
+
+    @Test
+    public void whenMaxBytesIsReached_thenANewPartIsStarted() throws Exception {
+        RollingNdjsonItemWriter<Transaction> writer = newWriter(OutputCompression.NONE, 1024);
+        int lineLength = line(1).length();
+        writer.setMaxBytesPerPart(2L * lineLength + 1);
+        writer.open(new ExecutionContext());
+        inTransaction(writer, 1, 2, 3, 4, 5);
+        writer.close();
+
+        assertEquals(List.of(1, 2, 3), userIds(writer.partPath(0), OutputCompression.NONE));
+        assertEquals(List.of(4, 5), userIds(writer.partPath(1), OutputCompression.NONE));
+    }
+
+    @Test
+    public void whenChunkStartingAPartIsRolledBack_thenThePartIsRemoved() throws Exception {
+        RollingNdjsonItemWriter<Transaction> writer = newWriter(OutputCompression.ZSTD, 1024);
+        writer.setMaxItemsPerPart(2);
+        writer.open(new ExecutionContext());
+        inTransaction(writer, 1);
+        transactionTemplate.executeWithoutResult(status -> {
+            write(writer, 2, 3, 4);
+            status.setRollbackOnly();
+        });
+        assertFalse(Files.exists(writer.partPath(1)));
+
+        inTransaction(writer, 5, 6);
+        writer.close();
+
+        assertEquals(List.of(1, 5), userIds(writer.partPath(0), OutputCompression.ZSTD));
+        assertEquals(List.of(6), userIds(writer.partPath(1), OutputCompression.ZSTD));
+    }
+
+    @Test
+    public void whenRestarted_thenTheSavedPartIsContinuedAtTheSavedPosition() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        RollingNdjsonItemWriter<Transaction> writer = newWriter(OutputCompression.ZSTD, 1024);
+        writer.setMaxItemsPerPart(3);
+        writer.open(executionContext);
+        inTransaction(writer, 1, 2, 3, 4);
+        writer.update(executionContext);
+        // the next chunk reaches the file, but the step dies before the execution context is saved
+        inTransaction(writer, 5, 6, 7);
+        writer.close();
+
+        RollingNdjsonItemWriter<Transaction> restartedWriter = newWriter(OutputCompression.ZSTD, 1024);
+        restartedWriter.setMaxItemsPerPart(3);
+        restartedWriter.open(executionContext);
+        assertFalse(Files.exists(restartedWriter.partPath(2)));
+        inTransaction(restartedWriter, 5, 6, 7);
+        restartedWriter.close();
+
+        assertEquals(List.of(1, 2, 3), userIds(writer.partPath(0), OutputCompression.ZSTD));
+        assertEquals(List.of(4, 5, 6), userIds(writer.partPath(1), OutputCompression.ZSTD));
+        assertEquals(List.of(7), userIds(writer.partPath(2), OutputCompression.ZSTD));
+    }
+
+    @Test
+    public void whenStartedAgain_thenPartsOfTheEarlierRunAreDeleted() throws Exception {
+        RollingNdjsonItemWriter<Transaction> writer = newWriter(OutputCompression.NONE, 1024);
+        writer.setMaxItemsPerPart(1);
+        writer.open(new ExecutionContext());
+        inTransaction(writer, 1, 2, 3);
+        writer.close();
+        assertTrue(Files.exists(writer.partPath(2)));
+
+        writer.open(new ExecutionContext());
+        inTransaction(writer, 4);
+        writer.close();
+
+        assertEquals(List.of(4), userIds(writer.partPath(0), OutputCompression.NONE));
+        assertFalse(Files.exists(writer.partPath(1)));
+    }
+
+    private RollingNdjsonItemWriter<Transaction> newWriter(OutputCompression compression, int bufferSize) {
+        RollingNdjsonItemWriter<Transaction> writer = new RollingNdjsonItemWriter<>(tempDir, "retryOutput",
+                compression, new TransactionJsonSerializer(), new ObjectMapper(), bufferSize);
+        writer.setName("rollingNdjsonItemWriter");
+        return writer;
+    }
+
+    private void inTransaction(RollingNdjsonItemWriter<Transaction> writer, int... userIds) {
+        transactionTemplate.executeWithoutResult(status -> write(writer, userIds));
+    }
+
+    private static void write(RollingNdjsonItemWriter<Transaction> writer, int... userIds) {
+        Chunk<Transaction> chunk = new Chunk<>();
+        for (int userId : userIds) {
+            chunk.add(transaction(userId));
+        }
+        try {
+            writer.write(chunk);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Transaction transaction(int userId) {
+        Transaction transaction = new Transaction(userId, userId * 100.5);
+        transaction.setUsername("User " + userId);
+        transaction.setEmail("user" + userId + "@example.com");
+        return transaction;
+    }
+
+    private static String line(int userId) throws IOException {
+        return new ObjectMapper().writeValueAsString(transaction(userId)) + "\n";
+    }
+
+    private static List<Integer> userIds(Path part, OutputCompression compression) throws IOException {
+        try (InputStream input = decompress(Files.newInputStream(part), compression)) {
+            String content = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            List<Integer> userIds = new ArrayList<>();
+            ObjectMapper objectMapper = new ObjectMapper();
+            for (String line : content.split("\n")) {
+                if (!line.isEmpty()) {
+                    Transaction transaction = objectMapper.readValue(line, Transaction.class);
+                    assertEquals(line(transaction.getUserId()), line + "\n");
+                    userIds.add(transaction.getUserId());
+                }
+            }
+            assertTrue(content.endsWith("\n"));
+            return userIds;
+        }
+    }
+
+    private static InputStream decompress(InputStream input, OutputCompression compression) throws IOException {
+        return switch (compression) {
+            case NONE -> input;
+            case GZIP -> new GZIPInputStream(input);
+            case ZSTD -> new ZstdInputStream(input);
+        };
+    }
+}